@@ -0,0 +1,129 @@
+/*
+ * Copyright 2019 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jf.ptgen;
+
+import org.jf.ptgen.penrose.BenchmarkTilings;
+import org.jf.ptgen.penrose.BoundingBox;
+import org.jf.ptgen.penrose.PenroseTiling.RhombusBatchVisitor;
+import org.jf.ptgen.penrose.Rhombus;
+import org.jf.ptgen.penrose.RhombusBatch;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the cost of writing a single rhombus with each of the output types. Output is written
+ * to a sink that discards everything.
+ *
+ * <p>Each operation is a single rhombus, cycling through all of the rhombii of a box. The box is
+ * restarted after every pass, so that SVGLINE's edge deduplication sees the same mix of new and
+ * shared edges as during a real run. For visitBatch, each operation is instead a full batch of
+ * RhombusBatch.DEFAULT_CAPACITY rhombii.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class SvgOutputBenchmark {
+
+    @Param({"0"})
+    public long seed;
+
+    @Param({"25"})
+    public double boxSize;
+
+    @Param({"SVG", "SVGLINE"})
+    public OutputType type;
+
+    private StreamOutput output;
+    private BoundingBox boundingBox;
+    private Rhombus[] rhombii;
+    private int index;
+
+    private RhombusBatch[] batches;
+    private int batchIndex;
+
+    @Setup
+    public void setup() {
+        if (type == OutputType.SVG) {
+            output = new SvgOutput();
+        } else {
+            output = new SvgLineOutput();
+        }
+        output.setOutputStream(new NullOutputStream());
+
+        boundingBox = BenchmarkTilings.boundingBox(boxSize);
+        rhombii = BenchmarkTilings.rhombii(seed, boundingBox);
+        index = 0;
+
+        // Only whole batches are used, so that every operation writes the same number of rhombii
+        int batchCount = Math.max(1, rhombii.length / RhombusBatch.DEFAULT_CAPACITY);
+        batches = new RhombusBatch[batchCount];
+        for (int i = 0; i < batchCount; i++) {
+            batches[i] = new RhombusBatch();
+            for (int j = 0; j < RhombusBatch.DEFAULT_CAPACITY; j++) {
+                batches[i].add(rhombii[(i * RhombusBatch.DEFAULT_CAPACITY + j) % rhombii.length]);
+            }
+        }
+        batchIndex = 0;
+
+        output.start(BenchmarkTilings.generator(seed, boxSize));
+        output.startBox(boundingBox);
+    }
+
+    @TearDown
+    public void tearDown() {
+        output.endBox(boundingBox);
+        output.end();
+    }
+
+    @Benchmark
+    public void visitRhombus() {
+        output.visitRhombus(rhombii[index++]);
+        if (index == rhombii.length) {
+            index = 0;
+            output.endBox(boundingBox);
+            output.startBox(boundingBox);
+        }
+    }
+
+    @Benchmark
+    public void visitBatch() {
+        ((RhombusBatchVisitor)output).visitRhombii(batches[batchIndex++]);
+        if (batchIndex == batches.length) {
+            batchIndex = 0;
+            output.endBox(boundingBox);
+            output.startBox(boundingBox);
+        }
+    }
+
+    private static class NullOutputStream extends OutputStream {
+        @Override public void write(int b) {
+        }
+
+        @Override public void write(byte[] b, int off, int len) {
+        }
+    }
+}
@@ -0,0 +1,60 @@
+/*
+ * Copyright 2019 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jf.ptgen.penrose;
+
+import org.jf.ptgen.PTGen;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.math.Vector2D;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Shared fixtures for the benchmarks. Everything is derived from a fixed seed, so that results
+ * are comparable between versions.
+ */
+public class BenchmarkTilings {
+    public static final Coordinate GRID_ORIGIN = new Coordinate(0, 0);
+
+    private BenchmarkTilings() {
+    }
+
+    /**
+     * @return The (0, 0) bounding box of a grid with square boxes of the given size.
+     */
+    public static BoundingBox boundingBox(double boxSize) {
+        return new BoundingBox(GRID_ORIGIN, new Vector2D(boxSize, boxSize), 0, 0);
+    }
+
+    /**
+     * @return A generator for a single square box of the given size, using the given seed.
+     */
+    public static PTGen generator(long seed, double boxSize) {
+        return new PTGen(seed, GRID_ORIGIN.x, GRID_ORIGIN.y, boxSize, boxSize, 1, 1);
+    }
+
+    /**
+     * @return All of the rhombii in the given bounding box, in visitation order.
+     */
+    public static Rhombus[] rhombii(long seed, BoundingBox boundingBox) {
+        PenroseTiling tiling = new PenroseTiling(new Random(seed));
+        List<Rhombus> rhombii = new ArrayList<>();
+        tiling.visitRhombii(boundingBox, rhombii::add);
+        return rhombii.toArray(new Rhombus[0]);
+    }
+}
@@ -0,0 +1,79 @@
+/*
+ * Copyright 2019 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jf.ptgen.penrose;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the generation of a single bounding box.
+ *
+ * <p>The primary score is boxes/s. The "rhombii" secondary score is the number of rhombii
+ * visited per second. gc.alloc.rate.norm (from the gc profiler) is the number of bytes allocated
+ * per box; divide it by the number of rhombii in the box for the allocation per rhombus.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class PenroseTilingBenchmark {
+
+    @Param({"0", "42"})
+    public long seed;
+
+    @Param({"5", "10", "25", "50"})
+    public double boxSize;
+
+    private PenroseTiling tiling;
+    private BoundingBox boundingBox;
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class RhombusCounter {
+        public long rhombii;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            rhombii = 0;
+        }
+    }
+
+    @Setup
+    public void setup() {
+        tiling = new PenroseTiling(new Random(seed));
+        boundingBox = BenchmarkTilings.boundingBox(boxSize);
+    }
+
+    @Benchmark
+    public void visitRhombii(RhombusCounter counter, Blackhole blackhole) {
+        tiling.visitRhombii(boundingBox, rhombus -> {
+            counter.rhombii++;
+            blackhole.consume(rhombus);
+        });
+    }
+}
@@ -0,0 +1,71 @@
+/*
+ * Copyright 2019 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jf.ptgen.penrose;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the box ownership test that is performed for every rhombus that is generated.
+ *
+ * <p>Each operation is a single call, cycling through all of the rhombii of a box. The
+ * rhombii include the ones that straddle the edges of the box.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class RhombusBenchmark {
+
+    @Param({"0", "42"})
+    public long seed;
+
+    @Param({"5", "25"})
+    public double boxSize;
+
+    private Rhombus[] rhombii;
+    private BoundingBox boundingBox;
+    private int index;
+
+    @Setup
+    public void setup() {
+        boundingBox = BenchmarkTilings.boundingBox(boxSize);
+        rhombii = BenchmarkTilings.rhombii(seed, boundingBox);
+        index = 0;
+    }
+
+    private Rhombus nextRhombus() {
+        Rhombus rhombus = rhombii[index++];
+        if (index == rhombii.length) {
+            index = 0;
+        }
+        return rhombus;
+    }
+
+    @Benchmark
+    public BoundingBox getContainingBoundingBox() {
+        return nextRhombus().getContainingBoundingBox(
+                boundingBox.gridOrigin, boundingBox.gridSize);
+    }
+}
@@ -0,0 +1,73 @@
+/*
+ * Copyright 2019 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jf.ptgen.penrose;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Iterator;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures walking along a single strip. Each operation is one rhombus.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class StripBenchmark {
+    private static final int RHOMBII_PER_INVOCATION = 1000;
+
+    @Param({"0", "42"})
+    public long seed;
+
+    private Strip strip;
+    private Strip startStrip;
+
+    @Setup
+    public void setup() {
+        PenroseTiling tiling = new PenroseTiling(new Random(seed));
+        strip = tiling.getStripFamily(0).getStrip(4);
+        startStrip = strip.getRhombus(4).strip2;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(RHOMBII_PER_INVOCATION)
+    public void getRhombiiFromStrip(Blackhole blackhole) {
+        Iterator<Rhombus> iterator = strip.getRhombii(startStrip, true).iterator();
+        for (int i = 0; i < RHOMBII_PER_INVOCATION; i++) {
+            blackhole.consume(iterator.next());
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(RHOMBII_PER_INVOCATION)
+    public void getRhombiiFromTarget(Blackhole blackhole) {
+        Iterator<Rhombus> iterator = strip.getRhombii(4, false).iterator();
+        for (int i = 0; i < RHOMBII_PER_INVOCATION; i++) {
+            blackhole.consume(iterator.next());
+        }
+    }
+}
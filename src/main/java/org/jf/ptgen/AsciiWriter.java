@@ -0,0 +1,255 @@
+/*
+ * Copyright 2019 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jf.ptgen;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.Locale;
+
+/**
+ * A buffered writer for ASCII output, with fast formatting of numbers.
+ *
+ * <p>Unlike a PrintStream and String.format, nothing is allocated per write and there is no
+ * locking or autoflushing. Numbers are always formatted the same way, regardless of the default
+ * locale.
+ *
+ * <p>I/O errors are thrown as UncheckedIOExceptions, since this is used from the RhombusOutput
+ * callbacks, which can't throw checked exceptions.
+ */
+class AsciiWriter implements Closeable, Flushable {
+    private static final int DEFAULT_BUFFER_SIZE = 1 << 16;
+
+    // The number of digits after the decimal point written by write(double). This matches the
+    // default precision of %f
+    private static final int DEFAULT_DECIMALS = 6;
+    private static final int MAX_DECIMALS = 9;
+
+    private static final long[] POWERS_OF_TEN = {
+            1L, 10L, 100L, 1000L, 10000L, 100000L, 1000000L, 10000000L, 100000000L, 1000000000L
+    };
+
+    // Values with a magnitude at least this large are formatted with String.format instead,
+    // since they may not fit in a long after scaling.
+    private static final double MAX_FAST_VALUE = 1E12;
+
+    // How close the scaled remainder must be to .5 to be treated as a possible tie, in addition to
+    // the rounding error of the value itself. This is far smaller than the spacing of values with
+    // at most 10 decimal digits, such as the vertex coordinates.
+    private static final double TIE_TOLERANCE = 1E-6;
+
+    // Long.MIN_VALUE has 19 digits, plus the sign
+    private static final int MAX_LONG_LENGTH = 20;
+
+    private final OutputStream out;
+    private final byte[] buffer;
+    private int position = 0;
+
+    AsciiWriter(OutputStream out) {
+        this(out, DEFAULT_BUFFER_SIZE);
+    }
+
+    AsciiWriter(OutputStream out, int bufferSize) {
+        if (bufferSize < MAX_LONG_LENGTH + MAX_DECIMALS + 1) {
+            throw new IllegalArgumentException("bufferSize is too small");
+        }
+        this.out = out;
+        this.buffer = new byte[bufferSize];
+    }
+
+    private void ensureCapacity(int length) {
+        if (buffer.length - position < length) {
+            flushBuffer();
+        }
+    }
+
+    /**
+     * Writes a single ASCII character.
+     */
+    public AsciiWriter write(char c) {
+        ensureCapacity(1);
+        buffer[position++] = (byte)c;
+        return this;
+    }
+
+    /**
+     * Writes a string. All characters in the string must be ASCII.
+     */
+    public AsciiWriter write(String s) {
+        int length = s.length();
+        int index = 0;
+        while (index < length) {
+            ensureCapacity(1);
+            int count = Math.min(length - index, buffer.length - position);
+            for (int i = 0; i < count; i++) {
+                buffer[position++] = (byte)s.charAt(index++);
+            }
+        }
+        return this;
+    }
+
+    /**
+     * Writes a string, followed by a newline.
+     */
+    public AsciiWriter writeLine(String s) {
+        return write(s).newLine();
+    }
+
+    public AsciiWriter newLine() {
+        return write('\n');
+    }
+
+    /**
+     * Writes the given value in decimal.
+     */
+    public AsciiWriter write(long value) {
+        ensureCapacity(MAX_LONG_LENGTH);
+        if (value == Long.MIN_VALUE) {
+            return write(Long.toString(value));
+        }
+        if (value < 0) {
+            buffer[position++] = '-';
+            value = -value;
+        }
+        writeDigits(value, 1);
+        return this;
+    }
+
+    /**
+     * Writes the given value with 6 digits after the decimal point, like %f.
+     */
+    public AsciiWriter write(double value) {
+        return write(value, DEFAULT_DECIMALS);
+    }
+
+    /**
+     * Writes the given value with a fixed number of digits after the decimal point. The value is
+     * rounded half up, like %f.
+     *
+     * @param value The value to write.
+     * @param decimals The number of digits to write after the decimal point, in [0, 9].
+     */
+    public AsciiWriter write(double value, int decimals) {
+        if (decimals < 0 || decimals > MAX_DECIMALS) {
+            throw new IllegalArgumentException("decimals must be in [0, " + MAX_DECIMALS + "]");
+        }
+        if (!(Math.abs(value) < MAX_FAST_VALUE)) {
+            // NaN, infinities and very large values are rare enough to take the slow path.
+            return writeFormatted(value, decimals);
+        }
+
+        double magnitude = Math.abs(value);
+
+        // The integer part is split off first, so that scaling the fraction doesn't lose any
+        // precision for larger values.
+        long integerPart = (long)magnitude;
+        long scale = POWERS_OF_TEN[decimals];
+        double scaledFraction = (magnitude - integerPart) * scale;
+        long fraction = (long)scaledFraction;
+        double remainder = scaledFraction - fraction;
+
+        double tolerance = TIE_TOLERANCE + Math.ulp(magnitude) * scale * 4;
+        if (Math.abs(remainder - .5) < tolerance) {
+            // %f rounds the shortest decimal representation of the value half up, rather than
+            // its exact binary value. e.g. it rounds 0.0000005 up, even though the closest double
+            // is slightly less than that. These near-ties are rare, so they take the slow path
+            // in order to round the same way.
+            return writeFormatted(value, decimals);
+        }
+        if (remainder > .5) {
+            fraction++;
+            if (fraction == scale) {
+                integerPart++;
+                fraction = 0;
+            }
+        }
+
+        ensureCapacity(MAX_LONG_LENGTH + decimals + 1);
+
+        // %f keeps the sign of values that round to 0, including -0.0
+        if (Double.doubleToRawLongBits(value) < 0) {
+            buffer[position++] = '-';
+        }
+
+        writeDigits(integerPart, 1);
+        if (decimals > 0) {
+            buffer[position++] = '.';
+            writeDigits(fraction, decimals);
+        }
+        return this;
+    }
+
+    private AsciiWriter writeFormatted(double value, int decimals) {
+        return write(String.format(Locale.ROOT, "%." + decimals + "f", value));
+    }
+
+    /**
+     * Writes a non-negative value into the buffer, padded with leading zeros to at least the
+     * given number of digits. The buffer must have room for the digits.
+     */
+    private void writeDigits(long value, int minDigits) {
+        int digits = 1;
+        for (long remaining = value / 10; remaining != 0; remaining /= 10) {
+            digits++;
+        }
+        digits = Math.max(digits, minDigits);
+
+        int end = position + digits;
+        for (int i = end - 1; i >= position; i--) {
+            buffer[i] = (byte)('0' + (value % 10));
+            value /= 10;
+        }
+        position = end;
+    }
+
+    private void flushBuffer() {
+        if (position > 0) {
+            try {
+                out.write(buffer, 0, position);
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+            position = 0;
+        }
+    }
+
+    /**
+     * Writes any buffered output to the underlying stream, and flushes it.
+     */
+    @Override public void flush() {
+        flushBuffer();
+        try {
+            out.flush();
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    /**
+     * Flushes and closes the underlying stream.
+     */
+    @Override public void close() {
+        flush();
+        try {
+            out.close();
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+}
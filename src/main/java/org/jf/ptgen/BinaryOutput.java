@@ -0,0 +1,205 @@
+/*
+ * Copyright 2019 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jf.ptgen;
+
+import org.jf.ptgen.penrose.BoundingBox;
+import org.jf.ptgen.penrose.PenroseTiling.RhombusBatchVisitor;
+import org.jf.ptgen.penrose.Rhombus;
+import org.jf.ptgen.penrose.RhombusBatch;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+
+/**
+ * This generates a compact binary file containing the rhombii of the tiling, which can be read
+ * back with BinaryTilingReader and replayed into any other output, without generating the
+ * tiling again.
+ *
+ * <p>The file starts with a header containing the seed and grid parameters. Each grid box
+ * follows as a separate frame, containing the rhombii of that box. A rhombus is written as a
+ * byte with the strip families of strip1 and strip2, followed by its lattice coordinates as
+ * varints, each encoded as the difference from the same coordinate of the previous rhombus in
+ * the box. The strip multiples are normally equal to the lattice coordinates of the strip
+ * families, and are only written when they're not.
+ *
+ * <p>All multi-byte fixed width values are big endian, like DataOutputStream.
+ */
+class BinaryOutput implements StreamOutput, RhombusBatchVisitor {
+    static final byte[] MAGIC = {'P', 'T', 'G', 'B'};
+    static final int VERSION = 1;
+
+    static final int RECORD_BOX_START = 0x40;
+    static final int RECORD_BOX_END = 0x41;
+    static final int RECORD_END = 0x42;
+
+    // Rhombus records start with strip1Family * 5 + strip2Family, which is always less than 25.
+    // This flag is set if the strip multiples are written explicitly.
+    static final int RHOMBUS_MULTIPLES_FLAG = 0x80;
+
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    // A rhombus record is at most 1 byte, plus 7 varints of at most 5 bytes each
+    private static final int MAX_RHOMBUS_LENGTH = 1 + 7 * 5;
+
+    private OutputStream outputStream = System.out;
+
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+    private int position = 0;
+
+    // The lattice coordinates of the previous rhombus in the current box
+    private final int[] previousLatticeCoords = new int[5];
+
+    @Override public void setOutputStream(OutputStream outputStream) {
+        this.outputStream = outputStream;
+    }
+
+    @Override public void start(PTGen ptgen) {
+        position = 0;
+
+        ensureCapacity(MAGIC.length + 1 + 8 * 5 + 4 * 2);
+        for (byte b: MAGIC) {
+            buffer[position++] = b;
+        }
+        buffer[position++] = VERSION;
+        writeLong(ptgen.getSeed());
+        writeLong(Double.doubleToLongBits(ptgen.minX));
+        writeLong(Double.doubleToLongBits(ptgen.minY));
+        writeLong(Double.doubleToLongBits(ptgen.width));
+        writeLong(Double.doubleToLongBits(ptgen.height));
+        writeInt(ptgen.countX);
+        writeInt(ptgen.countY);
+    }
+
+    @Override public void startBox(BoundingBox boundingBox) {
+        ensureCapacity(1 + 5 * 2);
+        buffer[position++] = RECORD_BOX_START;
+        writeVarInt(boundingBox.xMultiple);
+        writeVarInt(boundingBox.yMultiple);
+
+        // Each box is delta encoded separately, so that it can be decoded on its own
+        for (int i = 0; i < 5; i++) {
+            previousLatticeCoords[i] = 0;
+        }
+    }
+
+    @Override public void endBox(BoundingBox boundingBox) {
+        ensureCapacity(1);
+        buffer[position++] = RECORD_BOX_END;
+    }
+
+    @Override public void visitRhombus(Rhombus rhombus) {
+        writeRhombus(rhombus.strip1.stripFamily.angle, rhombus.strip1.multiple,
+                rhombus.strip2.stripFamily.angle, rhombus.strip2.multiple,
+                rhombus.latticeCoords, 0);
+    }
+
+    @Override public void visitRhombii(RhombusBatch batch) {
+        int[] strip1Families = batch.strip1Families;
+        int[] strip1Multiples = batch.strip1Multiples;
+        int[] strip2Families = batch.strip2Families;
+        int[] strip2Multiples = batch.strip2Multiples;
+        int[] latticeCoords = batch.latticeCoords;
+
+        for (int i = 0; i < batch.size(); i++) {
+            writeRhombus(strip1Families[i], strip1Multiples[i],
+                    strip2Families[i], strip2Multiples[i], latticeCoords, i * 5);
+        }
+    }
+
+    private void writeRhombus(int strip1Family, int strip1Multiple, int strip2Family,
+                              int strip2Multiple, int[] latticeCoords, int offset) {
+        ensureCapacity(MAX_RHOMBUS_LENGTH);
+
+        boolean explicitMultiples = strip1Multiple != latticeCoords[offset + strip1Family] ||
+                strip2Multiple != latticeCoords[offset + strip2Family];
+
+        int familyPair = strip1Family * 5 + strip2Family;
+        if (explicitMultiples) {
+            familyPair |= RHOMBUS_MULTIPLES_FLAG;
+        }
+        buffer[position++] = (byte)familyPair;
+
+        for (int i = 0; i < 5; i++) {
+            int latticeCoord = latticeCoords[offset + i];
+            writeVarInt(latticeCoord - previousLatticeCoords[i]);
+            previousLatticeCoords[i] = latticeCoord;
+        }
+
+        if (explicitMultiples) {
+            writeVarInt(strip1Multiple - latticeCoords[offset + strip1Family]);
+            writeVarInt(strip2Multiple - latticeCoords[offset + strip2Family]);
+        }
+    }
+
+    /**
+     * Writes a zigzag encoded varint, so that small negative values are as short as small
+     * positive values. The buffer must have room for 5 bytes.
+     */
+    private void writeVarInt(int value) {
+        int zigzag = (value << 1) ^ (value >> 31);
+        while ((zigzag & ~0x7F) != 0) {
+            buffer[position++] = (byte)((zigzag & 0x7F) | 0x80);
+            zigzag >>>= 7;
+        }
+        buffer[position++] = (byte)zigzag;
+    }
+
+    private void writeInt(int value) {
+        for (int shift = 24; shift >= 0; shift -= 8) {
+            buffer[position++] = (byte)(value >>> shift);
+        }
+    }
+
+    private void writeLong(long value) {
+        for (int shift = 56; shift >= 0; shift -= 8) {
+            buffer[position++] = (byte)(value >>> shift);
+        }
+    }
+
+    private void ensureCapacity(int length) {
+        if (buffer.length - position < length) {
+            flushBuffer();
+        }
+    }
+
+    private void flushBuffer() {
+        if (position > 0) {
+            try {
+                outputStream.write(buffer, 0, position);
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+            position = 0;
+        }
+    }
+
+    @Override public void end() {
+        ensureCapacity(1);
+        buffer[position++] = RECORD_END;
+        flush();
+    }
+
+    @Override public void flush() {
+        flushBuffer();
+        try {
+            outputStream.flush();
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+}
@@ -0,0 +1,230 @@
+/*
+ * Copyright 2019 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jf.ptgen;
+
+import org.jf.ptgen.PTGen.RhombusOutput;
+import org.jf.ptgen.penrose.BoundingBox;
+import org.jf.ptgen.penrose.PenroseTiling;
+import org.jf.ptgen.penrose.PenroseTiling.RhombusBatchVisitor;
+import org.jf.ptgen.penrose.Rhombus;
+import org.jf.ptgen.penrose.RhombusBatch;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+
+import static org.jf.ptgen.BinaryOutput.MAGIC;
+import static org.jf.ptgen.BinaryOutput.RECORD_BOX_END;
+import static org.jf.ptgen.BinaryOutput.RECORD_BOX_START;
+import static org.jf.ptgen.BinaryOutput.RECORD_END;
+import static org.jf.ptgen.BinaryOutput.RHOMBUS_MULTIPLES_FLAG;
+import static org.jf.ptgen.BinaryOutput.VERSION;
+
+/**
+ * Reads a tiling written by BinaryOutput, and replays it into another RhombusOutput.
+ *
+ * <p>The file is read as a stream, so only a single batch of rhombii is held in memory at a
+ * time, regardless of the size of the tiling.
+ */
+class BinaryTilingReader {
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final InputStream inputStream;
+
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+    private int position = 0;
+    private int limit = 0;
+
+    // The total number of bytes consumed before the start of the buffer
+    private long bufferOffset = 0;
+
+    BinaryTilingReader(InputStream inputStream) {
+        this.inputStream = inputStream;
+    }
+
+    /**
+     * Reads the whole tiling, calling the appropriate methods of the given output as it is
+     * read, in the same order they were originally called on the BinaryOutput.
+     *
+     * @throws IOException If the input can't be read, or isn't a valid binary tiling.
+     */
+    public void replay(RhombusOutput output) throws IOException {
+        PTGen ptgen = readHeader();
+        PenroseTiling tiling = ptgen.createTiling();
+
+        // Outputs that can process rhombii in chunks get them that way
+        RhombusBatchVisitor batchVisitor = null;
+        RhombusBatch batch = null;
+        if (output instanceof RhombusBatchVisitor) {
+            batchVisitor = (RhombusBatchVisitor)output;
+            batch = new RhombusBatch();
+        }
+
+        output.start(ptgen);
+
+        while (true) {
+            int record = readByte();
+            if (record == RECORD_END) {
+                break;
+            }
+            if (record != RECORD_BOX_START) {
+                throw invalid("Expected the start of a grid box");
+            }
+
+            int x = readVarInt();
+            int y = readVarInt();
+            if (x < 0 || x >= ptgen.countX || y < 0 || y >= ptgen.countY) {
+                throw invalid("Grid box (" + x + ", " + y + ") is outside of the grid");
+            }
+
+            BoundingBox boundingBox = ptgen.getBoundingBox(x, y);
+            output.startBox(boundingBox);
+            readBox(tiling, output, batchVisitor, batch);
+            output.endBox(boundingBox);
+        }
+
+        output.end();
+    }
+
+    private PTGen readHeader() throws IOException {
+        for (byte b: MAGIC) {
+            if (readByte() != (b & 0xFF)) {
+                throw new IOException("Not a binary tiling file");
+            }
+        }
+
+        int version = readByte();
+        if (version != VERSION) {
+            throw new IOException("Unsupported binary tiling version: " + version);
+        }
+
+        long seed = readLong();
+        double minX = Double.longBitsToDouble(readLong());
+        double minY = Double.longBitsToDouble(readLong());
+        double width = Double.longBitsToDouble(readLong());
+        double height = Double.longBitsToDouble(readLong());
+        int countX = readInt();
+        int countY = readInt();
+
+        if (countX < 0 || countY < 0) {
+            throw invalid("Invalid grid size");
+        }
+
+        return new PTGen(seed, minX, minY, width, height, countX, countY);
+    }
+
+    /**
+     * Reads the rhombii of a single grid box, up to and including the end of the box.
+     */
+    private void readBox(PenroseTiling tiling, RhombusOutput output,
+                         RhombusBatchVisitor batchVisitor, RhombusBatch batch) throws IOException {
+        int[] previousLatticeCoords = new int[5];
+
+        while (true) {
+            int record = readByte();
+            if (record == RECORD_BOX_END) {
+                break;
+            }
+
+            int familyPair = record & ~RHOMBUS_MULTIPLES_FLAG;
+            int strip1Family = familyPair / 5;
+            int strip2Family = familyPair % 5;
+            if (strip1Family >= 5 || strip1Family == strip2Family) {
+                throw invalid("Invalid rhombus record");
+            }
+
+            int[] latticeCoords = new int[5];
+            for (int i = 0; i < 5; i++) {
+                latticeCoords[i] = previousLatticeCoords[i] + readVarInt();
+            }
+            System.arraycopy(latticeCoords, 0, previousLatticeCoords, 0, 5);
+
+            int strip1Multiple = latticeCoords[strip1Family];
+            int strip2Multiple = latticeCoords[strip2Family];
+            if ((record & RHOMBUS_MULTIPLES_FLAG) != 0) {
+                strip1Multiple += readVarInt();
+                strip2Multiple += readVarInt();
+            }
+
+            if (batch != null) {
+                batch.add(tiling, strip1Family, strip1Multiple, strip2Family, strip2Multiple,
+                        latticeCoords, 0);
+                if (batch.isFull()) {
+                    batchVisitor.visitRhombii(batch);
+                    batch.clear();
+                }
+            } else {
+                output.visitRhombus(new Rhombus(
+                        tiling.getStripFamily(strip1Family).getStrip(strip1Multiple),
+                        tiling.getStripFamily(strip2Family).getStrip(strip2Multiple),
+                        latticeCoords));
+            }
+        }
+
+        if (batch != null && !batch.isEmpty()) {
+            batchVisitor.visitRhombii(batch);
+            batch.clear();
+        }
+    }
+
+    private IOException invalid(String message) {
+        return new IOException(message + " at offset " + (bufferOffset + position - 1));
+    }
+
+    private int readByte() throws IOException {
+        if (position == limit) {
+            bufferOffset += limit;
+            position = 0;
+            limit = Math.max(inputStream.read(buffer), 0);
+            if (limit == 0) {
+                throw new EOFException("Unexpected end of binary tiling");
+            }
+        }
+        return buffer[position++] & 0xFF;
+    }
+
+    /**
+     * Reads a zigzag encoded varint, as written by BinaryOutput.
+     */
+    private int readVarInt() throws IOException {
+        int zigzag = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            int b = readByte();
+            zigzag |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return (zigzag >>> 1) ^ -(zigzag & 1);
+            }
+        }
+        throw invalid("Invalid varint");
+    }
+
+    private int readInt() throws IOException {
+        int value = 0;
+        for (int i = 0; i < 4; i++) {
+            value = (value << 8) | readByte();
+        }
+        return value;
+    }
+
+    private long readLong() throws IOException {
+        long value = 0;
+        for (int i = 0; i < 8; i++) {
+            value = (value << 8) | readByte();
+        }
+        return value;
+    }
+}
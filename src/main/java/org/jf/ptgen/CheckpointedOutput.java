@@ -0,0 +1,356 @@
+/*
+ * Copyright 2019 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jf.ptgen;
+
+import com.beust.jcommander.Parameter;
+import org.jf.ptgen.PTGen.BoxFilter;
+import org.jf.ptgen.PTGen.RhombusOutput;
+import org.jf.ptgen.penrose.BoundingBox;
+import org.jf.ptgen.penrose.PenroseTiling.RhombusBatchVisitor;
+import org.jf.ptgen.penrose.Rhombus;
+import org.jf.ptgen.penrose.RhombusBatch;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.lang.reflect.Field;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Wraps a StreamOutput that writes to a file, and records each grid box that has been completely
+ * written in a manifest file, along with the size of the output at the end of that box.
+ *
+ * <p>If the manifest already exists when generation starts, the output is truncated to the
+ * end of the last recorded box, and only the boxes that aren't recorded as complete are
+ * generated and appended to it. Since each box is generated the same way from the seed,
+ * the result is the same as if generation had never been interrupted.
+ *
+ * <p>The manifest is a text file, with a line identifying the tiling, a line with the type and
+ * options of the output, a line with the size of the header written by start(), and a line with
+ * the position and output size of each completed box. A checkpoint is only resumed with the
+ * same tiling and output options, since options like --show-grid change what is written for
+ * each box without changing the header.
+ */
+class CheckpointedOutput implements RhombusOutput, RhombusBatchVisitor, BoxFilter, Closeable {
+    private static final String MANIFEST_VERSION = "ptgen-checkpoint 2";
+
+    private final StreamOutput output;
+    private final Path outputPath;
+    private final Path manifestPath;
+
+    private final Set<Long> completedBoxes = new HashSet<>();
+
+    private FileChannel outputChannel = null;
+    private CountingOutputStream countingStream = null;
+    private Writer manifestWriter = null;
+
+    CheckpointedOutput(StreamOutput output, Path outputPath, Path manifestPath) {
+        this.output = output;
+        this.outputPath = outputPath;
+        this.manifestPath = manifestPath;
+    }
+
+    @Override public void start(PTGen ptgen) {
+        try {
+            start0(ptgen);
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    private void start0(PTGen ptgen) throws IOException {
+        String tilingLine = String.format(Locale.ROOT, "tiling %d %s %s %s %s %d %d",
+                ptgen.getSeed(), ptgen.minX, ptgen.minY, ptgen.width, ptgen.height,
+                ptgen.countX, ptgen.countY);
+        String outputLine = describeOutput(output);
+
+        outputChannel = FileChannel.open(outputPath, StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+
+        byte[] expectedHeader = null;
+        long resumeOffset = 0;
+
+        List<String> lines = Files.exists(manifestPath) ? readManifest() : null;
+
+        if (lines != null && lines.size() >= 4) {
+            if (!MANIFEST_VERSION.equals(lines.get(0)) || !tilingLine.equals(lines.get(1))) {
+                throw new IOException("The checkpoint in " + manifestPath + " is for a " +
+                        "different tiling");
+            }
+            if (!outputLine.equals(lines.get(2))) {
+                throw new IOException("The checkpoint in " + manifestPath + " was written with " +
+                        "different output options");
+            }
+
+            long outputSize = outputChannel.size();
+            long headerSize = parseHeaderSize(lines.get(3));
+            if (headerSize > outputSize) {
+                throw new IOException("The output is shorter than the checkpoint");
+            }
+            resumeOffset = headerSize;
+
+            for (int i = 4; i < lines.size(); i++) {
+                String[] parts = lines.get(i).split(" ");
+                if (parts.length != 4 || !parts[0].equals("box")) {
+                    throw new IOException("Invalid checkpoint: " + lines.get(i));
+                }
+                long offset;
+                try {
+                    offset = Long.parseLong(parts[3]);
+                    completedBoxes.add(boxKey(Integer.parseInt(parts[1]),
+                            Integer.parseInt(parts[2])));
+                } catch (NumberFormatException ex) {
+                    throw new IOException("Invalid checkpoint: " + lines.get(i));
+                }
+                if (offset > outputSize) {
+                    throw new IOException("The output is shorter than the checkpoint");
+                }
+                resumeOffset = offset;
+            }
+
+            expectedHeader = new byte[(int)headerSize];
+            try (InputStream inputStream = Files.newInputStream(outputPath)) {
+                int read = 0;
+                while (read < expectedHeader.length) {
+                    int count = inputStream.read(expectedHeader, read,
+                            expectedHeader.length - read);
+                    if (count < 0) {
+                        throw new IOException("The output is shorter than the checkpoint");
+                    }
+                    read += count;
+                }
+            }
+
+            // Replace the manifest with one without any incomplete trailing line. This is done
+            // with a move, so that the existing checkpoint isn't lost if this is interrupted.
+            Path tempPath = manifestPath.resolveSibling(manifestPath.getFileName() + ".tmp");
+            try (Writer writer = Files.newBufferedWriter(tempPath, StandardCharsets.UTF_8)) {
+                for (String line: lines) {
+                    writer.write(line);
+                    writer.write('\n');
+                }
+            }
+            Files.move(tempPath, manifestPath, StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+            manifestWriter = Files.newBufferedWriter(manifestPath, StandardCharsets.UTF_8,
+                    StandardOpenOption.APPEND);
+        } else {
+            manifestWriter = Files.newBufferedWriter(manifestPath, StandardCharsets.UTF_8);
+            manifestWriter.write(
+                    MANIFEST_VERSION + "\n" + tilingLine + "\n" + outputLine + "\n");
+            manifestWriter.flush();
+        }
+
+        outputChannel.truncate(resumeOffset);
+        outputChannel.position(resumeOffset);
+
+        countingStream = new CountingOutputStream(Channels.newOutputStream(outputChannel),
+                expectedHeader, resumeOffset);
+        output.setOutputStream(countingStream);
+        output.start(ptgen);
+        output.flush();
+
+        if (expectedHeader == null) {
+            writeManifestLine("header " + countingStream.getCount());
+        } else if (!countingStream.isHeaderComplete()) {
+            throw new IOException("The output options are different than in the checkpoint");
+        }
+    }
+
+    /**
+     * @return A line describing the type of an output and the value of each of its options,
+     * including the ones that weren't given, so that the same options given in a different
+     * order or form have the same description.
+     */
+    static String describeOutput(StreamOutput output) {
+        List<String> options = new ArrayList<>();
+        for (Class<?> cls = output.getClass(); cls != null; cls = cls.getSuperclass()) {
+            for (Field field: cls.getDeclaredFields()) {
+                Parameter parameter = field.getAnnotation(Parameter.class);
+                if (parameter == null) {
+                    continue;
+                }
+                field.setAccessible(true);
+                try {
+                    options.add(parameter.names()[0] + "=" + field.get(output));
+                } catch (IllegalAccessException ex) {
+                    throw new IllegalStateException(ex);
+                }
+            }
+        }
+        Collections.sort(options);
+
+        return "output " + output.getClass().getSimpleName() + " " + String.join(" ", options);
+    }
+
+    /**
+     * Reads the complete lines of the manifest. The last line is dropped if it doesn't end with
+     * a newline, since the previous run may have been interrupted while writing it.
+     */
+    private List<String> readManifest() throws IOException {
+        String manifest = new String(Files.readAllBytes(manifestPath), StandardCharsets.UTF_8);
+        List<String> lines = new ArrayList<>(Arrays.asList(manifest.split("\n", -1)));
+        // The last element is either empty, or an incomplete line
+        lines.remove(lines.size() - 1);
+        return lines;
+    }
+
+    private static long parseHeaderSize(String line) throws IOException {
+        String[] parts = line.split(" ");
+        if (parts.length != 2 || !parts[0].equals("header")) {
+            throw new IOException("Invalid checkpoint: " + line);
+        }
+        try {
+            return Long.parseLong(parts[1]);
+        } catch (NumberFormatException ex) {
+            throw new IOException("Invalid checkpoint: " + line);
+        }
+    }
+
+    private static long boxKey(int x, int y) {
+        return ((long)x << 32) | (y & 0xFFFFFFFFL);
+    }
+
+    private void writeManifestLine(String line) {
+        try {
+            manifestWriter.write(line);
+            manifestWriter.write('\n');
+            manifestWriter.flush();
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    /**
+     * @return The number of boxes that were already complete when generation started.
+     */
+    public int getCompletedBoxCount() {
+        return completedBoxes.size();
+    }
+
+    @Override public boolean includeBox(int x, int y) {
+        return !completedBoxes.contains(boxKey(x, y));
+    }
+
+    @Override public void startBox(BoundingBox boundingBox) {
+        output.startBox(boundingBox);
+    }
+
+    @Override public void visitRhombus(Rhombus rhombus) {
+        output.visitRhombus(rhombus);
+    }
+
+    @Override public void visitRhombii(RhombusBatch batch) {
+        if (output instanceof RhombusBatchVisitor) {
+            ((RhombusBatchVisitor)output).visitRhombii(batch);
+        } else {
+            batch.visitEach(output);
+        }
+    }
+
+    @Override public void endBox(BoundingBox boundingBox) {
+        output.endBox(boundingBox);
+
+        // The box's output must be in the file before the box is recorded as complete
+        output.flush();
+        writeManifestLine("box " + boundingBox.xMultiple + " " + boundingBox.yMultiple + " " +
+                countingStream.getCount());
+    }
+
+    @Override public void end() {
+        output.end();
+    }
+
+    @Override public void close() throws IOException {
+        try {
+            if (manifestWriter != null) {
+                manifestWriter.close();
+            }
+        } finally {
+            if (outputChannel != null) {
+                outputChannel.close();
+            }
+        }
+    }
+
+    /**
+     * Counts the bytes written to the output. When resuming, the header written by start() is
+     * already in the output, so it is compared against what's there and then dropped.
+     */
+    private static class CountingOutputStream extends OutputStream {
+        private final OutputStream out;
+        private final byte[] expectedHeader;
+        private long count;
+        private int headerPosition = 0;
+
+        CountingOutputStream(OutputStream out, byte[] expectedHeader, long count) {
+            this.out = out;
+            this.expectedHeader = expectedHeader;
+            this.count = count;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public boolean isHeaderComplete() {
+            return headerPosition == expectedHeader.length;
+        }
+
+        @Override public void write(int b) throws IOException {
+            write(new byte[] {(byte)b}, 0, 1);
+        }
+
+        @Override public void write(byte[] b, int off, int len) throws IOException {
+            if (expectedHeader != null && headerPosition < expectedHeader.length) {
+                int headerLength = Math.min(len, expectedHeader.length - headerPosition);
+                if (!Arrays.equals(
+                        Arrays.copyOfRange(b, off, off + headerLength),
+                        Arrays.copyOfRange(expectedHeader, headerPosition,
+                                headerPosition + headerLength))) {
+                    throw new IOException(
+                            "The output options are different than in the checkpoint");
+                }
+                headerPosition += headerLength;
+                off += headerLength;
+                len -= headerLength;
+            }
+            out.write(b, off, len);
+            count += len;
+        }
+
+        @Override public void flush() throws IOException {
+            out.flush();
+        }
+    }
+}
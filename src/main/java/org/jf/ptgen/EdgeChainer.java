@@ -0,0 +1,214 @@
+/*
+ * Copyright 2019 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jf.ptgen;
+
+import org.jf.ptgen.penrose.LongPairHashTable;
+
+import java.util.Arrays;
+
+/**
+ * Links a set of distinct edges into polylines, where consecutive edges share a vertex.
+ *
+ * <p>The vertices are identified by their lattice coordinates, so edges from different rhombii
+ * are joined exactly where they meet. The polylines are found greedily. Walks start from
+ * the vertices with an odd number of edges first, since every such vertex must be the end of
+ * some polyline, and then continue from any vertex with edges left. Each walk follows unused
+ * edges until it gets stuck. Every edge is in exactly one polyline.
+ *
+ * <p>The arrays are reused after clear(), so chaining many boxes doesn't allocate once they
+ * have grown to the size of the largest box.
+ */
+class EdgeChainer {
+    private static final int INITIAL_CAPACITY = 1024;
+
+    /**
+     * Receives the polylines found by chain().
+     */
+    interface PolylineVisitor {
+        /**
+         * @param coords The x and y coordinates of the points of the polyline. Only the first
+         *               pointCount * 2 entries are valid, and the array is reused for the next
+         *               polyline.
+         * @param pointCount The number of points in the polyline, which is at least 2.
+         */
+        void visitPolyline(double[] coords, int pointCount);
+    }
+
+    // The index of each vertex, keyed by its lattice coordinates packed the same way as in
+    // EdgeSet
+    private final LongPairHashTable vertexIndexes = new LongPairHashTable(INITIAL_CAPACITY);
+
+    // The x and y coordinates of each vertex, by index
+    private double[] vertexCoords = new double[INITIAL_CAPACITY];
+    private int vertexCount = 0;
+
+    // The indexes of the 2 vertices of each edge
+    private int[] edgeVertices = new int[INITIAL_CAPACITY];
+    private int edgeCount = 0;
+
+    // Scratch space for chain(). The edges of vertex v are at
+    // [adjacencyStarts[v], adjacencyStarts[v + 1]) of adjacentEdges.
+    private int[] adjacencyStarts = new int[0];
+    private int[] adjacentEdges = new int[0];
+    private int[] remainingEdges = new int[0];
+    private boolean[] usedEdges = new boolean[0];
+    private double[] polylineCoords = new double[0];
+
+    /**
+     * @return The number of edges added since the last clear().
+     */
+    public int size() {
+        return edgeCount;
+    }
+
+    /**
+     * Adds an edge. The edge must not already have been added.
+     *
+     * @param vertex1 The lattice coordinates of the first vertex.
+     * @param x1 The x coordinate of the first vertex.
+     * @param y1 The y coordinate of the first vertex.
+     * @param vertex2 The lattice coordinates of the second vertex.
+     * @param x2 The x coordinate of the second vertex.
+     * @param y2 The y coordinate of the second vertex.
+     */
+    public void addEdge(int[] vertex1, double x1, double y1, int[] vertex2, double x2, double y2) {
+        if (edgeCount * 2 == edgeVertices.length) {
+            edgeVertices = Arrays.copyOf(edgeVertices, edgeVertices.length * 2);
+        }
+        edgeVertices[edgeCount * 2] = getVertexIndex(vertex1, x1, y1);
+        edgeVertices[edgeCount * 2 + 1] = getVertexIndex(vertex2, x2, y2);
+        edgeCount++;
+    }
+
+    /**
+     * Removes all edges and vertices. The arrays keep their current capacity.
+     */
+    public void clear() {
+        vertexIndexes.clear();
+        vertexCount = 0;
+        edgeCount = 0;
+    }
+
+    /**
+     * Links the edges into polylines, and passes each one to the visitor.
+     */
+    public void chain(PolylineVisitor visitor) {
+        buildAdjacency();
+
+        // Vertices with an odd number of edges are the ends of polylines. Starting there first
+        // means the walks don't end at them part way through, splitting a polyline in 2.
+        for (int vertex = 0; vertex < vertexCount; vertex++) {
+            if ((remainingEdges[vertex] & 1) != 0) {
+                walk(vertex, visitor);
+            }
+        }
+        for (int vertex = 0; vertex < vertexCount; vertex++) {
+            while (remainingEdges[vertex] > 0) {
+                walk(vertex, visitor);
+            }
+        }
+    }
+
+    /**
+     * Follows unused edges from the given vertex until there are none left, and visits the
+     * resulting polyline.
+     */
+    private void walk(int startVertex, PolylineVisitor visitor) {
+        int vertex = startVertex;
+        int pointCount = addPoint(vertex, 0);
+
+        while (remainingEdges[vertex] > 0) {
+            int edge = -1;
+            for (int i = adjacencyStarts[vertex]; i < adjacencyStarts[vertex + 1]; i++) {
+                if (!usedEdges[adjacentEdges[i]]) {
+                    edge = adjacentEdges[i];
+                    break;
+                }
+            }
+
+            usedEdges[edge] = true;
+            int nextVertex = edgeVertices[edge * 2];
+            if (nextVertex == vertex) {
+                nextVertex = edgeVertices[edge * 2 + 1];
+            }
+            remainingEdges[vertex]--;
+            remainingEdges[nextVertex]--;
+
+            vertex = nextVertex;
+            pointCount = addPoint(vertex, pointCount);
+        }
+
+        visitor.visitPolyline(polylineCoords, pointCount);
+    }
+
+    private int addPoint(int vertex, int pointCount) {
+        polylineCoords[pointCount * 2] = vertexCoords[vertex * 2];
+        polylineCoords[pointCount * 2 + 1] = vertexCoords[vertex * 2 + 1];
+        return pointCount + 1;
+    }
+
+    private void buildAdjacency() {
+        if (remainingEdges.length < vertexCount) {
+            int capacity = Math.max(vertexCount, remainingEdges.length * 2);
+            remainingEdges = new int[capacity];
+            adjacencyStarts = new int[capacity + 1];
+        }
+        if (usedEdges.length < edgeCount) {
+            int capacity = Math.max(edgeCount, usedEdges.length * 2);
+            usedEdges = new boolean[capacity];
+            adjacentEdges = new int[capacity * 2];
+            // A polyline can't have more edges than there are in total
+            polylineCoords = new double[(capacity + 1) * 2];
+        }
+
+        Arrays.fill(remainingEdges, 0, vertexCount, 0);
+        Arrays.fill(usedEdges, 0, edgeCount, false);
+
+        for (int i = 0; i < edgeCount * 2; i++) {
+            remainingEdges[edgeVertices[i]]++;
+        }
+
+        // Fill in the edges of each vertex from the end of its range, using adjacencyStarts as
+        // the insertion point. Afterwards, it points to the start of each range.
+        int end = 0;
+        for (int vertex = 0; vertex < vertexCount; vertex++) {
+            end += remainingEdges[vertex];
+            adjacencyStarts[vertex] = end;
+        }
+        adjacencyStarts[vertexCount] = end;
+        for (int edge = edgeCount - 1; edge >= 0; edge--) {
+            adjacentEdges[--adjacencyStarts[edgeVertices[edge * 2]]] = edge;
+            adjacentEdges[--adjacencyStarts[edgeVertices[edge * 2 + 1]]] = edge;
+        }
+    }
+
+    private int getVertexIndex(int[] latticeCoords, double x, double y) {
+        int vertex = vertexIndexes.putIfAbsent(EdgeSet.packHigh(latticeCoords),
+                EdgeSet.packLow(latticeCoords, 0), vertexCount);
+        if (vertex != LongPairHashTable.ABSENT) {
+            return vertex;
+        }
+
+        vertex = vertexCount++;
+        if (vertex * 2 == vertexCoords.length) {
+            vertexCoords = Arrays.copyOf(vertexCoords, vertexCoords.length * 2);
+        }
+        vertexCoords[vertex * 2] = x;
+        vertexCoords[vertex * 2 + 1] = y;
+        return vertex;
+    }
+}
@@ -0,0 +1,149 @@
+/*
+ * Copyright 2019 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jf.ptgen;
+
+import org.jf.ptgen.penrose.LongPairHashTable;
+
+/**
+ * A set of rhombus edges, keyed by their position in the integer lattice.
+ *
+ * <p>An edge always joins 2 vertices whose lattice coordinates differ by 1 in a single
+ * component. It is identified by the lattice coordinates of the lower of the 2 vertices and the
+ * index of the component that differs, which doesn't depend on which rhombus the edge came from,
+ * or which direction it was traversed in.
+ *
+ * <p>The keys are packed into 2 longs and stored in a LongPairHashTable, so adding an edge
+ * doesn't allocate. The table is reused after clear().
+ */
+class EdgeSet {
+    // The 5 coordinates and a 3 bit tag fill the 128 bits of a key. See packHigh() and packLow()
+    static final int COORD_BITS = 25;
+    private static final long COORD_MASK = (1L << COORD_BITS) - 1;
+    static final int MIN_COORD = -(1 << (COORD_BITS - 1));
+    static final int MAX_COORD = (1 << (COORD_BITS - 1)) - 1;
+
+    // The bits of the middle coordinate that are in the low key
+    private static final int SPLIT_BITS = 64 - 3 - COORD_BITS * 2;
+
+    private static final int INITIAL_CAPACITY = 1024;
+
+    /**
+     * Selects which edges are kept by retain().
+     */
+    interface EdgePredicate {
+        /**
+         * @param lowerVertex The lattice coordinates of the lower vertex of the edge. This array
+         *                    is reused for each edge, and must not be modified.
+         * @param family The index of the lattice component that differs between the 2 vertices.
+         * @return true to keep the edge.
+         */
+        boolean test(int[] lowerVertex, int family);
+    }
+
+    private final LongPairHashTable table = new LongPairHashTable(INITIAL_CAPACITY);
+
+    /**
+     * Adds an edge to the set.
+     *
+     * @param lowerVertex The lattice coordinates of the lower vertex of the edge.
+     * @param family The index of the lattice component that differs between the 2 vertices of
+     *               the edge. This is the strip family that the edge crosses.
+     * @return true if the edge was added, or false if it was already present.
+     */
+    public boolean add(int[] lowerVertex, int family) {
+        return table.putIfAbsent(packHigh(lowerVertex), packLow(lowerVertex, family), 0) ==
+                LongPairHashTable.ABSENT;
+    }
+
+    /**
+     * @return The number of edges in the set.
+     */
+    public int size() {
+        return table.size();
+    }
+
+    /**
+     * Removes all edges from the set. The table keeps its current capacity.
+     */
+    public void clear() {
+        table.clear();
+    }
+
+    /**
+     * Removes all edges that don't match the given predicate. The table keeps its current
+     * capacity.
+     */
+    public void retain(EdgePredicate predicate) {
+        int[] lowerVertex = new int[5];
+        table.retain((highKey, lowKey) -> {
+            unpack(highKey, lowKey, lowerVertex);
+            return predicate.test(lowerVertex, (int)(lowKey & 7));
+        });
+    }
+
+    /**
+     * @return The high long of the key for the given lattice coordinates. This holds the first 2
+     * coordinates, and the upper bits of the third.
+     */
+    static long packHigh(int[] latticeCoords) {
+        return pack(latticeCoords[0]) << (64 - COORD_BITS) |
+                pack(latticeCoords[1]) << (64 - COORD_BITS * 2) |
+                pack(latticeCoords[2]) >>> SPLIT_BITS;
+    }
+
+    /**
+     * @param tag A value from 0 to 7 that is stored in the low 3 bits.
+     * @return The low long of the key for the given lattice coordinates. This holds the lower
+     * bits of the third coordinate, the last 2 coordinates and the tag.
+     */
+    static long packLow(int[] latticeCoords, int tag) {
+        return pack(latticeCoords[2]) << (64 - SPLIT_BITS) |
+                pack(latticeCoords[3]) << (3 + COORD_BITS) |
+                pack(latticeCoords[4]) << 3 |
+                tag;
+    }
+
+    /**
+     * Gets the lattice coordinates from a key packed by packHigh() and packLow().
+     */
+    static void unpack(long highKey, long lowKey, int[] latticeCoords) {
+        latticeCoords[0] = unpack(highKey >>> (64 - COORD_BITS));
+        latticeCoords[1] = unpack(highKey >>> (64 - COORD_BITS * 2));
+        latticeCoords[2] = unpack(highKey << SPLIT_BITS | lowKey >>> (64 - SPLIT_BITS));
+        latticeCoords[3] = unpack(lowKey >>> (3 + COORD_BITS));
+        latticeCoords[4] = unpack(lowKey >>> 3);
+    }
+
+    /**
+     * @return The given lattice coordinate, packed into the low COORD_BITS bits of a long.
+     */
+    private static long pack(int coord) {
+        if (coord < MIN_COORD || coord > MAX_COORD) {
+            throw new IllegalStateException(
+                    String.format("Lattice coordinate %d is too large for an edge key", coord));
+        }
+        return coord & COORD_MASK;
+    }
+
+    /**
+     * @return The lattice coordinate in the low COORD_BITS bits of the given value, which was
+     * packed by pack().
+     */
+    private static int unpack(long packed) {
+        return (int)(packed << (64 - COORD_BITS) >> (64 - COORD_BITS));
+    }
+}
@@ -0,0 +1,77 @@
+/*
+ * Copyright 2019 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jf.ptgen;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * A flight recorder event for the generation of a single grid box.
+ *
+ * <p>The duration of the event covers generating the box. When boxes are generated ahead on
+ * other threads, the time spent writing the box to the output comes afterwards and is only
+ * recorded in outputTime.
+ */
+@Name("org.jf.ptgen.GenerateBox")
+@Label("Generate Grid Box")
+@Category("PTGen")
+@StackTrace(false)
+class GenerateBoxEvent extends Event {
+    @Label("Seed")
+    long seed;
+
+    @Label("X")
+    int x;
+
+    @Label("Y")
+    int y;
+
+    @Label("Rhombii Visited")
+    long rhombiiVisited;
+
+    @Label("Rhombii Discarded")
+    @Description("Rhombii generated while walking strips that belong to another box")
+    long rhombiiDiscarded;
+
+    @Label("Strips Walked")
+    long stripsWalked;
+
+    @Label("Walk Steps")
+    long walkSteps;
+
+    @Label("Overscan Steps")
+    @Description("Walk steps for rhombii with their center outside of the box")
+    long overscanSteps;
+
+    @Label("Processed Rhombii")
+    long processedRhombii;
+
+    @Label("Pending Rhombii")
+    long pendingRhombii;
+
+    @Label("Existing Strips")
+    long existingStrips;
+
+    @Label("Output Time")
+    @Timespan(Timespan.NANOSECONDS)
+    long outputTime;
+}
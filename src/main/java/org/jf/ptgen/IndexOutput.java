@@ -0,0 +1,52 @@
+/*
+ * Copyright 2019 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jf.ptgen;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+
+/**
+ * This builds a RhombusIndex of the tiling, and writes it at the end of generation, so that it
+ * can be loaded with RhombusIndex.readFrom() and queried.
+ */
+class IndexOutput extends RhombusIndex implements StreamOutput {
+    private OutputStream outputStream = System.out;
+
+    @Override public void setOutputStream(OutputStream outputStream) {
+        this.outputStream = outputStream;
+    }
+
+    @Override public void end() {
+        super.end();
+        try {
+            writeTo(outputStream);
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    /**
+     * Nothing is written until the end, since the index covers the whole tiling.
+     */
+    @Override public void flush() {
+    }
+
+    @Override public boolean dependsOnEarlierBoxes() {
+        return true;
+    }
+}
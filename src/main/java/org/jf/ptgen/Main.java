@@ -16,15 +16,42 @@
 
 package org.jf.ptgen;
 
+import com.beust.jcommander.IStringConverter;
 import com.beust.jcommander.JCommander;
 import com.beust.jcommander.Parameter;
+import com.beust.jcommander.ParameterException;
+import org.jf.ptgen.PTGen.BoxFilter;
 import org.jf.ptgen.PTGen.RhombusOutput;
+import org.jf.ptgen.penrose.GenerationStats;
+import org.jf.ptgen.penrose.PenroseTiling.Engine;
+
+import javax.annotation.Nullable;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import static org.jf.ptgen.OutputType.SVG;
-import static org.jf.ptgen.OutputType.SVGLINE;
 
 public class Main {
 
+    // The number of tilings to keep when serving, for the most recently requested seeds
+    private static final int MAX_SERVED_TILINGS = 16;
+
     @Parameter(names={"--minX", "-x"}, description="The minimum x value in pentagrid space of " +
             "the tiling to generate.")
     private Double minX = 0.0;
@@ -54,55 +81,504 @@ public class Main {
     @Parameter(names={"--seed", "-s"}, description="The random seed used to generate the tiling.")
     private long seed = 0;
 
+    @Parameter(names={"--seeds"}, description="Generate a separate tiling for each of the " +
+            "given seeds, instead of just --seed. This is a comma separated list of seeds and " +
+            "inclusive ranges of seeds, e.g. 1,5-10. Repeated seeds are only generated once. " +
+            "Each tiling is written to --output, with %d replaced by the seed. When --threads " +
+            "is more than 1, the seeds are generated concurrently on the same threads. The time " +
+            "taken for each seed is written to stderr.")
+    private String seeds = null;
+
+    @Parameter(names={"--output", "-o"}, description="The file to write the output to. If not " +
+            "specified, the output is written to stdout.")
+    private String outputPath = null;
+
+    @Parameter(names={"--input", "-i"}, description="Instead of generating a tiling, read a " +
+            "tiling that was previously written with --type=BINARY from the given file, and " +
+            "write it out as the type given by --type. The seed and grid options are taken " +
+            "from the file.")
+    private String inputPath = null;
+
+    @Parameter(names={"--checkpoint"}, description="Record each completed grid box in the " +
+            "given manifest file. If the manifest already exists, an interrupted run is resumed " +
+            "by generating only the unfinished boxes, and appending them to the output. " +
+            "Requires --output.")
+    private String checkpointPath = null;
+
+    @Parameter(names={"--threads"}, description="The number of threads to generate grid boxes " +
+            "on. Multiple boxes are generated concurrently when this is more than 1.")
+    private int threads = 1;
+
+    @Parameter(names={"--unordered"}, description="When generating with multiple threads, " +
+            "output each grid box as soon as it is generated, instead of in the usual order.")
+    private boolean unordered = false;
+
+    @Parameter(names={"--split"}, description="When generating with multiple threads, split " +
+            "each grid box into regions that are generated concurrently, instead of generating " +
+            "separate grid boxes concurrently. This is faster for a few very large grid boxes, " +
+            "but may change the order of the output within a box.")
+    private boolean split = false;
+
+    @Parameter(names={"--engine"}, converter = EngineConverter.class, description="How the " +
+            "rhombii of each grid box are generated. FLOOD_FILL walks the strips out from a " +
+            "rhombus in the box. ENUMERATION visits the strip intersections near the box " +
+            "directly, which doesn't keep sets of rhombii in memory, and may change the order " +
+            "of the output within a box. --handoff and --sweep have no effect with ENUMERATION.")
+    private Engine engine = Engine.FLOOD_FILL;
+
+    @Parameter(names={"--handoff"}, description="Hand the strips walked for each grid box " +
+            "over to the next box in the same column, instead of walking them again. This is " +
+            "faster for small grid boxes, but may change the order of the output within a box. " +
+            "Only applies when generating on a single thread.")
+    private boolean handoff = false;
+
+    @Parameter(names={"--sweep"}, description="Generate each grid box in horizontal bands of " +
+            "at most the given height, only keeping the rhombii around the current band in " +
+            "memory. This allows very large grid boxes to be generated, but may change the " +
+            "order of the output within a box. Only applies when generating on a single thread.")
+    private Double sweepBandHeight = null;
+
+    @Parameter(names={"--pipeline"}, description="Write the output on a separate thread, so " +
+            "that generating and writing overlap, with at most the given number of batches of " +
+            "rhombii queued up for it. Generation waits for the output when the queue is full. " +
+            "This helps most when writing is slow, e.g. to a network filesystem.")
+    private Integer pipelineQueueSize = null;
+
+    @Parameter(names={"--mmap"}, description="Render the output for each grid box on the " +
+            "threads that generate them, and copy the rendered boxes into --output through " +
+            "memory mapping, instead of writing everything on a single thread. This helps when " +
+            "writing the output takes as long as generating it. Requires --output.")
+    private boolean mmap = false;
+
+    @Parameter(names={"--stats"}, description="Write a summary of the work done while " +
+            "generating to stderr, e.g. the number of rhombii generated and discarded, the time " +
+            "spent generating grid boxes and the time spent writing the output.")
+    private boolean printStats = false;
+
+    @Parameter(names={"--serve"}, description="Instead of generating a tiling, run a local " +
+            "HTTP server on the given port that generates single grid boxes on request, with " +
+            "GET /tile?seed=S&x=X&y=Y&size=N&type=T. GET /stats reports the cache hit rate " +
+            "and latencies. --threads sets the number of request threads.")
+    private Integer servePort = null;
+
+    @Parameter(names={"--cacheSize"}, description="When serving, the maximum total size of the " +
+            "cached grid boxes, in megabytes.")
+    private long cacheSize = 64;
+
     @Parameter(names={"--help", "-?"}, help=true, description="Show this usage info.")
     private boolean help = false;
 
-    public void doMain(RhombusOutput output) {
-        PTGen ptGen = new PTGen(seed, minX, minY, width, height, countX, countY);
-        
-        ptGen.visitRhombii(output);
+    // The options for the output, which are parsed separately for each output that is created
+    private String[] outputArgs = new String[0];
+
+    // The combined stats of all the tilings generated so far, if --stats was given
+    private final GenerationStats stats = new GenerationStats();
+
+    public void doMain(StreamOutput output) throws IOException {
+        if (mmap) {
+            generateMapped(output);
+        } else if (checkpointPath != null) {
+            try (CheckpointedOutput checkpointedOutput = new CheckpointedOutput(
+                    output, Paths.get(outputPath), Paths.get(checkpointPath))) {
+                generate(checkpointedOutput, checkpointedOutput);
+            }
+        } else if (outputPath == null) {
+            output.setOutputStream(System.out);
+            generateOrReplay(output);
+        } else {
+            try (OutputStream outputStream = new FileOutputStream(outputPath)) {
+                output.setOutputStream(outputStream);
+                generateOrReplay(output);
+            }
+        }
     }
 
-    public static void main(String[] args) {
-        Main main = new Main();
-        RhombusOutput output = null;
+    /**
+     * Generates the tiling, or a tiling for each seed of --seeds, and writes the stats summary if
+     * --stats was given.
+     *
+     * @param output The output to write the tiling to, when not generating multiple seeds.
+     * @param seedList The seeds given by --seeds, or null to generate the tiling for --seed.
+     * @param statsStream The stream to write the stats summary to.
+     */
+    void run(StreamOutput output, @Nullable List<Long> seedList, PrintStream statsStream)
+            throws IOException {
+        if (seedList != null) {
+            generateSeeds(seedList);
+        } else {
+            doMain(output);
+        }
+        if (printStats && inputPath == null) {
+            statsStream.print(stats.getSummary());
+        }
+    }
+
+    private void generateOrReplay(StreamOutput output) throws IOException {
+        if (inputPath == null) {
+            generate(output, BoxFilter.ALL_BOXES);
+        } else {
+            replay(output);
+        }
+    }
+
+    private void replay(StreamOutput output) throws InputException {
+        try (InputStream inputStream = new FileInputStream(inputPath)) {
+            new BinaryTilingReader(inputStream).replay(output);
+        } catch (IOException ex) {
+            // Errors writing the output are thrown as UncheckedIOExceptions, so this is always an
+            // error with the input.
+            throw new InputException(ex);
+        }
+    }
+
+    /**
+     * Generates the tiling into --output with a MappedFileWriter.
+     */
+    private void generateMapped(StreamOutput output) throws IOException {
+        PTGen ptGen = new PTGen(seed, minX, minY, width, height, countX, countY);
+        ptGen.setEngine(engine);
+        if (printStats) {
+            ptGen.setStats(stats);
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(threads, 1));
         try {
-            JCommander mainParser = JCommander.newBuilder()
-                    .addObject(main)
-                    .acceptUnknownOptions(true)
-                    .build();
+            // Keep a few boxes queued up per thread, like when generating with multiple threads
+            // normally.
+            new MappedFileWriter(Paths.get(outputPath), this::createOutput).write(ptGen, output,
+                    executor, Math.max(threads, 1) * 4, !unordered, BoxFilter.ALL_BOXES);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
 
-            mainParser.parse(args);
+    private void serve() throws IOException {
+        TileServer server = new TileServer(servePort, Math.max(threads, 1), MAX_SERVED_TILINGS,
+                cacheSize * 1024 * 1024);
+        server.start();
+        System.err.println("Serving tiles on http://localhost:" + server.getPort() + "/tile");
+    }
 
-            if (main.help) {
-                usage();
-                return;
+    private void generate(RhombusOutput output, BoxFilter boxFilter) {
+        if (threads > 1) {
+            ExecutorService executor = Executors.newFixedThreadPool(threads);
+            try {
+                generate(seed, output, boxFilter, executor);
+            } finally {
+                executor.shutdownNow();
             }
+        } else {
+            generate(seed, output, boxFilter, null);
+        }
+    }
 
-            if (main.type == SVG) {
-                output = new SvgOutput();
-            } else if (main.type == SVGLINE) {
-                output = new SvgLineOutput();
+    /**
+     * Generates the tiling for the given seed.
+     *
+     * @param executor The executor to generate the grid boxes on, or null to generate them on
+     *                 the calling thread.
+     */
+    private void generate(long seed, RhombusOutput output, BoxFilter boxFilter,
+                          @Nullable Executor executor) {
+        PTGen ptGen = new PTGen(seed, minX, minY, width, height, countX, countY);
+        ptGen.setEngine(engine);
+        GenerationStats seedStats = null;
+        if (printStats) {
+            seedStats = new GenerationStats();
+            ptGen.setStats(seedStats);
+        }
+
+        if (pipelineQueueSize != null) {
+            try (PipelinedOutput pipelinedOutput =
+                         new PipelinedOutput(output, pipelineQueueSize)) {
+                generate(ptGen, pipelinedOutput, boxFilter, executor);
             }
+        } else {
+            generate(ptGen, output, boxFilter, executor);
+        }
 
-            assert (output != null);
+        if (seedStats != null) {
+            // Multiple seeds may be generated concurrently
+            synchronized (stats) {
+                stats.add(seedStats);
+            }
+        }
+    }
 
-            JCommander outputParser = JCommander.newBuilder()
-                    .addObject(output)
-                    .build();
+    private void generate(PTGen ptGen, RhombusOutput output, BoxFilter boxFilter,
+                          @Nullable Executor executor) {
+        if (executor != null && split) {
+            // A couple of regions per thread evens out the regions that take longer
+            ptGen.splitRhombii(output, executor, threads * 2, boxFilter);
+        } else if (executor != null) {
+            // Keep a few boxes queued up per thread, so that the threads don't sit idle
+            // while the output catches up.
+            ptGen.visitRhombii(output, executor, threads * 4, !unordered, boxFilter);
+        } else if (sweepBandHeight != null) {
+            ptGen.sweepRhombii(output, sweepBandHeight, boxFilter);
+        } else {
+            ptGen.visitRhombii(output, handoff, boxFilter);
+        }
+    }
 
-            outputParser.parse(mainParser.getUnknownOptions().toArray(new String[0]));
+    /**
+     * Generates a tiling for each of the seeds given by --seeds, and writes a summary of the
+     * time taken for each one to stderr.
+     */
+    void generateSeeds(List<Long> seedList) throws IOException {
+        long start = System.nanoTime();
+        long[] times = new long[seedList.size()];
 
-            if (outputParser.getUnknownOptions().size() > 0) {
+        if (threads > 1) {
+            // The grid boxes of all the seeds are generated on a single pool of workers. Each
+            // seed also gets a thread that writes its output as its boxes are finished, which
+            // is mostly idle.
+            ExecutorService workers = Executors.newFixedThreadPool(threads);
+            ExecutorService writers = Executors.newFixedThreadPool(threads);
+            try {
+                List<Future<Long>> futures = new ArrayList<>();
+                for (long seed: seedList) {
+                    futures.add(writers.submit(() -> generateSeed(seed, workers)));
+                }
+                for (int i = 0; i < futures.size(); i++) {
+                    times[i] = futures.get(i).get();
+                }
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException(ex);
+            } catch (ExecutionException ex) {
+                Throwable cause = ex.getCause();
+                if (cause instanceof IOException) {
+                    throw (IOException)cause;
+                }
+                if (cause instanceof RuntimeException) {
+                    throw (RuntimeException)cause;
+                }
+                if (cause instanceof Error) {
+                    throw (Error)cause;
+                }
+                throw new RuntimeException(cause);
+            } finally {
+                writers.shutdownNow();
+                workers.shutdownNow();
+            }
+        } else {
+            for (int i = 0; i < seedList.size(); i++) {
+                times[i] = generateSeed(seedList.get(i), null);
+            }
+        }
+
+        for (int i = 0; i < seedList.size(); i++) {
+            System.err.printf(Locale.ROOT, "Seed %d: %.1f ms%n", seedList.get(i),
+                    times[i] / 1E6);
+        }
+        System.err.printf(Locale.ROOT, "%d seeds in %.1f ms%n", seedList.size(),
+                (System.nanoTime() - start) / 1E6);
+    }
+
+    /**
+     * Generates the tiling for a single seed of --seeds.
+     *
+     * @return The time taken, in nanoseconds.
+     */
+    private long generateSeed(long seed, @Nullable Executor executor) throws IOException {
+        long start = System.nanoTime();
+        StreamOutput output = createOutput();
+        if (outputPath == null) {
+            output.setOutputStream(System.out);
+            generate(seed, output, BoxFilter.ALL_BOXES, executor);
+        } else {
+            String path = outputPath.replace("%d", Long.toString(seed));
+            try (OutputStream outputStream = new FileOutputStream(path)) {
+                output.setOutputStream(outputStream);
+                generate(seed, output, BoxFilter.ALL_BOXES, executor);
+            }
+        }
+        return System.nanoTime() - start;
+    }
+
+    /**
+     * Parses a comma separated list of seeds and inclusive ranges of seeds, e.g. 1,5-10.
+     *
+     * @return The seeds in the order given, without duplicates, since each seed is written to
+     * its own file.
+     */
+    static List<Long> parseSeeds(String seeds) {
+        Set<Long> seedList = new LinkedHashSet<>();
+        for (String part: seeds.split(",", -1)) {
+            part = part.trim();
+            // The first character may be the sign of the start of the range
+            int separator = part.indexOf('-', 1);
+            if (separator < 0) {
+                seedList.add(Long.parseLong(part));
+                continue;
+            }
+
+            long first = Long.parseLong(part.substring(0, separator).trim());
+            long last = Long.parseLong(part.substring(separator + 1).trim());
+            if (last < first) {
+                throw new IllegalArgumentException("Invalid seed range: " + part);
+            }
+            for (long seed = first; seed <= last; seed++) {
+                seedList.add(seed);
+                if (seed == Long.MAX_VALUE) {
+                    break;
+                }
+            }
+        }
+        return new ArrayList<>(seedList);
+    }
+
+    /**
+     * Parses the given arguments into a new Main. The arguments that aren't main options are kept
+     * as the output options, which are parsed by createOutput().
+     */
+    static Main parse(String... args) {
+        Main main = new Main();
+        JCommander mainParser = JCommander.newBuilder()
+                .addObject(main)
+                .acceptUnknownOptions(true)
+                .build();
+
+        mainParser.parse(args);
+
+        main.outputArgs = mainParser.getUnknownOptions().toArray(new String[0]);
+        return main;
+    }
+
+    /**
+     * Creates a new output of the type given by --type, with the output options.
+     *
+     * @throws ParameterException If the output options aren't valid for the type.
+     */
+    private StreamOutput createOutput() {
+        StreamOutput output = type.newOutput();
+
+        JCommander outputParser = JCommander.newBuilder()
+                .addObject(output)
+                .build();
+
+        outputParser.parse(outputArgs);
+
+        if (outputParser.getUnknownOptions().size() > 0) {
+            throw new ParameterException("Unknown options: " + outputParser.getUnknownOptions());
+        }
+        return output;
+    }
+
+    public static void main(String[] args) {
+        Main main;
+        StreamOutput output = null;
+        List<Long> seedList = null;
+        try {
+            main = parse(args);
+
+            if (main.help) {
                 usage();
                 return;
             }
+
+            output = main.createOutput();
+
+            if (main.seeds != null) {
+                seedList = parseSeeds(main.seeds);
+            }
         } catch (Exception ex) {
             usage();
             return;
         }
 
-        main.doMain(output);
+        if (main.pipelineQueueSize != null && main.pipelineQueueSize < 1) {
+            System.err.println("--pipeline must be at least 1");
+            System.exit(1);
+        }
+
+        if (main.split && main.threads < 2) {
+            System.err.println("--split requires --threads to be more than 1");
+            System.exit(1);
+        }
+
+        if (main.checkpointPath != null && (main.outputPath == null || main.inputPath != null)) {
+            System.err.println("--checkpoint requires --output, and can't be used with --input");
+            System.exit(1);
+        }
+
+        if (main.checkpointPath != null && output.dependsOnEarlierBoxes()) {
+            System.err.println("--checkpoint can't be used with these output options, since " +
+                    "the output for each grid box depends on the boxes before it");
+            System.exit(1);
+        }
+
+        if (main.mmap) {
+            if (main.outputPath == null || main.checkpointPath != null ||
+                    main.inputPath != null || seedList != null ||
+                    main.pipelineQueueSize != null) {
+                System.err.println("--mmap requires --output, and can't be used with " +
+                        "--checkpoint, --input, --seeds or --pipeline");
+                System.exit(1);
+            }
+            if (output.dependsOnEarlierBoxes()) {
+                System.err.println("--mmap can't be used with these output options, since " +
+                        "the output for each grid box depends on the boxes before it");
+                System.exit(1);
+            }
+        }
+
+        if (seedList != null) {
+            if (main.checkpointPath != null || main.inputPath != null) {
+                System.err.println("--seeds can't be used with --checkpoint or --input");
+                System.exit(1);
+            }
+            if (seedList.size() > 1 &&
+                    (main.outputPath == null || !main.outputPath.contains("%d"))) {
+                System.err.println("--output must contain %d when generating multiple seeds");
+                System.exit(1);
+            }
+        }
+
+        if (main.servePort != null) {
+            try {
+                main.serve();
+            } catch (IOException ex) {
+                System.err.println("Error while starting the server: " + ex.getMessage());
+                System.exit(1);
+            }
+            return;
+        }
+
+        try {
+            main.run(output, seedList, System.err);
+        } catch (InputException ex) {
+            System.err.println("Error while reading input: " + ex.getMessage());
+            System.exit(1);
+        } catch (IOException | UncheckedIOException ex) {
+            System.err.println("Error while writing output: " + ex.getMessage());
+            System.exit(1);
+        }
+    }
+
+    /**
+     * An error while reading the input file, as opposed to writing the output.
+     */
+    private static class InputException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        public InputException(IOException cause) {
+            super(cause.getMessage(), cause);
+        }
+    }
+
+    public static class EngineConverter implements IStringConverter<Engine> {
+        @Override public Engine convert(String value) {
+            value = value.toUpperCase();
+            for (Engine engine: Engine.values()) {
+                if (engine.name().equals(value)) {
+                    return engine;
+                }
+            }
+            throw new IllegalArgumentException(
+                    String.format("%s is not a valid engine", value));
+        }
     }
 
     private static void usage() {
@@ -0,0 +1,294 @@
+/*
+ * Copyright 2019 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jf.ptgen;
+
+import org.jf.ptgen.PTGen.BoxFilter;
+import org.jf.ptgen.PTGen.GeneratedBox;
+import org.jf.ptgen.penrose.BoundingBox;
+import org.jf.ptgen.penrose.GenerationStats;
+import org.jf.ptgen.penrose.RhombusBatch;
+
+import javax.annotation.Nullable;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.function.Supplier;
+
+/**
+ * Generates a tiling into a file, rendering the output for each grid box on the threads that
+ * generate them, rather than on a single thread.
+ *
+ * <p>Each box is rendered into its own buffer by one of a pool of outputs, which are created
+ * with the same options. The buffers are then copied into the file in order, on the calling
+ * thread. Once the rendered boxes add up to at least the minimum region size, a region of
+ * exactly their total size is mapped at the end of the file, and each buffer is copied straight
+ * into it. So the file is never larger than what has been written, and no other copies are
+ * made.
+ *
+ * <p>The output must not depend on the boxes before each box, see
+ * {@link StreamOutput#dependsOnEarlierBoxes()}, since the boxes are rendered separately. Only
+ * the header written by start() and the footer written by end() come from the given output.
+ */
+class MappedFileWriter {
+    // The default minimum size of each mapped region. Small boxes are collected until there is
+    // at least this much output, rather than mapping each one separately.
+    private static final int DEFAULT_MIN_REGION_SIZE = 64 << 20;
+
+    private final Path outputPath;
+    private final Supplier<StreamOutput> outputFactory;
+    private final int minRegionSize;
+
+    // The renderers that aren't rendering a box, and the buffers that can be reused
+    private final Queue<BoxRenderer> freeRenderers = new ConcurrentLinkedQueue<>();
+    private final Queue<RenderBuffer> freeBuffers = new ConcurrentLinkedQueue<>();
+
+    // The buffers to copy into the next region, in order. These are only used from the calling
+    // thread.
+    private final List<RenderBuffer> pendingBuffers = new ArrayList<>();
+    private int pendingSize = 0;
+
+    private FileChannel channel = null;
+    private long position = 0;
+
+    /**
+     * @param outputPath The file to write the tiling to. It is replaced if it already exists.
+     * @param outputFactory Creates the outputs to render the boxes with.
+     */
+    MappedFileWriter(Path outputPath, Supplier<StreamOutput> outputFactory) {
+        this(outputPath, outputFactory, DEFAULT_MIN_REGION_SIZE);
+    }
+
+    /**
+     * @param minRegionSize The minimum size of each mapped region, other than the last.
+     */
+    MappedFileWriter(Path outputPath, Supplier<StreamOutput> outputFactory, int minRegionSize) {
+        if (minRegionSize < 1) {
+            throw new IllegalArgumentException("minRegionSize must be at least 1");
+        }
+        this.outputPath = outputPath;
+        this.outputFactory = outputFactory;
+        this.minRegionSize = minRegionSize;
+    }
+
+    /**
+     * Generates the tiling, and writes it to the file.
+     *
+     * @param output The output to write the header and footer with.
+     * @param executor The executor to generate and render the boxes on.
+     * @param maxPendingBoxes The maximum number of boxes to generate and render ahead of the box
+     *                        currently being copied into the file.
+     * @param ordered If true, boxes are written in the same order as
+     *                PTGen.visitRhombii(RhombusOutput). Otherwise, boxes are written in the order
+     *                they finish rendering.
+     */
+    public void write(PTGen ptgen, StreamOutput output, Executor executor, int maxPendingBoxes,
+                      boolean ordered, BoxFilter boxFilter) throws IOException {
+        if (maxPendingBoxes < 1) {
+            throw new IllegalArgumentException("maxPendingBoxes must be at least 1");
+        }
+
+        try (FileChannel channel = FileChannel.open(outputPath, StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            this.channel = channel;
+            position = 0;
+
+            BufferStream outputStream = new BufferStream();
+            output.setOutputStream(outputStream);
+            outputStream.buffer = new RenderBuffer();
+            output.start(ptgen);
+            output.flush();
+            addBuffer(outputStream.buffer);
+
+            ptgen.generateConcurrently(executor, maxPendingBoxes, ordered, boxFilter,
+                    generatedBox -> render(ptgen, generatedBox),
+                    renderedBox -> {
+                        addBuffer(renderedBox.buffer);
+                        if (renderedBox.stats != null) {
+                            ptgen.recordBox(renderedBox.boundingBox, renderedBox.stats,
+                                    renderedBox.event, renderedBox.generationNanos,
+                                    renderedBox.renderNanos);
+                        }
+                    });
+
+            outputStream.buffer = new RenderBuffer();
+            output.end();
+            addBuffer(outputStream.buffer);
+            mapRegion();
+        } catch (UncheckedIOException ex) {
+            throw ex.getCause();
+        } finally {
+            this.channel = null;
+            pendingBuffers.clear();
+            pendingSize = 0;
+        }
+    }
+
+    /**
+     * Renders a generated box into a new buffer. This is called on the generating threads.
+     */
+    private RenderedBox render(PTGen ptgen, GeneratedBox generatedBox) {
+        BoxRenderer renderer = freeRenderers.poll();
+        if (renderer == null) {
+            renderer = new BoxRenderer(ptgen, outputFactory.get());
+        }
+        RenderBuffer buffer = freeBuffers.poll();
+        if (buffer == null) {
+            buffer = new RenderBuffer();
+        }
+
+        long start = System.nanoTime();
+        renderer.render(generatedBox, buffer);
+        long renderNanos = System.nanoTime() - start;
+
+        // A renderer that failed part way through a box isn't reused
+        freeRenderers.add(renderer);
+        return new RenderedBox(generatedBox, buffer, renderNanos);
+    }
+
+    /**
+     * Adds a buffer to the next region, and maps the region once it's large enough.
+     */
+    private void addBuffer(RenderBuffer buffer) {
+        try {
+            if (buffer.size() > Integer.MAX_VALUE - pendingSize) {
+                mapRegion();
+            }
+            pendingBuffers.add(buffer);
+            pendingSize += buffer.size();
+            if (pendingSize >= minRegionSize) {
+                mapRegion();
+            }
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    /**
+     * Maps a region at the end of the file for the pending buffers, and copies them into it.
+     */
+    private void mapRegion() throws IOException {
+        if (pendingSize > 0) {
+            MappedByteBuffer region =
+                    channel.map(FileChannel.MapMode.READ_WRITE, position, pendingSize);
+            for (RenderBuffer buffer: pendingBuffers) {
+                region.put(buffer.getBytes(), 0, buffer.size());
+            }
+            position += pendingSize;
+        }
+
+        for (RenderBuffer buffer: pendingBuffers) {
+            buffer.reset();
+            freeBuffers.add(buffer);
+        }
+        pendingBuffers.clear();
+        pendingSize = 0;
+    }
+
+    /**
+     * An output that renders one box at a time, each into a separate buffer.
+     */
+    private static class BoxRenderer {
+        private final StreamOutput output;
+        private final BufferStream outputStream = new BufferStream();
+
+        BoxRenderer(PTGen ptgen, StreamOutput output) {
+            this.output = output;
+            output.setOutputStream(outputStream);
+
+            // The header is written by the output for the whole file, so it's dropped here
+            outputStream.buffer = new RenderBuffer();
+            output.start(ptgen);
+            output.flush();
+        }
+
+        void render(GeneratedBox generatedBox, RenderBuffer buffer) {
+            outputStream.buffer = buffer;
+            output.startBox(generatedBox.boundingBox);
+            for (RhombusBatch batch: generatedBox.batches) {
+                PTGen.visitBatch(output, batch);
+            }
+            output.endBox(generatedBox.boundingBox);
+            output.flush();
+            outputStream.buffer = null;
+        }
+    }
+
+    /**
+     * The rendered output of a box, along with what's needed to record its stats. The rhombii
+     * of the box aren't kept, so that they can be collected while the box waits to be written.
+     */
+    private static class RenderedBox {
+        public final BoundingBox boundingBox;
+        public final RenderBuffer buffer;
+        @Nullable public final GenerationStats stats;
+        public final GenerateBoxEvent event;
+        public final long generationNanos;
+        public final long renderNanos;
+
+        public RenderedBox(GeneratedBox generatedBox, RenderBuffer buffer, long renderNanos) {
+            this.boundingBox = generatedBox.boundingBox;
+            this.buffer = buffer;
+            this.stats = generatedBox.stats;
+            this.event = generatedBox.event;
+            this.generationNanos = generatedBox.generationNanos;
+            this.renderNanos = renderNanos;
+        }
+    }
+
+    /**
+     * A ByteArrayOutputStream whose bytes can be copied out without copying the array first.
+     */
+    private static class RenderBuffer extends ByteArrayOutputStream {
+        RenderBuffer() {
+            super(1 << 16);
+        }
+
+        /**
+         * @return The array that holds the bytes. Only the first size() bytes are valid.
+         */
+        byte[] getBytes() {
+            return buf;
+        }
+    }
+
+    /**
+     * Writes to whichever buffer is currently set, so that an output can render each box into
+     * a different buffer.
+     */
+    private static class BufferStream extends OutputStream {
+        private RenderBuffer buffer = null;
+
+        @Override public void write(int b) {
+            buffer.write(b);
+        }
+
+        @Override public void write(byte[] b, int off, int len) {
+            buffer.write(b, off, len);
+        }
+    }
+}
@@ -20,7 +20,43 @@ import com.beust.jcommander.IStringConverter;
 
 public enum OutputType {
     SVG,
-    SVGLINE;
+    SVGLINE,
+    BINARY,
+    INDEX;
+
+    /**
+     * Creates a new output of this type, with the default options.
+     */
+    StreamOutput newOutput() {
+        switch (this) {
+            case SVG:
+                return new SvgOutput();
+            case SVGLINE:
+                return new SvgLineOutput();
+            case BINARY:
+                return new BinaryOutput();
+            case INDEX:
+                return new IndexOutput();
+            default:
+                throw new IllegalStateException("Unknown output type: " + this);
+        }
+    }
+
+    /**
+     * @return The MIME type of the output of this type.
+     */
+    String getContentType() {
+        switch (this) {
+            case SVG:
+            case SVGLINE:
+                return "image/svg+xml";
+            case BINARY:
+            case INDEX:
+                return "application/octet-stream";
+            default:
+                throw new IllegalStateException("Unknown output type: " + this);
+        }
+    }
 
     public static class Converter implements IStringConverter<OutputType> {
         @Override public OutputType convert(String value) {
@@ -29,6 +65,10 @@ public enum OutputType {
                 return SVG;
             } else if ("SVGLINE".equals(value)) {
                 return SVGLINE;
+            } else if ("BINARY".equals(value)) {
+                return BINARY;
+            } else if ("INDEX".equals(value)) {
+                return INDEX;
             }
             throw new IllegalArgumentException(
                     String.format("%s is not a valid output type", value));
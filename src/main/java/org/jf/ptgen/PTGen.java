@@ -17,12 +17,32 @@
 package org.jf.ptgen;
 
 import org.jf.ptgen.penrose.BoundingBox;
+import org.jf.ptgen.penrose.BoxHandoff;
+import org.jf.ptgen.penrose.GenerationStats;
 import org.jf.ptgen.penrose.PenroseTiling;
+import org.jf.ptgen.penrose.PenroseTiling.Engine;
+import org.jf.ptgen.penrose.PenroseTiling.RhombusBatchVisitor;
 import org.jf.ptgen.penrose.PenroseTiling.RhombusVisitor;
+import org.jf.ptgen.penrose.Rhombus;
+import org.jf.ptgen.penrose.RhombusBatch;
 import org.locationtech.jts.geom.Coordinate;
 import org.locationtech.jts.math.Vector2D;
 
+import javax.annotation.Nullable;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
 import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.function.Consumer;
+import java.util.function.Function;
 
 /**
  * PTGen = Penrose-Tiling-Generator
@@ -36,6 +56,12 @@ public class PTGen {
     public final int countX;
     public final int countY;
 
+    private final Coordinate gridOrigin;
+    private final Vector2D gridSize;
+
+    @Nullable private GenerationStats stats;
+    private Engine engine = Engine.FLOOD_FILL;
+
     /**
      * Construct a tiling generator.
      *
@@ -56,6 +82,36 @@ public class PTGen {
         this.height = height;
         this.countX = countX;
         this.countY = countY;
+
+        gridOrigin = new Coordinate(minX, minY);
+        PenroseTiling.PRECISION_MODEL.makePrecise(gridOrigin);
+        Coordinate gridSizeCoordinate = new Coordinate(width, height);
+        PenroseTiling.PRECISION_MODEL.makePrecise(gridSizeCoordinate);
+        gridSize = new Vector2D(gridSizeCoordinate);
+    }
+
+    /**
+     * Sets the stats to add the work done for each generated box to.
+     *
+     * <p>The stats are only updated from the thread that calls the visitor. A GenerateBox flight
+     * recorder event is also recorded for each box while flight recording is enabled, whether or
+     * not stats are set.
+     *
+     * @param stats The stats to update, or null to not collect stats.
+     */
+    public void setStats(@Nullable GenerationStats stats) {
+        this.stats = stats;
+    }
+
+    /**
+     * Sets how the rhombii of each box are generated. The default is Engine.FLOOD_FILL.
+     *
+     * <p>With Engine.ENUMERATION, the handoff and sweep options have no effect, since the strips
+     * aren't walked, and only the rhombii of the current box are found. The rhombii within a
+     * box are visited in a different order than with flood fill.
+     */
+    public void setEngine(Engine engine) {
+        this.engine = engine;
     }
 
     /**
@@ -85,26 +141,152 @@ public class PTGen {
         void end();
     }
 
+    /**
+     * Selects which grid boxes of the tiling are generated.
+     */
+    public interface BoxFilter {
+        BoxFilter ALL_BOXES = (x, y) -> true;
+
+        /**
+         * @return true if the box at the given position in the grid should be generated.
+         */
+        boolean includeBox(int x, int y);
+    }
+
     /**
      * Generates the tiling, calling the appropriate visitor methods as generating proceeds.
      */
     public void visitRhombii(RhombusOutput visitor) {
-        Random random = new Random(seed);
-        PenroseTiling tiling = new PenroseTiling(random);
+        visitRhombii(visitor, false);
+    }
 
-        visitor.start(this);
+    /**
+     * Generates the tiling, calling the appropriate visitor methods as generating proceeds.
+     *
+     * @param visitor The visitor to call as generation proceeds.
+     * @param handoff If true, the strips walked while generating each box are handed over to the
+     *                next box in the same column, rather than being walked again. This is
+     *                faster, especially for small boxes, but the rhombii within a box may be
+     *                visited in a different order.
+     */
+    public void visitRhombii(RhombusOutput visitor, boolean handoff) {
+        visitRhombii(visitor, handoff, BoxFilter.ALL_BOXES);
+    }
 
-        Coordinate gridOrigin = new Coordinate(minX, minY);
-        PenroseTiling.PRECISION_MODEL.makePrecise(gridOrigin);
-        Coordinate gridSizeCoordinate = new Coordinate(width, height);
-        PenroseTiling.PRECISION_MODEL.makePrecise(gridSizeCoordinate);
-        Vector2D gridSize = new Vector2D(gridSizeCoordinate);
+    /**
+     * Generates the tiling, calling the appropriate visitor methods as generating proceeds.
+     *
+     * @param visitor The visitor to call as generation proceeds.
+     * @param handoff See {@link #visitRhombii(RhombusOutput, boolean)}.
+     * @param boxFilter Selects which boxes to generate. The other boxes are skipped entirely.
+     */
+    public void visitRhombii(RhombusOutput visitor, boolean handoff, BoxFilter boxFilter) {
+        visitBoxes(visitor, boxFilter, handoff, 0, null, 1);
+    }
+
+    /**
+     * Generates the tiling, sweeping across each box in horizontal bands.
+     *
+     * <p>Only the rhombii around the current band of a box are held in memory while generating
+     * it, rather than the rhombii of the whole box. This allows for very large boxes, at the cost
+     * of some speed for smaller ones. The rhombii within a box are visited in a different order
+     * than with visitRhombii.
+     *
+     * @param visitor The visitor to call as generation proceeds.
+     * @param bandHeight The maximum height of each band, in pentagrid space coordinates.
+     * @param boxFilter Selects which boxes to generate. The other boxes are skipped entirely.
+     */
+    public void sweepRhombii(RhombusOutput visitor, double bandHeight, BoxFilter boxFilter) {
+        if (!(bandHeight > 0)) {
+            throw new IllegalArgumentException("bandHeight must be positive");
+        }
+        visitBoxes(visitor, boxFilter, false, bandHeight, null, 1);
+    }
+
+    /**
+     * Generates the tiling one box at a time, splitting each box into regions that are generated
+     * concurrently.
+     *
+     * <p>This is useful when there are only a few very large boxes, so generating separate boxes
+     * concurrently doesn't keep the executor busy. The visitor is only called from the calling
+     * thread. The rhombii within a box are visited in a different order than with visitRhombii,
+     * but always in the same order.
+     *
+     * @param visitor The visitor to call as generation proceeds.
+     * @param executor The executor to generate the regions on.
+     * @param regionCount The maximum number of regions to split each box into.
+     * @param boxFilter Selects which boxes to generate. The other boxes are skipped entirely.
+     */
+    public void splitRhombii(RhombusOutput visitor, Executor executor, int regionCount,
+                             BoxFilter boxFilter) {
+        if (regionCount < 1) {
+            throw new IllegalArgumentException("regionCount must be at least 1");
+        }
+        visitBoxes(visitor, boxFilter, false, 0, executor, regionCount);
+    }
+
+    /**
+     * Generates each box in turn on the calling thread.
+     *
+     * @param sweepBandHeight If positive, each box is swept in bands of at most this height.
+     * @param regionExecutor If not null, each box is split into up to regionCount regions that
+     *                       are generated on this executor.
+     */
+    private void visitBoxes(RhombusOutput visitor, BoxFilter boxFilter, boolean handoff,
+                            double sweepBandHeight, @Nullable Executor regionExecutor,
+                            int regionCount) {
+        PenroseTiling tiling = createTiling();
+        BoxHandoff boxHandoff = handoff ? new BoxHandoff() : null;
+
+        // Outputs that can process rhombii in chunks get them that way
+        RhombusBatchVisitor batchVisitor = null;
+        RhombusBatch batch = null;
+        if (visitor instanceof RhombusBatchVisitor) {
+            batchVisitor = (RhombusBatchVisitor)visitor;
+            batch = new RhombusBatch();
+        }
+
+        visitor.start(this);
 
         for (int x = 0; x < countX; x++) {
             for (int y = 0; y < countY; y++) {
-                BoundingBox boundingBox = new BoundingBox(gridOrigin, gridSize, x, y);
+                if (!boxFilter.includeBox(x, y)) {
+                    continue;
+                }
+                BoundingBox boundingBox = getBoundingBox(x, y);
+                GenerateBoxEvent event = new GenerateBoxEvent();
+                if (stats != null || event.isEnabled()) {
+                    visitBoxWithStats(tiling, boundingBox, visitor, boxHandoff, sweepBandHeight,
+                            regionExecutor, regionCount, event);
+                    continue;
+                }
+
                 visitor.startBox(boundingBox);
-                tiling.visitRhombii(boundingBox, visitor);
+                if (regionExecutor != null) {
+                    if (batchVisitor != null) {
+                        tiling.visitRhombii(boundingBox, batch, batchVisitor, regionExecutor,
+                                regionCount, engine);
+                    } else {
+                        tiling.visitRhombii(boundingBox, visitor, regionExecutor, regionCount,
+                                engine, null);
+                    }
+                } else if (engine == Engine.ENUMERATION) {
+                    if (batchVisitor != null) {
+                        tiling.enumerateRhombii(boundingBox, batch, batchVisitor);
+                    } else {
+                        tiling.enumerateRhombii(boundingBox, visitor, null);
+                    }
+                } else if (sweepBandHeight > 0) {
+                    if (batchVisitor != null) {
+                        tiling.sweepRhombii(boundingBox, sweepBandHeight, batch, batchVisitor);
+                    } else {
+                        tiling.sweepRhombii(boundingBox, sweepBandHeight, visitor);
+                    }
+                } else if (batchVisitor != null) {
+                    tiling.visitRhombii(boundingBox, batch, batchVisitor, boxHandoff);
+                } else {
+                    tiling.visitRhombii(boundingBox, visitor, boxHandoff);
+                }
                 visitor.endBox(boundingBox);
             }
         }
@@ -112,4 +294,327 @@ public class PTGen {
         visitor.end();
     }
 
+    /**
+     * Generates and visits a single box, counting the work done and timing the output.
+     */
+    private void visitBoxWithStats(PenroseTiling tiling, BoundingBox boundingBox,
+                                   RhombusOutput visitor, @Nullable BoxHandoff boxHandoff,
+                                   double sweepBandHeight, @Nullable Executor regionExecutor,
+                                   int regionCount, GenerateBoxEvent event) {
+        GenerationStats boxStats = new GenerationStats();
+        TimedOutput timedOutput = new TimedOutput(visitor);
+
+        event.begin();
+        long start = System.nanoTime();
+        timedOutput.startBox(boundingBox);
+        if (regionExecutor != null) {
+            tiling.visitRhombii(boundingBox, timedOutput, regionExecutor, regionCount, engine,
+                    boxStats);
+        } else if (engine == Engine.ENUMERATION) {
+            tiling.enumerateRhombii(boundingBox, timedOutput, boxStats);
+        } else if (sweepBandHeight > 0) {
+            tiling.sweepRhombii(boundingBox, sweepBandHeight, timedOutput, boxStats);
+        } else {
+            tiling.visitRhombii(boundingBox, timedOutput, boxHandoff, boxStats);
+        }
+        timedOutput.endBox(boundingBox);
+        long generationNanos = System.nanoTime() - start;
+        event.end();
+
+        recordBox(boundingBox, boxStats, event, generationNanos, timedOutput.outputNanos);
+    }
+
+    /**
+     * Adds the stats of a finished box to the overall stats, and commits its event.
+     */
+    void recordBox(BoundingBox boundingBox, GenerationStats boxStats,
+                   GenerateBoxEvent event, long generationNanos, long outputNanos) {
+        boxStats.addBox(generationNanos, outputNanos);
+        if (stats != null) {
+            stats.add(boxStats);
+        }
+
+        if (event.shouldCommit()) {
+            event.seed = seed;
+            event.x = boundingBox.xMultiple;
+            event.y = boundingBox.yMultiple;
+            event.rhombiiVisited = boxStats.getRhombiiVisited();
+            event.rhombiiDiscarded = boxStats.getRhombiiDiscarded();
+            event.stripsWalked = boxStats.getStripsWalked();
+            event.walkSteps = boxStats.getWalkSteps();
+            event.overscanSteps = boxStats.getOverscanSteps();
+            event.processedRhombii = boxStats.getMaxProcessedRhombii();
+            event.pendingRhombii = boxStats.getMaxPendingRhombii();
+            event.existingStrips = boxStats.getMaxExistingStrips();
+            event.outputTime = outputNanos;
+            event.commit();
+        }
+    }
+
+    /**
+     * Visits a batch of rhombii, one at a time if the visitor can't process batches.
+     */
+    static void visitBatch(RhombusOutput visitor, RhombusBatch batch) {
+        if (visitor instanceof RhombusBatchVisitor) {
+            ((RhombusBatchVisitor)visitor).visitRhombii(batch);
+        } else {
+            batch.visitEach(visitor);
+        }
+    }
+
+    /**
+     * Generates the tiling, generating multiple boxes concurrently.
+     *
+     * <p>The rhombii for each box are generated on the given executor. The visitor itself is
+     * only called from the calling thread, and the calls for a given box are never interleaved
+     * with the calls for another box.
+     *
+     * @param visitor The visitor to call as generation proceeds.
+     * @param executor The executor to generate boxes on.
+     * @param maxPendingBoxes The maximum number of boxes to generate ahead of the box currently
+     *                        being visited. This bounds the number of rhombii held in memory.
+     * @param ordered If true, boxes are visited in the same order as visitRhombii(RhombusOutput).
+     *                Otherwise, boxes are visited in the order they finish generating.
+     */
+    public void visitRhombii(RhombusOutput visitor, Executor executor, int maxPendingBoxes,
+                             boolean ordered) {
+        visitRhombii(visitor, executor, maxPendingBoxes, ordered, BoxFilter.ALL_BOXES);
+    }
+
+    /**
+     * Generates the tiling, generating multiple boxes concurrently.
+     *
+     * <p>This is the same as {@link #visitRhombii(RhombusOutput, Executor, int, boolean)},
+     * except that only the boxes selected by the given filter are generated.
+     */
+    public void visitRhombii(RhombusOutput visitor, Executor executor, int maxPendingBoxes,
+                             boolean ordered, BoxFilter boxFilter) {
+        if (maxPendingBoxes < 1) {
+            throw new IllegalArgumentException("maxPendingBoxes must be at least 1");
+        }
+
+        visitor.start(this);
+
+        generateConcurrently(executor, maxPendingBoxes, ordered, boxFilter,
+                generatedBox -> generatedBox, generatedBox -> {
+                    long outputStart = System.nanoTime();
+                    visitor.startBox(generatedBox.boundingBox);
+                    for (RhombusBatch batch: generatedBox.batches) {
+                        visitBatch(visitor, batch);
+                    }
+                    visitor.endBox(generatedBox.boundingBox);
+                    if (generatedBox.stats != null) {
+                        recordBox(generatedBox.boundingBox, generatedBox.stats,
+                                generatedBox.event, generatedBox.generationNanos,
+                                System.nanoTime() - outputStart);
+                    }
+                });
+
+        visitor.end();
+    }
+
+    /**
+     * Generates the boxes of the tiling on the given executor, and processes each one further
+     * there, e.g. to render it. The results are passed to the consumer on the calling thread,
+     * one at a time.
+     *
+     * @param maxPendingBoxes The maximum number of boxes to generate and process ahead of the
+     *                        box currently being consumed. This must be at least 1.
+     * @param ordered If true, boxes are consumed in the same order as visitRhombii(RhombusOutput).
+     *                Otherwise, boxes are consumed in the order they finish processing.
+     * @param process Processes each generated box, on the executor.
+     * @param consumer Consumes the result of processing each box, on the calling thread.
+     */
+    <T> void generateConcurrently(Executor executor, int maxPendingBoxes, boolean ordered,
+                                  BoxFilter boxFilter, Function<GeneratedBox, T> process,
+                                  Consumer<T> consumer) {
+        PenroseTiling tiling = createTiling();
+        // The completion service keeps each finished future until it is taken, so it's only used
+        // when boxes are consumed in the order they finish. Otherwise, every consumed box would
+        // stay in its queue until the end.
+        @Nullable CompletionService<T> completionService =
+                ordered ? null : new ExecutorCompletionService<>(executor);
+        Deque<Future<T>> pendingBoxes = new ArrayDeque<>();
+
+        int boxCount = countX * countY;
+        int nextBox = 0;
+        try {
+            while (nextBox < boxCount || !pendingBoxes.isEmpty()) {
+                while (nextBox < boxCount && pendingBoxes.size() < maxPendingBoxes) {
+                    int x = nextBox / countY;
+                    int y = nextBox % countY;
+                    nextBox++;
+                    if (!boxFilter.includeBox(x, y)) {
+                        continue;
+                    }
+                    BoundingBox boundingBox = getBoundingBox(x, y);
+                    GenerateBoxEvent event = new GenerateBoxEvent();
+                    GenerationStats boxStats =
+                            stats != null || event.isEnabled() ? new GenerationStats() : null;
+                    Callable<T> task = () -> process.apply(
+                            generateBox(tiling, boundingBox, engine, boxStats, event));
+                    if (completionService != null) {
+                        pendingBoxes.add(completionService.submit(task));
+                    } else {
+                        FutureTask<T> future = new FutureTask<>(task);
+                        executor.execute(future);
+                        pendingBoxes.add(future);
+                    }
+                }
+
+                if (pendingBoxes.isEmpty()) {
+                    // The remaining boxes were all filtered out
+                    break;
+                }
+
+                Future<T> future;
+                if (completionService == null) {
+                    future = pendingBoxes.remove();
+                } else {
+                    future = completionService.take();
+                    pendingBoxes.remove(future);
+                }
+
+                consumer.accept(future.get());
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(ex);
+        } catch (ExecutionException ex) {
+            Throwable cause = ex.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException)cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error)cause;
+            }
+            throw new RuntimeException(cause);
+        } finally {
+            for (Future<T> future: pendingBoxes) {
+                future.cancel(true);
+            }
+        }
+    }
+
+    /**
+     * @return The random seed used to generate the tiling.
+     */
+    public long getSeed() {
+        return seed;
+    }
+
+    PenroseTiling createTiling() {
+        Random random = new Random(seed);
+        return new PenroseTiling(random);
+    }
+
+    BoundingBox getBoundingBox(int x, int y) {
+        return new BoundingBox(gridOrigin, gridSize, x, y);
+    }
+
+    /**
+     * Generates the rhombii of a box ahead of it being visited.
+     *
+     * @param boxStats The stats to count the work done in, or null to not count it.
+     */
+    private static GeneratedBox generateBox(PenroseTiling tiling, BoundingBox boundingBox,
+                                            Engine engine, @Nullable GenerationStats boxStats,
+                                            GenerateBoxEvent event) {
+        if (boxStats != null) {
+            event.begin();
+        }
+        long start = System.nanoTime();
+
+        List<RhombusBatch> batches = new ArrayList<>();
+        if (engine == Engine.ENUMERATION) {
+            // The engine reuses its batch, so each chunk is copied into a batch of the box's own
+            tiling.enumerateRhombii(boundingBox, new RhombusBatch(), chunk -> {
+                RhombusBatch batch = new RhombusBatch(chunk.size());
+                for (int i = 0; i < chunk.size(); i++) {
+                    batch.add(chunk, i);
+                }
+                batches.add(batch);
+            }, boxStats);
+        } else {
+            tiling.visitRhombii(boundingBox, rhombus -> {
+                RhombusBatch batch = batches.isEmpty() ? null : batches.get(batches.size() - 1);
+                if (batch == null || batch.isFull()) {
+                    batch = new RhombusBatch();
+                    batches.add(batch);
+                }
+                batch.add(rhombus);
+            }, null, boxStats);
+        }
+
+        long generationNanos = System.nanoTime() - start;
+        if (boxStats != null) {
+            event.end();
+        }
+        return new GeneratedBox(boundingBox, batches, boxStats, event, generationNanos);
+    }
+
+    /**
+     * The rhombii of a box that was generated ahead of being visited.
+     */
+    static class GeneratedBox {
+        public final BoundingBox boundingBox;
+        public final List<RhombusBatch> batches;
+
+        // The work done generating the box, or null if it wasn't counted
+        @Nullable public final GenerationStats stats;
+        public final GenerateBoxEvent event;
+        public final long generationNanos;
+
+        public GeneratedBox(BoundingBox boundingBox, List<RhombusBatch> batches,
+                            @Nullable GenerationStats stats, GenerateBoxEvent event,
+                            long generationNanos) {
+            this.boundingBox = boundingBox;
+            this.batches = batches;
+            this.stats = stats;
+            this.event = event;
+            this.generationNanos = generationNanos;
+        }
+    }
+
+    /**
+     * Passes rhombii on to an output in batches, timing the calls to the output.
+     */
+    private static class TimedOutput implements RhombusVisitor {
+        private final RhombusOutput output;
+        private final RhombusBatch batch = new RhombusBatch();
+        public long outputNanos;
+
+        public TimedOutput(RhombusOutput output) {
+            this.output = output;
+        }
+
+        public void startBox(BoundingBox boundingBox) {
+            long start = System.nanoTime();
+            output.startBox(boundingBox);
+            outputNanos += System.nanoTime() - start;
+        }
+
+        @Override public void visitRhombus(Rhombus rhombus) {
+            batch.add(rhombus);
+            if (batch.isFull()) {
+                flush();
+            }
+        }
+
+        public void endBox(BoundingBox boundingBox) {
+            flush();
+            long start = System.nanoTime();
+            output.endBox(boundingBox);
+            outputNanos += System.nanoTime() - start;
+        }
+
+        private void flush() {
+            if (!batch.isEmpty()) {
+                long start = System.nanoTime();
+                visitBatch(output, batch);
+                outputNanos += System.nanoTime() - start;
+                batch.clear();
+            }
+        }
+    }
 }
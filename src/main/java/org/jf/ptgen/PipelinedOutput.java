@@ -0,0 +1,239 @@
+/*
+ * Copyright 2019 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jf.ptgen;
+
+import org.jf.ptgen.PTGen.RhombusOutput;
+import org.jf.ptgen.penrose.BoundingBox;
+import org.jf.ptgen.penrose.PenroseTiling.RhombusBatchVisitor;
+import org.jf.ptgen.penrose.Rhombus;
+import org.jf.ptgen.penrose.RhombusBatch;
+
+import java.io.Closeable;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Wraps another output, and calls it on a separate thread, so that generating the tiling and
+ * writing the output overlap.
+ *
+ * <p>The rhombii are passed to the output thread in batches, through a bounded queue. When the
+ * queue is full, generation blocks until the output catches up, so the number of rhombii held in
+ * memory stays bounded. The batches are recycled once the output has visited them.
+ *
+ * <p>start() is called on the wrapped output from the calling thread before it returns, so that
+ * anything it sets up, like the boxes to skip when resuming from a checkpoint, is in place
+ * before generation starts. All other calls are made from the output thread, in order.
+ *
+ * <p>If the wrapped output throws, or the output thread is interrupted, the exception is
+ * rethrown from the next call on the generating thread, and the remaining calls are dropped.
+ */
+class PipelinedOutput implements RhombusOutput, RhombusBatchVisitor, Closeable {
+    // Tells the output thread to stop
+    private static final Runnable STOP = () -> { };
+
+    // How often a blocked enqueue checks that the output thread is still running
+    private static final long OFFER_TIMEOUT_MILLIS = 100;
+
+    private final RhombusOutput output;
+    private final BlockingQueue<Runnable> queue;
+
+    // Batches that the output is done with, which are reused rather than allocating new ones.
+    // There can be at most one batch per queue entry, plus the one being visited and the one
+    // being filled.
+    private final BlockingQueue<RhombusBatch> freeBatches;
+
+    private RhombusBatch batch = new RhombusBatch();
+
+    private Thread thread = null;
+    private volatile Throwable failure = null;
+
+    /**
+     * @param output The output to call on the output thread.
+     * @param queueSize The maximum number of batches of rhombii, and box starts and ends, that
+     *                  can be queued up for the output thread.
+     */
+    PipelinedOutput(RhombusOutput output, int queueSize) {
+        if (queueSize < 1) {
+            throw new IllegalArgumentException("queueSize must be at least 1");
+        }
+        this.output = output;
+        this.queue = new ArrayBlockingQueue<>(queueSize);
+        this.freeBatches = new ArrayBlockingQueue<>(queueSize + 2);
+    }
+
+    @Override public void start(PTGen ptgen) {
+        if (thread != null) {
+            throw new IllegalStateException("The output has already been started");
+        }
+        output.start(ptgen);
+
+        thread = new Thread(this::runOutput, "ptgen-output");
+        // Don't keep the JVM running if generation fails without closing the output
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    @Override public void startBox(BoundingBox boundingBox) {
+        enqueue(() -> output.startBox(boundingBox));
+    }
+
+    @Override public void visitRhombus(Rhombus rhombus) {
+        batch.add(rhombus);
+        if (batch.isFull()) {
+            flushBatch();
+        }
+    }
+
+    @Override public void visitRhombii(RhombusBatch rhombusBatch) {
+        // The given batch is reused by the caller as soon as this returns, so the rhombii are
+        // copied into a batch that is owned by the output thread until it's done with it.
+        for (int i = 0; i < rhombusBatch.size(); i++) {
+            batch.add(rhombusBatch, i);
+            if (batch.isFull()) {
+                flushBatch();
+            }
+        }
+    }
+
+    @Override public void endBox(BoundingBox boundingBox) {
+        flushBatch();
+        enqueue(() -> output.endBox(boundingBox));
+    }
+
+    /**
+     * Waits for the output thread to finish writing everything that was queued up, after
+     * calling end() on the wrapped output.
+     */
+    @Override public void end() {
+        flushBatch();
+        enqueue(output::end);
+        close();
+        checkFailure();
+    }
+
+    /**
+     * Stops the output thread after it has processed everything already queued, without
+     * calling end() on the wrapped output. This does nothing if it has already stopped.
+     *
+     * <p>Unlike the other methods, this doesn't rethrow a failure of the wrapped output, since
+     * it's used to clean up after generation has already failed.
+     */
+    @Override public void close() {
+        if (thread == null) {
+            return;
+        }
+        try {
+            // If the output thread has already stopped, there's nothing left to tell it
+            offer(STOP);
+            thread.join();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(ex);
+        } finally {
+            thread = null;
+        }
+    }
+
+    private void flushBatch() {
+        if (batch.isEmpty()) {
+            return;
+        }
+        RhombusBatch fullBatch = batch;
+        enqueue(() -> {
+            PTGen.visitBatch(output, fullBatch);
+            fullBatch.clear();
+            freeBatches.offer(fullBatch);
+        });
+
+        batch = freeBatches.poll();
+        if (batch == null) {
+            batch = new RhombusBatch();
+        }
+    }
+
+    private void enqueue(Runnable task) {
+        checkFailure();
+        if (thread == null) {
+            throw new IllegalStateException("The output isn't running");
+        }
+        boolean queued;
+        try {
+            queued = offer(task);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(ex);
+        }
+        if (!queued) {
+            checkFailure();
+            throw new IllegalStateException("The output thread has stopped");
+        }
+    }
+
+    /**
+     * Waits for room in the queue, and adds the given task to it.
+     *
+     * @return false if the output thread stopped before there was room for the task.
+     */
+    private boolean offer(Runnable task) throws InterruptedException {
+        while (!queue.offer(task, OFFER_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)) {
+            if (!thread.isAlive()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void checkFailure() {
+        Throwable failure = this.failure;
+        if (failure instanceof RuntimeException) {
+            throw (RuntimeException)failure;
+        }
+        if (failure instanceof Error) {
+            throw (Error)failure;
+        }
+        if (failure != null) {
+            throw new RuntimeException(failure);
+        }
+    }
+
+    private void runOutput() {
+        while (true) {
+            Runnable task;
+            try {
+                task = queue.take();
+            } catch (InterruptedException ex) {
+                if (failure == null) {
+                    failure = ex;
+                }
+                continue;
+            }
+            if (task == STOP) {
+                return;
+            }
+            // After a failure, including an interrupt, the queue is still drained until close(),
+            // so that the generating thread doesn't block on it before it sees the failure.
+            if (failure == null) {
+                try {
+                    task.run();
+                } catch (Throwable ex) {
+                    failure = ex;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,613 @@
+/*
+ * Copyright 2019 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jf.ptgen;
+
+import org.jf.ptgen.PTGen.RhombusOutput;
+import org.jf.ptgen.penrose.BoundingBox;
+import org.jf.ptgen.penrose.PenroseTiling;
+import org.jf.ptgen.penrose.PenroseTiling.RhombusBatchVisitor;
+import org.jf.ptgen.penrose.Rhombus;
+import org.jf.ptgen.penrose.RhombusBatch;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.function.IntConsumer;
+
+/**
+ * Collects the rhombii of a tiling into a spatial index, so that the rhombii in an area can be
+ * found without generating the tiling again.
+ *
+ * <p>The rhombii are stored as parallel arrays of primitives, with the same layout as
+ * RhombusBatch, and are identified by their index in the order they were visited. Once
+ * generation ends, they are bucketed into a uniform grid of square cells. Each rhombus is listed
+ * in every cell its bounding box overlaps, and the lists of all the cells are packed into a
+ * single array, so a query only looks at the rhombii in the cells around the queried area.
+ *
+ * <p>The index can be written to a file with writeTo(), and read back with readFrom(). The
+ * queries can be made from multiple threads once the index is built.
+ */
+public class RhombusIndex implements RhombusOutput, RhombusBatchVisitor {
+    static final byte[] MAGIC = {'P', 'T', 'G', 'I'};
+    static final int VERSION = 1;
+
+    private static final int INITIAL_CAPACITY = 1024;
+
+    // The smallest width of a cell. The rhombii have sides of length 1, so there are only a few
+    // rhombii in each cell, and each rhombus is in at most 4 cells. Larger cells are used when
+    // the rhombii are spread out, e.g. when only some grid boxes were generated, so that the
+    // grid doesn't have many more cells than rhombii.
+    private static final double MIN_CELL_SIZE = 2;
+
+    private long seed;
+    private int size = 0;
+
+    // The strip families of each rhombus, as strip1Family * 5 + strip2Family
+    private byte[] familyPairs = new byte[INITIAL_CAPACITY];
+    // The multiples of strip1 and strip2 of each rhombus
+    private int[] stripMultiples = new int[INITIAL_CAPACITY * 2];
+    private int[] latticeCoords = new int[INITIAL_CAPACITY * 5];
+    private double[] vertexCoords = new double[INITIAL_CAPACITY * 8];
+
+    // The grid, which is only set once the index is built. The rhombii in cell (x, y) are at
+    // [cellStarts[i], cellStarts[i + 1]) of cellRhombii, where i = y * columns + x.
+    private double gridOriginX;
+    private double gridOriginY;
+    private double cellSize;
+    private int columns;
+    private int rows;
+    private int[] cellStarts = null;
+    private int[] cellRhombii = null;
+
+    // Created on the first call to getRhombus()
+    private volatile PenroseTiling tiling = null;
+
+    @Override public void start(PTGen ptgen) {
+        seed = ptgen.getSeed();
+        size = 0;
+        cellStarts = null;
+        cellRhombii = null;
+        tiling = null;
+    }
+
+    @Override public void startBox(BoundingBox boundingBox) {
+    }
+
+    @Override public void visitRhombus(Rhombus rhombus) {
+        ensureCapacity(size + 1);
+        familyPairs[size] =
+                (byte)(rhombus.strip1.stripFamily.angle * 5 + rhombus.strip2.stripFamily.angle);
+        stripMultiples[size * 2] = rhombus.strip1.multiple;
+        stripMultiples[size * 2 + 1] = rhombus.strip2.multiple;
+        System.arraycopy(rhombus.latticeCoords, 0, latticeCoords, size * 5, 5);
+        for (int vertex = 0; vertex < 4; vertex++) {
+            vertexCoords[size * 8 + vertex * 2] = rhombus.getVertexX(vertex);
+            vertexCoords[size * 8 + vertex * 2 + 1] = rhombus.getVertexY(vertex);
+        }
+        size++;
+    }
+
+    @Override public void visitRhombii(RhombusBatch batch) {
+        int count = batch.size();
+        ensureCapacity(size + count);
+        for (int i = 0; i < count; i++) {
+            familyPairs[size + i] =
+                    (byte)(batch.strip1Families[i] * 5 + batch.strip2Families[i]);
+            stripMultiples[(size + i) * 2] = batch.strip1Multiples[i];
+            stripMultiples[(size + i) * 2 + 1] = batch.strip2Multiples[i];
+        }
+        System.arraycopy(batch.latticeCoords, 0, latticeCoords, size * 5, count * 5);
+        System.arraycopy(batch.vertexCoords, 0, vertexCoords, size * 8, count * 8);
+        size += count;
+    }
+
+    @Override public void endBox(BoundingBox boundingBox) {
+    }
+
+    /**
+     * Builds the grid of the rhombii visited since start(). The index can't be queried before
+     * this is called.
+     */
+    @Override public void end() {
+        buildGrid();
+    }
+
+    /**
+     * @return The number of rhombii in the index.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return The seed of the tiling that the rhombii are from.
+     */
+    public long getSeed() {
+        return seed;
+    }
+
+    /**
+     * @return The x coordinate of the given vertex of a rhombus, in the same order as
+     * {@link Rhombus#getVertices()}.
+     */
+    public double getVertexX(int index, int vertex) {
+        checkIndex(index);
+        return vertexCoords[index * 8 + vertex * 2];
+    }
+
+    /**
+     * @return The y coordinate of the given vertex of a rhombus, in the same order as
+     * {@link Rhombus#getVertices()}.
+     */
+    public double getVertexY(int index, int vertex) {
+        checkIndex(index);
+        return vertexCoords[index * 8 + vertex * 2 + 1];
+    }
+
+    /**
+     * @return A Rhombus object for a rhombus in the index.
+     */
+    public Rhombus getRhombus(int index) {
+        checkIndex(index);
+        PenroseTiling tiling = this.tiling;
+        if (tiling == null) {
+            // The tiling is deterministic, so it doesn't matter if this races with another thread
+            tiling = new PenroseTiling(new Random(seed));
+            this.tiling = tiling;
+        }
+
+        return new Rhombus(
+                tiling.getStripFamily(familyPairs[index] / 5)
+                        .getStrip(stripMultiples[index * 2]),
+                tiling.getStripFamily(familyPairs[index] % 5)
+                        .getStrip(stripMultiples[index * 2 + 1]),
+                Arrays.copyOfRange(latticeCoords, index * 5, index * 5 + 5));
+    }
+
+    /**
+     * Visits the index of each rhombus that intersects the given rectangle, including the
+     * rhombii that only touch its edges. Each rhombus is visited once, in no particular order.
+     */
+    public void queryRectangle(double minX, double minY, double maxX, double maxY,
+                               IntConsumer visitor) {
+        queryBounds(minX, minY, maxX, maxY, index -> {
+            if (intersectsRectangle(index, minX, minY, maxX, maxY)) {
+                visitor.accept(index);
+            }
+        });
+    }
+
+    /**
+     * Visits the index of each rhombus that is within the given distance of a point, including
+     * the rhombii that contain it. Each rhombus is visited once, in no particular order.
+     */
+    public void queryCircle(double x, double y, double radius, IntConsumer visitor) {
+        double radiusSquared = radius * radius;
+        queryBounds(x - radius, y - radius, x + radius, y + radius, index -> {
+            if (getDistanceSquared(index, x, y) <= radiusSquared) {
+                visitor.accept(index);
+            }
+        });
+    }
+
+    /**
+     * Finds the rhombus that is nearest to a point. If the point is within the tiling, this is
+     * the rhombus that contains it. If several rhombii are equally near, e.g. when the point is
+     * on an edge, any one of them may be returned.
+     *
+     * @return The index of the nearest rhombus, or -1 if the index is empty.
+     */
+    public int findNearest(double x, double y) {
+        checkBuilt();
+        if (size == 0) {
+            return -1;
+        }
+
+        int centerX = getCell(x, gridOriginX, columns);
+        int centerY = getCell(y, gridOriginY, rows);
+
+        int nearest = -1;
+        double nearestDistanceSquared = Double.POSITIVE_INFINITY;
+
+        // Search rings of cells around the point, until the remaining cells are all further away
+        // than the nearest rhombus found so far. Every rhombus is listed in the cells that its
+        // bounding box overlaps, so the nearest point of a rhombus is always in a cell it's in.
+        for (int ring = 0; ; ring++) {
+            int left = centerX - ring;
+            int right = centerX + ring;
+            int bottom = centerY - ring;
+            int top = centerY + ring;
+
+            for (int cellY = Math.max(bottom, 0); cellY <= Math.min(top, rows - 1); cellY++) {
+                for (int cellX = Math.max(left, 0); cellX <= Math.min(right, columns - 1);
+                     cellX++) {
+                    if (cellY != bottom && cellY != top && cellX != left && cellX != right) {
+                        // Searched by an earlier ring
+                        continue;
+                    }
+                    int cell = cellY * columns + cellX;
+                    for (int i = cellStarts[cell]; i < cellStarts[cell + 1]; i++) {
+                        double distanceSquared = getDistanceSquared(cellRhombii[i], x, y);
+                        if (distanceSquared < nearestDistanceSquared) {
+                            nearest = cellRhombii[i];
+                            nearestDistanceSquared = distanceSquared;
+                        }
+                    }
+                }
+            }
+
+            // The distance from the point to the nearest cell that hasn't been searched yet
+            double remainingDistance = Double.POSITIVE_INFINITY;
+            if (left > 0) {
+                remainingDistance = Math.min(remainingDistance,
+                        x - (gridOriginX + left * cellSize));
+            }
+            if (right < columns - 1) {
+                remainingDistance = Math.min(remainingDistance,
+                        gridOriginX + (right + 1) * cellSize - x);
+            }
+            if (bottom > 0) {
+                remainingDistance = Math.min(remainingDistance,
+                        y - (gridOriginY + bottom * cellSize));
+            }
+            if (top < rows - 1) {
+                remainingDistance = Math.min(remainingDistance,
+                        gridOriginY + (top + 1) * cellSize - y);
+            }
+
+            if (remainingDistance == Double.POSITIVE_INFINITY ||
+                    nearestDistanceSquared <= remainingDistance * remainingDistance) {
+                return nearest;
+            }
+        }
+    }
+
+    /**
+     * Writes the index to a stream, so that it can be read back with readFrom() without
+     * building it again. The stream is flushed, but not closed.
+     */
+    public void writeTo(OutputStream outputStream) throws IOException {
+        checkBuilt();
+
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(outputStream));
+        out.write(MAGIC);
+        out.writeByte(VERSION);
+        out.writeLong(seed);
+        out.writeInt(size);
+        out.write(familyPairs, 0, size);
+        for (int i = 0; i < size * 2; i++) {
+            out.writeInt(stripMultiples[i]);
+        }
+        for (int i = 0; i < size * 5; i++) {
+            out.writeInt(latticeCoords[i]);
+        }
+        for (int i = 0; i < size * 8; i++) {
+            out.writeDouble(vertexCoords[i]);
+        }
+
+        out.writeDouble(gridOriginX);
+        out.writeDouble(gridOriginY);
+        out.writeDouble(cellSize);
+        out.writeInt(columns);
+        out.writeInt(rows);
+        for (int cellStart: cellStarts) {
+            out.writeInt(cellStart);
+        }
+        for (int i = 0; i < cellStarts[cellStarts.length - 1]; i++) {
+            out.writeInt(cellRhombii[i]);
+        }
+        out.flush();
+    }
+
+    /**
+     * Reads an index that was written by writeTo(). The stream is not closed.
+     *
+     * @throws IOException If the input can't be read, or isn't a valid index.
+     */
+    public static RhombusIndex readFrom(InputStream inputStream) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(inputStream));
+        for (byte b: MAGIC) {
+            if (in.readByte() != b) {
+                throw new IOException("Not a rhombus index file");
+            }
+        }
+        int version = in.readUnsignedByte();
+        if (version != VERSION) {
+            throw new IOException("Unsupported rhombus index version: " + version);
+        }
+
+        RhombusIndex index = new RhombusIndex();
+        index.seed = in.readLong();
+        int size = in.readInt();
+        if (size < 0 || size > Integer.MAX_VALUE / 8) {
+            throw new IOException("Invalid rhombus count: " + size);
+        }
+        index.ensureCapacity(size);
+        index.size = size;
+
+        in.readFully(index.familyPairs, 0, size);
+        for (int i = 0; i < size; i++) {
+            int familyPair = index.familyPairs[i];
+            if (familyPair < 0 || familyPair >= 25 || familyPair / 5 == familyPair % 5) {
+                throw new IOException("Invalid strip families for rhombus " + i);
+            }
+        }
+        for (int i = 0; i < size * 2; i++) {
+            index.stripMultiples[i] = in.readInt();
+        }
+        for (int i = 0; i < size * 5; i++) {
+            index.latticeCoords[i] = in.readInt();
+        }
+        for (int i = 0; i < size * 8; i++) {
+            index.vertexCoords[i] = in.readDouble();
+        }
+
+        index.gridOriginX = in.readDouble();
+        index.gridOriginY = in.readDouble();
+        index.cellSize = in.readDouble();
+        index.columns = in.readInt();
+        index.rows = in.readInt();
+        if (!(index.cellSize > 0) || index.columns < 1 || index.rows < 1 ||
+                (long)index.columns * index.rows >= Integer.MAX_VALUE) {
+            throw new IOException("Invalid grid");
+        }
+
+        int[] cellStarts = new int[index.columns * index.rows + 1];
+        for (int i = 0; i < cellStarts.length; i++) {
+            cellStarts[i] = in.readInt();
+            if (cellStarts[i] < (i == 0 ? 0 : cellStarts[i - 1])) {
+                throw new IOException("Invalid grid cell " + i);
+            }
+        }
+        int[] cellRhombii = new int[cellStarts[cellStarts.length - 1]];
+        for (int i = 0; i < cellRhombii.length; i++) {
+            cellRhombii[i] = in.readInt();
+            if (cellRhombii[i] < 0 || cellRhombii[i] >= size) {
+                throw new IOException("Invalid rhombus index in grid: " + cellRhombii[i]);
+            }
+        }
+        index.cellStarts = cellStarts;
+        index.cellRhombii = cellRhombii;
+        return index;
+    }
+
+    private void buildGrid() {
+        double minX = Double.POSITIVE_INFINITY;
+        double minY = Double.POSITIVE_INFINITY;
+        double maxX = Double.NEGATIVE_INFINITY;
+        double maxY = Double.NEGATIVE_INFINITY;
+        for (int i = 0; i < size * 8; i += 2) {
+            minX = Math.min(minX, vertexCoords[i]);
+            minY = Math.min(minY, vertexCoords[i + 1]);
+            maxX = Math.max(maxX, vertexCoords[i]);
+            maxY = Math.max(maxY, vertexCoords[i + 1]);
+        }
+        if (size == 0) {
+            minX = minY = maxX = maxY = 0;
+        }
+
+        double width = maxX - minX;
+        double height = maxY - minY;
+        cellSize = Math.max(MIN_CELL_SIZE, Math.sqrt(width * height / Math.max(size, 1)));
+        gridOriginX = minX;
+        gridOriginY = minY;
+        columns = (int)(width / cellSize) + 1;
+        rows = (int)(height / cellSize) + 1;
+
+        // Count the rhombii in each cell, then fill in the rhombii of each cell from the end of
+        // its range, using cellStarts as the insertion point, like EdgeChainer does. Afterwards,
+        // it points to the start of each range.
+        int[] cellStarts = new int[columns * rows + 1];
+        for (int index = 0; index < size; index++) {
+            int[] cellRange = getCellRange(index);
+            for (int cellY = cellRange[1]; cellY <= cellRange[3]; cellY++) {
+                for (int cellX = cellRange[0]; cellX <= cellRange[2]; cellX++) {
+                    cellStarts[cellY * columns + cellX]++;
+                }
+            }
+        }
+        int end = 0;
+        for (int cell = 0; cell < columns * rows; cell++) {
+            end += cellStarts[cell];
+            cellStarts[cell] = end;
+        }
+        cellStarts[columns * rows] = end;
+
+        int[] cellRhombii = new int[end];
+        for (int index = size - 1; index >= 0; index--) {
+            int[] cellRange = getCellRange(index);
+            for (int cellY = cellRange[1]; cellY <= cellRange[3]; cellY++) {
+                for (int cellX = cellRange[0]; cellX <= cellRange[2]; cellX++) {
+                    cellRhombii[--cellStarts[cellY * columns + cellX]] = index;
+                }
+            }
+        }
+
+        this.cellStarts = cellStarts;
+        this.cellRhombii = cellRhombii;
+    }
+
+    /**
+     * @return The range of cells that the bounding box of a rhombus overlaps, as the minimum x,
+     * minimum y, maximum x and maximum y cell.
+     */
+    private int[] getCellRange(int index) {
+        double[] bounds = getBounds(index);
+        return new int[] {
+                getCell(bounds[0], gridOriginX, columns),
+                getCell(bounds[1], gridOriginY, rows),
+                getCell(bounds[2], gridOriginX, columns),
+                getCell(bounds[3], gridOriginY, rows)
+        };
+    }
+
+    /**
+     * Visits each rhombus whose bounding box intersects the given rectangle once.
+     */
+    private void queryBounds(double minX, double minY, double maxX, double maxY,
+                             IntConsumer visitor) {
+        checkBuilt();
+        if (size == 0) {
+            return;
+        }
+
+        int minCellX = getCell(minX, gridOriginX, columns);
+        int minCellY = getCell(minY, gridOriginY, rows);
+        int maxCellX = getCell(maxX, gridOriginX, columns);
+        int maxCellY = getCell(maxY, gridOriginY, rows);
+
+        for (int cellY = minCellY; cellY <= maxCellY; cellY++) {
+            for (int cellX = minCellX; cellX <= maxCellX; cellX++) {
+                int cell = cellY * columns + cellX;
+                for (int i = cellStarts[cell]; i < cellStarts[cell + 1]; i++) {
+                    int index = cellRhombii[i];
+                    double[] bounds = getBounds(index);
+                    if (bounds[0] > maxX || bounds[2] < minX ||
+                            bounds[1] > maxY || bounds[3] < minY) {
+                        continue;
+                    }
+
+                    // A rhombus may be in several of the cells. It's only visited from the cell
+                    // containing the lower left corner of where its bounds and the rectangle
+                    // overlap, which is always one of the cells being searched.
+                    if (getCell(Math.max(bounds[0], minX), gridOriginX, columns) == cellX &&
+                            getCell(Math.max(bounds[1], minY), gridOriginY, rows) == cellY) {
+                        visitor.accept(index);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * @return The minimum x, minimum y, maximum x and maximum y of the vertices of a rhombus.
+     */
+    private double[] getBounds(int index) {
+        double[] bounds = {
+                Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY,
+                Double.NEGATIVE_INFINITY, Double.NEGATIVE_INFINITY
+        };
+        for (int i = index * 8; i < index * 8 + 8; i += 2) {
+            bounds[0] = Math.min(bounds[0], vertexCoords[i]);
+            bounds[1] = Math.min(bounds[1], vertexCoords[i + 1]);
+            bounds[2] = Math.max(bounds[2], vertexCoords[i]);
+            bounds[3] = Math.max(bounds[3], vertexCoords[i + 1]);
+        }
+        return bounds;
+    }
+
+    /**
+     * Tests whether a rhombus intersects a rectangle that its bounding box intersects, by
+     * checking whether the rectangle is entirely on the outside of any of the rhombus's edges.
+     */
+    private boolean intersectsRectangle(int index, double minX, double minY, double maxX,
+                                        double maxY) {
+        int offset = index * 8;
+        double orientation = getOrientation(index);
+        for (int vertex = 0; vertex < 4; vertex++) {
+            double x1 = vertexCoords[offset + vertex * 2];
+            double y1 = vertexCoords[offset + vertex * 2 + 1];
+            double x2 = vertexCoords[offset + (vertex + 1) % 4 * 2];
+            double y2 = vertexCoords[offset + (vertex + 1) % 4 * 2 + 1];
+
+            // The corner of the rectangle that is furthest inside the edge
+            double normalX = -(y2 - y1) * orientation;
+            double normalY = (x2 - x1) * orientation;
+            double cornerX = normalX > 0 ? maxX : minX;
+            double cornerY = normalY > 0 ? maxY : minY;
+            if ((cornerX - x1) * normalX + (cornerY - y1) * normalY < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return The square of the distance from a point to the nearest point of a rhombus, which
+     * is 0 if the point is inside it.
+     */
+    private double getDistanceSquared(int index, double x, double y) {
+        int offset = index * 8;
+        double orientation = getOrientation(index);
+
+        boolean inside = true;
+        double distanceSquared = Double.POSITIVE_INFINITY;
+        for (int vertex = 0; vertex < 4; vertex++) {
+            double x1 = vertexCoords[offset + vertex * 2];
+            double y1 = vertexCoords[offset + vertex * 2 + 1];
+            double edgeX = vertexCoords[offset + (vertex + 1) % 4 * 2] - x1;
+            double edgeY = vertexCoords[offset + (vertex + 1) % 4 * 2 + 1] - y1;
+
+            if ((edgeX * (y - y1) - edgeY * (x - x1)) * orientation < 0) {
+                inside = false;
+            }
+
+            // The nearest point on the edge
+            double t = ((x - x1) * edgeX + (y - y1) * edgeY) / (edgeX * edgeX + edgeY * edgeY);
+            t = Math.max(0, Math.min(1, t));
+            double dx = x - (x1 + t * edgeX);
+            double dy = y - (y1 + t * edgeY);
+            distanceSquared = Math.min(distanceSquared, dx * dx + dy * dy);
+        }
+        return inside ? 0 : distanceSquared;
+    }
+
+    /**
+     * @return 1 if the vertices of a rhombus are counterclockwise, or -1 if they're clockwise.
+     */
+    private double getOrientation(int index) {
+        int offset = index * 8;
+        double cross = (vertexCoords[offset + 2] - vertexCoords[offset]) *
+                (vertexCoords[offset + 5] - vertexCoords[offset + 3]) -
+                (vertexCoords[offset + 3] - vertexCoords[offset + 1]) *
+                (vertexCoords[offset + 4] - vertexCoords[offset + 2]);
+        return cross < 0 ? -1 : 1;
+    }
+
+    private int getCell(double position, double origin, int count) {
+        double cell = Math.floor((position - origin) / cellSize);
+        return (int)Math.max(0, Math.min(count - 1, cell));
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity > familyPairs.length) {
+            int newCapacity = Math.max(capacity, familyPairs.length * 2);
+            familyPairs = Arrays.copyOf(familyPairs, newCapacity);
+            stripMultiples = Arrays.copyOf(stripMultiples, newCapacity * 2);
+            latticeCoords = Arrays.copyOf(latticeCoords, newCapacity * 5);
+            vertexCoords = Arrays.copyOf(vertexCoords, newCapacity * 8);
+        }
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+    }
+
+    private void checkBuilt() {
+        if (cellStarts == null) {
+            throw new IllegalStateException("The index hasn't been built yet");
+        }
+    }
+}
@@ -0,0 +1,46 @@
+/*
+ * Copyright 2019 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jf.ptgen;
+
+import org.jf.ptgen.PTGen.RhombusOutput;
+
+import java.io.OutputStream;
+
+/**
+ * A RhombusOutput that writes its output to an OutputStream.
+ */
+interface StreamOutput extends RhombusOutput {
+    /**
+     * Sets the stream that output will be written to. This must be called before generation
+     * starts. The stream is flushed, but not closed, at the end of generation.
+     */
+    void setOutputStream(OutputStream outputStream);
+
+    /**
+     * Writes any output that is buffered for the boxes visited so far to the stream, and
+     * flushes it. This may be called between boxes.
+     */
+    void flush();
+
+    /**
+     * @return true if what is written for a box depends on the boxes written before it. Such an
+     * output can't be resumed from a checkpoint, since the earlier boxes aren't visited again.
+     */
+    default boolean dependsOnEarlierBoxes() {
+        return false;
+    }
+}
@@ -17,99 +17,234 @@
 package org.jf.ptgen;
 
 import com.beust.jcommander.JCommander;
+import com.beust.jcommander.Parameter;
 import org.jf.ptgen.penrose.BoundingBox;
+import org.jf.ptgen.penrose.PhiCoordinate;
 import org.jf.ptgen.penrose.Rhombus;
-import org.locationtech.jts.geom.Coordinate;
+import org.jf.ptgen.penrose.RhombusBatch;
 
-import java.util.HashSet;
-import java.util.Set;
+import java.util.BitSet;
 
 /**
  * This generates an SVG file that only contains the rhombus edges as lines.
  *
  * The shared edges between 2 rhombii are deduplicated, which is useful when engraving on a CNC
  * mill, etc. to avoid re-engraving/cutting/whatever the same line twice.
+ *
+ * With --polylines, the edges of each box are joined into as few continuous paths as the greedy
+ * chaining in EdgeChainer finds, so that a plotter doesn't need to lift the pen between each
+ * edge.
+ *
+ * With --grid-spacing 0, the boxes are drawn seamlessly, so the edges shared between rhombii in
+ * adjacent boxes are deduplicated as well. Only the edges that could still be shared with a box
+ * that hasn't been written yet are kept, so the memory used is proportional to the perimeter of
+ * the boxes, rather than the size of the tiling.
  */
 public class SvgLineOutput extends SvgOutput {
 
-    private class Edge {
-        public Coordinate first;
-        public Coordinate second;
+    @Parameter(names={"--polylines"}, description="Join the edges within each grid box into " +
+            "continuous paths where they meet, instead of writing each edge as a separate " +
+            "path. This makes the output smaller, and reduces the travel between edges when " +
+            "plotting or cutting.")
+    protected boolean polylines = false;
 
-        public Edge(Coordinate first, Coordinate second) {
-            this.first = first;
-            this.second = second;
-        }
+    // How far the midpoint of an edge can be from the bounding box containing its rhombus. This
+    // is the long axis of a thin rhombus, rounded up.
+    private static final double MAX_EDGE_DISTANCE = 2;
 
-        @Override public boolean equals(Object o) {
-            if (this == o) return true;
-            if (o == null || getClass() != o.getClass()) return false;
+    // The edges that have been written, for the current box and, when the boxes are merged, the
+    // edges of earlier boxes that are near a box that hasn't been written yet.
+    private final EdgeSet writtenEdges = new EdgeSet();
+    private final EdgeChainer edgeChainer = new EdgeChainer();
+    private int edgeCount = 0;
+    private int polylineCount = 0;
 
-            Edge edge = (Edge)o;
+    // When the boxes are merged, the boxes that have been written, indexed by x * countY + y
+    private BitSet writtenBoxes = null;
+    private int countX;
+    private int countY;
 
-            if (!first.equals(edge.first)) return false;
-            return second.equals(edge.second);
-        }
+    // Scratch space for the lattice coordinates of the 2 vertices of an edge
+    private final int[] previousVertexCoords = new int[5];
+    private final int[] vertexLatticeCoords = new int[5];
 
-        @Override public int hashCode() {
-            int result = first.hashCode();
-            result = 31 * result + second.hashCode();
-            return result;
-        }
+    @Override protected void generateStyle() {
+        writer.writeLine("<style><![CDATA[");
+        writer.writeLine("rect.boundingBox {");
+        writer.writeLine("    stroke: blue;");
+        writer.writeLine("    stroke-width: .05;");
+        writer.writeLine("    fill-opacity: 0;");
+        writer.writeLine("    stroke-opacity: .5;");
+        writer.writeLine("}");
+        writer.writeLine("path.rhombusEdge {");
+        writer.writeLine("    stroke: #000000;");
+        writer.writeLine("    stroke-width: .01;");
+        writer.writeLine("}");
+        writer.writeLine("]]></style>");
+    }
 
-        public Edge reversed() {
-            return new Edge(second, first);
+    @Override public void start(PTGen ptgen) {
+        super.start(ptgen);
+        writtenEdges.clear();
+        if (isMergingBoxes()) {
+            writtenBoxes = new BitSet(ptgen.countX * ptgen.countY);
+            countX = ptgen.countX;
+            countY = ptgen.countY;
+        } else {
+            writtenBoxes = null;
         }
     }
 
-    private Set<Edge> currentBoxEdges = new HashSet<>();
+    /**
+     * @return true if the edges shared between boxes are deduplicated.
+     */
+    private boolean isMergingBoxes() {
+        return gridSpacing == 0;
+    }
 
-    @Override protected void generateStyle() {
-        System.out.println("<style><![CDATA[");
-        System.out.println("rect.boundingBox {");
-        System.out.println("    stroke: blue;");
-        System.out.println("    stroke-width: .05;");
-        System.out.println("    fill-opacity: 0;");
-        System.out.println("    stroke-opacity: .5;");
-        System.out.println("}");
-        System.out.println("path.rhombusEdge {");
-        System.out.println("    stroke: #000000;");
-        System.out.println("    stroke-width: .01;");
-        System.out.println("}");
-        System.out.println("]]></style>");
+    @Override public boolean dependsOnEarlierBoxes() {
+        return isMergingBoxes();
     }
 
     @Override public void startBox(BoundingBox boundingBox) {
         super.startBox(boundingBox);
-        currentBoxEdges.clear();
+        if (writtenBoxes == null) {
+            writtenEdges.clear();
+        }
+        edgeChainer.clear();
+        edgeCount = 0;
+        polylineCount = 0;
+    }
+
+    @Override public void endBox(BoundingBox boundingBox) {
+        if (polylines) {
+            edgeChainer.chain(this::writePolyline);
+        }
+        if (writtenBoxes != null) {
+            writtenBoxes.set(boundingBox.xMultiple * countY + boundingBox.yMultiple);
+            writtenEdges.retain((lowerVertex, family) ->
+                    isNearUnwrittenBox(boundingBox, lowerVertex, family));
+        }
+        super.endBox(boundingBox);
+    }
+
+    /**
+     * @return true if the given edge is close enough to a box that hasn't been written yet that
+     * it could be an edge of one of its rhombii.
+     */
+    private boolean isNearUnwrittenBox(BoundingBox boundingBox, int[] lowerVertex, int family) {
+        PhiCoordinate vertex1 = PhiCoordinate.fromLatticeCoords(lowerVertex);
+        lowerVertex[family]++;
+        PhiCoordinate vertex2 = PhiCoordinate.fromLatticeCoords(lowerVertex);
+        lowerVertex[family]--;
+
+        double x = (vertex1.getX() + vertex2.getX()) / 2 - boundingBox.gridOrigin.x;
+        double y = (vertex1.getY() + vertex2.getY()) / 2 - boundingBox.gridOrigin.y;
+        double width = boundingBox.gridSize.getX();
+        double height = boundingBox.gridSize.getY();
+
+        int minX = Math.max(0, (int)Math.floor((x - MAX_EDGE_DISTANCE) / width));
+        int maxX = Math.min(countX - 1, (int)Math.floor((x + MAX_EDGE_DISTANCE) / width));
+        int minY = Math.max(0, (int)Math.floor((y - MAX_EDGE_DISTANCE) / height));
+        int maxY = Math.min(countY - 1, (int)Math.floor((y + MAX_EDGE_DISTANCE) / height));
+
+        for (int boxX = minX; boxX <= maxX; boxX++) {
+            for (int boxY = minY; boxY <= maxY; boxY++) {
+                if (!writtenBoxes.get(boxX * countY + boxY)) {
+                    return true;
+                }
+            }
+        }
+        return false;
     }
 
     @Override public void visitRhombus(Rhombus rhombus) {
-        Coordinate[] vertices = rhombus.getVertices();
-        Coordinate previousVertex = vertices[vertices.length - 1];
-        for (Coordinate vertex: vertices) {
-            Edge edge = new Edge(previousVertex, vertex);
+        int previousVertex = 3;
+        rhombus.getVertexLatticeCoords(previousVertex, previousVertexCoords);
+
+        for (int vertex = 0; vertex < 4; vertex++) {
+            rhombus.getVertexLatticeCoords(vertex, vertexLatticeCoords);
+            visitEdge(rhombus.getVertexX(previousVertex), rhombus.getVertexY(previousVertex),
+                    rhombus.getVertexX(vertex), rhombus.getVertexY(vertex));
+
+            previousVertex = vertex;
+            System.arraycopy(vertexLatticeCoords, 0, previousVertexCoords, 0, 5);
+        }
+    }
+
+    @Override public void visitRhombii(RhombusBatch batch) {
+        double[] vertexCoords = batch.vertexCoords;
+
+        for (int i = 0; i < batch.size(); i++) {
+            int vertexOffset = i * 8;
+
+            int previousVertex = 3;
+            batch.getVertexLatticeCoords(i, previousVertex, previousVertexCoords);
+
+            for (int vertex = 0; vertex < 4; vertex++) {
+                batch.getVertexLatticeCoords(i, vertex, vertexLatticeCoords);
+                visitEdge(vertexCoords[vertexOffset + previousVertex * 2],
+                        vertexCoords[vertexOffset + previousVertex * 2 + 1],
+                        vertexCoords[vertexOffset + vertex * 2],
+                        vertexCoords[vertexOffset + vertex * 2 + 1]);
 
-            if (currentBoxEdges.contains(edge) || currentBoxEdges.contains(edge.reversed())) {
                 previousVertex = vertex;
-                continue;
+                System.arraycopy(vertexLatticeCoords, 0, previousVertexCoords, 0, 5);
             }
+        }
+    }
 
-            System.out.print("<path class=\"rhombusEdge\"");
-            System.out.print(" id=\"edge" + currentBoxEdges.size() + "\"");
+    /**
+     * Writes or chains the edge from previousVertexCoords to vertexLatticeCoords, which have the
+     * given positions, unless it has already been written.
+     */
+    private void visitEdge(double x1, double y1, double x2, double y2) {
+        if (addEdge(previousVertexCoords, vertexLatticeCoords)) {
+            if (polylines) {
+                // The edges are written in endBox(), once they can all be linked up
+                edgeChainer.addEdge(previousVertexCoords, x1, y1, vertexLatticeCoords, x2, y2);
+            } else {
+                writeEdge(x1, y1, x2, y2);
+            }
+        }
+    }
 
-            System.out.print(" d=\"M");
-            System.out.print(String.format(" %f,%f",
-                    previousVertex.x + currentBox.xMultiple * gridSpacing,
-                    previousVertex.y + currentBox.yMultiple * gridSpacing));
-            System.out.print(String.format(" %f,%f",
-                    vertex.x + currentBox.xMultiple * gridSpacing,
-                    vertex.y + currentBox.yMultiple * gridSpacing));
-            System.out.println("\"/>");
+    private void writeEdge(double x1, double y1, double x2, double y2) {
+        writer.write("<path class=\"rhombusEdge\"");
+        writer.write(" id=\"edge").write(edgeCount++).write('"');
 
-            currentBoxEdges.add(edge);
-            previousVertex = vertex;
+        writer.write(" d=\"M");
+        writeCoordinate(x1, y1);
+        writeCoordinate(x2, y2);
+        writer.writeLine("\"/>");
+    }
+
+    private void writePolyline(double[] coords, int pointCount) {
+        writer.write("<path class=\"rhombusEdge\"");
+        writer.write(" id=\"polyline").write(polylineCount++).write('"');
+
+        writer.write(" d=\"M");
+        for (int i = 0; i < pointCount; i++) {
+            writeCoordinate(coords[i * 2], coords[i * 2 + 1]);
+        }
+        writer.writeLine("\"/>");
+    }
+
+    /**
+     * Adds the edge between the 2 given vertices to the written edges.
+     *
+     * @return true if the edge was added, or false if it was already present.
+     */
+    private boolean addEdge(int[] vertex1, int[] vertex2) {
+        for (int family = 0; family < 5; family++) {
+            if (vertex1[family] != vertex2[family]) {
+                if (vertex1[family] < vertex2[family]) {
+                    return writtenEdges.add(vertex1, family);
+                }
+                return writtenEdges.add(vertex2, family);
+            }
         }
+        throw new IllegalArgumentException("The vertices of an edge must be distinct");
     }
 
     static void usage() {
@@ -18,17 +18,19 @@ package org.jf.ptgen;
 
 import com.beust.jcommander.JCommander;
 import com.beust.jcommander.Parameter;
-import org.jf.ptgen.PTGen.RhombusOutput;
 import org.jf.ptgen.penrose.BoundingBox;
+import org.jf.ptgen.penrose.PenroseTiling.RhombusBatchVisitor;
 import org.jf.ptgen.penrose.Rhombus;
-import org.locationtech.jts.geom.Coordinate;
+import org.jf.ptgen.penrose.RhombusBatch;
+
+import java.io.OutputStream;
 
 /**
  * This generates an SVG file with every rhombus represented as a separate path.
  *
  * This can be used to generate penrose tilings for display.
  */
-class SvgOutput implements RhombusOutput {
+class SvgOutput implements StreamOutput, RhombusBatchVisitor {
 
     @Parameter(names={"--grid-spacing"}, description="How much space to leave between each " +
             "grid box.")
@@ -41,7 +43,16 @@ class SvgOutput implements RhombusOutput {
 
     protected BoundingBox currentBox = null;
 
+    private OutputStream outputStream = System.out;
+    protected AsciiWriter writer = null;
+
+    @Override public void setOutputStream(OutputStream outputStream) {
+        this.outputStream = outputStream;
+    }
+
     @Override public void start(PTGen ptgen) {
+        writer = new AsciiWriter(outputStream);
+
         // How far can a single rhombus stick out past the bounding box containing it.
         // This is half of the long axis of a thin rhombus.
         double maxProtrusion = Math.sin(Math.toRadians(72));
@@ -54,33 +65,33 @@ class SvgOutput implements RhombusOutput {
         double xMinView = ptgen.minX - maxProtrusion;
         double yMinView = ptgen.minY - maxProtrusion;
 
-        System.out.print("<svg width=\"" + xViewSize + "mm\"");
-        System.out.print(" height=\"" + yViewSize + "mm\"");
-        System.out.print(" viewBox=\"" + xMinView + " " + yMinView + " " + xViewSize
+        writer.write("<svg width=\"" + xViewSize + "mm\"");
+        writer.write(" height=\"" + yViewSize + "mm\"");
+        writer.write(" viewBox=\"" + xMinView + " " + yMinView + " " + xViewSize
                 + " " + yViewSize + "\"");
-        System.out.println(">");
+        writer.writeLine(">");
         generateStyle();
     }
 
     protected void generateStyle() {
-        System.out.println("<style><![CDATA[");
-        System.out.println("rect.boundingBox {");
-        System.out.println("    stroke: blue;");
-        System.out.println("    stroke-width: .05;");
-        System.out.println("    fill-opacity: 0;");
-        System.out.println("    stroke-opacity: .5;");
-        System.out.println("}");
-        System.out.println("path.thinRhombus {");
-        System.out.println("    fill: #333333;");
-        System.out.println("    stroke: #000000;");
-        System.out.println("    stroke-width: .01;");
-        System.out.println("}");
-        System.out.println("path.thickRhombus {");
-        System.out.println("    fill: #aaaaaa;");
-        System.out.println("    stroke: #000000;");
-        System.out.println("    stroke-width: .01;");
-        System.out.println("}");
-        System.out.println("]]></style>");
+        writer.writeLine("<style><![CDATA[");
+        writer.writeLine("rect.boundingBox {");
+        writer.writeLine("    stroke: blue;");
+        writer.writeLine("    stroke-width: .05;");
+        writer.writeLine("    fill-opacity: 0;");
+        writer.writeLine("    stroke-opacity: .5;");
+        writer.writeLine("}");
+        writer.writeLine("path.thinRhombus {");
+        writer.writeLine("    fill: #333333;");
+        writer.writeLine("    stroke: #000000;");
+        writer.writeLine("    stroke-width: .01;");
+        writer.writeLine("}");
+        writer.writeLine("path.thickRhombus {");
+        writer.writeLine("    fill: #aaaaaa;");
+        writer.writeLine("    stroke: #000000;");
+        writer.writeLine("    stroke-width: .01;");
+        writer.writeLine("}");
+        writer.writeLine("]]></style>");
     }
 
     @Override public void startBox(BoundingBox boundingBox) {
@@ -89,45 +100,121 @@ class SvgOutput implements RhombusOutput {
 
     @Override public void endBox(BoundingBox boundingBox) {
         if (showGrid) {
-            System.out.println(
-                    String.format("<rect x=\"%f\" y=\"%f\" width=\"%f\" height=\"%f\" " +
-                                    "class=\"boundingBox\"/>",
-                            boundingBox.origin.x + boundingBox.xMultiple * gridSpacing,
-                            boundingBox.origin.y + boundingBox.yMultiple * gridSpacing,
-                            boundingBox.gridSize.getX(), boundingBox.gridSize.getY()));
+            writer.write("<rect x=\"")
+                    .write(boundingBox.origin.x + boundingBox.xMultiple * gridSpacing)
+                    .write("\" y=\"")
+                    .write(boundingBox.origin.y + boundingBox.yMultiple * gridSpacing)
+                    .write("\" width=\"")
+                    .write(boundingBox.gridSize.getX())
+                    .write("\" height=\"")
+                    .write(boundingBox.gridSize.getY())
+                    .writeLine("\" class=\"boundingBox\"/>");
         }
     }
 
     @Override public void visitRhombus(Rhombus rhombus) {
         assert(currentBox != null);
 
-        System.out.print("<path");//);
+        int strip1Family = rhombus.strip1.stripFamily.angle;
+        int strip1Multiple = rhombus.strip1.multiple;
+        int strip2Family = rhombus.strip2.stripFamily.angle;
+        int strip2Multiple = rhombus.strip2.multiple;
+
+        startRhombus(rhombus.getRhombusType(), strip1Family, strip1Multiple, strip2Family,
+                strip2Multiple);
+        for (int vertex = 0; vertex < 4; vertex++) {
+            writeCoordinate(rhombus.getVertexX(vertex), rhombus.getVertexY(vertex));
+        }
+        endRhombus(strip1Family, strip1Multiple, strip2Family, strip2Multiple);
+    }
+
+    @Override public void visitRhombii(RhombusBatch batch) {
+        assert(currentBox != null);
+
+        int[] strip1Families = batch.strip1Families;
+        int[] strip1Multiples = batch.strip1Multiples;
+        int[] strip2Families = batch.strip2Families;
+        int[] strip2Multiples = batch.strip2Multiples;
+        double[] vertexCoords = batch.vertexCoords;
+
+        for (int i = 0; i < batch.size(); i++) {
+            startRhombus(batch.getRhombusType(i), strip1Families[i], strip1Multiples[i],
+                    strip2Families[i], strip2Multiples[i]);
 
-        if (rhombus.getRhombusType() == Rhombus.THIN) {
-            System.out.print(" class=\"thinRhombus\"");
+            int vertexOffset = i * 8;
+            for (int vertex = 0; vertex < 4; vertex++) {
+                writeCoordinate(vertexCoords[vertexOffset + vertex * 2],
+                        vertexCoords[vertexOffset + vertex * 2 + 1]);
+            }
+
+            endRhombus(strip1Families[i], strip1Multiples[i], strip2Families[i],
+                    strip2Multiples[i]);
+        }
+    }
+
+    /**
+     * Writes the start of the path for a rhombus, up to its first vertex.
+     */
+    private void startRhombus(int rhombusType, int strip1Family, int strip1Multiple,
+                              int strip2Family, int strip2Multiple) {
+        writer.write("<path");
+
+        if (rhombusType == Rhombus.THIN) {
+            writer.write(" class=\"thinRhombus\"");
         } else {
-            System.out.print(" class=\"thickRhombus\"");
+            writer.write(" class=\"thickRhombus\"");
         }
 
-        System.out.println(" id=\"rhombus_" + rhombus.strip1.stripFamily + "-" +
-                rhombus.strip1.multiple + "_" + rhombus.strip2.stripFamily + "-" +
-                rhombus.strip2.multiple + "\"");
+        writer.write(" id=\"rhombus_")
+                .write(strip1Family).write('-')
+                .write(strip1Multiple).write('_')
+                .write(strip2Family).write('-')
+                .write(strip2Multiple).writeLine("\"");
 
-        System.out.print(" d=\"M");
+        writer.write(" d=\"M");
+    }
 
-        for (Coordinate vertex: rhombus.getVertices()) {
-            System.out.print(String.format(" %f,%f",
-                    vertex.x + currentBox.xMultiple * gridSpacing,
-                    vertex.y + currentBox.yMultiple * gridSpacing));
+    /**
+     * Writes the end of the path for a rhombus, after its last vertex.
+     */
+    private void endRhombus(int strip1Family, int strip1Multiple, int strip2Family,
+                            int strip2Multiple) {
+        writer.write(" z\">");
+
+        writer.write("<desc>");
+        if (strip1Family < strip2Family) {
+            writeStrip(strip1Family, strip1Multiple);
+            writer.write(", ");
+            writeStrip(strip2Family, strip2Multiple);
+        } else {
+            writeStrip(strip2Family, strip2Multiple);
+            writer.write(", ");
+            writeStrip(strip1Family, strip1Multiple);
         }
-        System.out.print(" z\">");
+        writer.writeLine("</desc></path>");
+    }
+
+    /**
+     * Writes a " x,y" coordinate pair, offset for the current box's position in the grid.
+     */
+    protected void writeCoordinate(double x, double y) {
+        writer.write(' ')
+                .write(x + currentBox.xMultiple * gridSpacing)
+                .write(',')
+                .write(y + currentBox.yMultiple * gridSpacing);
+    }
+
+    private void writeStrip(int family, int multiple) {
+        writer.write("Strip(").write(family).write(':').write(multiple).write(')');
+    }
 
-        System.out.println(String.format("<desc>%s, %s</desc></path>", rhombus.getLowerStrip(),
-                rhombus.getUpperStrip()));
+    @Override public void flush() {
+        writer.flush();
     }
 
     @Override public void end() {
-        System.out.println("</svg>");
+        writer.writeLine("</svg>");
+        writer.flush();
     }
 
     static void usage() {
@@ -0,0 +1,446 @@
+/*
+ * Copyright 2019 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jf.ptgen;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.jf.ptgen.penrose.BoundingBox;
+import org.jf.ptgen.penrose.PenroseTiling;
+import org.jf.ptgen.penrose.PenroseTiling.RhombusBatchVisitor;
+import org.jf.ptgen.penrose.RhombusBatch;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.math.Vector2D;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * A local HTTP server that generates single grid boxes ("tiles") of a tiling on request.
+ *
+ * <p>Tiles are requested with GET /tile?seed=S&amp;x=X&amp;y=Y&amp;size=N&amp;type=T, which
+ * returns box (X, Y) of a grid of N by N boxes with its origin at (0, 0), in output type T
+ * (SVG by default). Since every rhombus belongs to exactly one box of a grid, the tiles of a grid
+ * can be generated and cached independently, and still fit together with no gaps or overlaps.
+ *
+ * <p>The tilings for recently used seeds are kept, as are the rendered tiles, up to a maximum
+ * total size. GET /stats returns the cache hit rate and the request latencies, as JSON.
+ */
+class TileServer {
+    private static final Coordinate GRID_ORIGIN = new Coordinate(0, 0);
+
+    // The number of most recent request latencies used for the percentiles in /stats
+    private static final int LATENCY_SAMPLES = 10000;
+
+    // Limits on the requested tiles, to keep a single request from taking too long
+    private static final double MAX_TILE_SIZE = 1000;
+    private static final int MAX_BOX_MULTIPLE = 1 << 20;
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+
+    private final TilingCache tilings;
+    private final TileCache tiles;
+
+    private long hits = 0;
+    private long misses = 0;
+    private final long[] latencies = new long[LATENCY_SAMPLES];
+    private long latencyCount = 0;
+
+    /**
+     * @param port The port to listen on, on the loopback interface.
+     * @param threads The number of threads to handle requests on.
+     * @param maxTilings The maximum number of tilings to keep, one per seed.
+     * @param maxCacheBytes The maximum total size of the cached tiles, in bytes.
+     */
+    TileServer(int port, int threads, int maxTilings, long maxCacheBytes) throws IOException {
+        tilings = new TilingCache(maxTilings);
+        tiles = new TileCache(maxCacheBytes);
+
+        server = HttpServer.create(
+                new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        server.createContext("/tile", this::handleTile);
+        server.createContext("/stats", this::handleStats);
+
+        executor = Executors.newFixedThreadPool(threads);
+        server.setExecutor(executor);
+    }
+
+    void start() {
+        server.start();
+    }
+
+    void stop() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    /**
+     * @return The port the server is listening on.
+     */
+    int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    private void handleTile(HttpExchange exchange) throws IOException {
+        long start = System.nanoTime();
+        try {
+            if (!"GET".equals(exchange.getRequestMethod())) {
+                sendError(exchange, 405, "Only GET is supported");
+                return;
+            }
+
+            TileKey key;
+            try {
+                key = parseTileKey(parseQuery(exchange.getRequestURI().getRawQuery()));
+            } catch (IllegalArgumentException ex) {
+                sendError(exchange, 400, ex.getMessage());
+                return;
+            }
+
+            // If the tile is already being generated for another request, this waits for it
+            // rather than generating it again
+            CompletableFuture<byte[]> reservation = new CompletableFuture<>();
+            CompletableFuture<byte[]> tile = tiles.getOrReserve(key, reservation);
+            boolean miss = tile == reservation;
+            synchronized (this) {
+                if (miss) {
+                    misses++;
+                } else {
+                    hits++;
+                }
+            }
+            if (miss) {
+                try {
+                    byte[] generatedTile = generateTile(key);
+                    tiles.put(key, generatedTile);
+                    reservation.complete(generatedTile);
+                } catch (Throwable ex) {
+                    // This includes errors like OutOfMemoryError, since otherwise the tile would
+                    // stay reserved, and every later request for it would wait forever
+                    tiles.cancel(key);
+                    reservation.completeExceptionally(ex);
+                    throw ex;
+                }
+            }
+
+            exchange.getResponseHeaders().set("Content-Type", key.type.getContentType());
+            send(exchange, 200, tile.join());
+        } catch (RuntimeException ex) {
+            // The message may reveal details of the server, so it is only logged
+            System.err.println("Error while handling " + exchange.getRequestURI() + ":");
+            ex.printStackTrace();
+            sendError(exchange, 500, "Internal server error");
+        } finally {
+            recordLatency(System.nanoTime() - start);
+            exchange.close();
+        }
+    }
+
+    private void handleStats(HttpExchange exchange) throws IOException {
+        try {
+            exchange.getResponseHeaders().set("Content-Type", "application/json");
+            send(exchange, 200, getStats().getBytes(StandardCharsets.UTF_8));
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private byte[] generateTile(TileKey key) {
+        PenroseTiling tiling = tilings.get(key.seed);
+
+        Vector2D gridSize = new Vector2D(key.size, key.size);
+        BoundingBox boundingBox = new BoundingBox(GRID_ORIGIN, gridSize, key.x, key.y);
+
+        StreamOutput output = key.type.newOutput();
+        if (output instanceof SvgOutput) {
+            // Each tile is a separate image, positioned at its actual coordinates
+            ((SvgOutput)output).gridSpacing = 0;
+        }
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        output.setOutputStream(bytes);
+
+        // This only describes the extent of the tile, for the output's header
+        PTGen ptGen = new PTGen(key.seed, boundingBox.origin.x, boundingBox.origin.y,
+                key.size, key.size, 1, 1);
+
+        output.start(ptGen);
+        output.startBox(boundingBox);
+        if (output instanceof RhombusBatchVisitor) {
+            tiling.visitRhombii(boundingBox, new RhombusBatch(), (RhombusBatchVisitor)output);
+        } else {
+            tiling.visitRhombii(boundingBox, output);
+        }
+        output.endBox(boundingBox);
+        output.end();
+
+        return bytes.toByteArray();
+    }
+
+    private static Map<String, String> parseQuery(String rawQuery) {
+        Map<String, String> parameters = new HashMap<>();
+        if (rawQuery == null || rawQuery.isEmpty()) {
+            return parameters;
+        }
+        for (String parameter: rawQuery.split("&")) {
+            int equals = parameter.indexOf('=');
+            if (equals < 0) {
+                parameters.put(decode(parameter), "");
+            } else {
+                parameters.put(decode(parameter.substring(0, equals)),
+                        decode(parameter.substring(equals + 1)));
+            }
+        }
+        return parameters;
+    }
+
+    private static String decode(String value) {
+        try {
+            return URLDecoder.decode(value, "UTF-8");
+        } catch (UnsupportedEncodingException ex) {
+            throw new RuntimeException(ex);
+        }
+    }
+
+    private static TileKey parseTileKey(Map<String, String> parameters) {
+        long seed = Long.parseLong(getParameter(parameters, "seed", "0"));
+        int x = Integer.parseInt(getParameter(parameters, "x", null));
+        int y = Integer.parseInt(getParameter(parameters, "y", null));
+        double size = Double.parseDouble(getParameter(parameters, "size", "10"));
+        OutputType type = new OutputType.Converter().convert(
+                getParameter(parameters, "type", "SVG"));
+
+        if (!(size > 0 && size <= MAX_TILE_SIZE)) {
+            throw new IllegalArgumentException("size must be in (0, " + MAX_TILE_SIZE + "]");
+        }
+        if (Math.abs(x) > MAX_BOX_MULTIPLE || Math.abs(y) > MAX_BOX_MULTIPLE) {
+            throw new IllegalArgumentException("x and y must be in [-" + MAX_BOX_MULTIPLE + ", "
+                    + MAX_BOX_MULTIPLE + "]");
+        }
+        return new TileKey(seed, x, y, size, type);
+    }
+
+    private static String getParameter(Map<String, String> parameters, String name,
+                                       String defaultValue) {
+        String value = parameters.get(name);
+        if (value == null) {
+            if (defaultValue == null) {
+                throw new IllegalArgumentException("Missing parameter: " + name);
+            }
+            return defaultValue;
+        }
+        return value;
+    }
+
+    private static void send(HttpExchange exchange, int status, byte[] body) throws IOException {
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream responseBody = exchange.getResponseBody()) {
+            responseBody.write(body);
+        }
+    }
+
+    private static void sendError(HttpExchange exchange, int status, String message)
+            throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+        send(exchange, status, (message + "\n").getBytes(StandardCharsets.UTF_8));
+    }
+
+    private synchronized void recordLatency(long nanos) {
+        latencies[(int)(latencyCount % LATENCY_SAMPLES)] = nanos;
+        latencyCount++;
+    }
+
+    /**
+     * @return The cache and latency statistics, as a JSON object.
+     */
+    synchronized String getStats() {
+        long requests = hits + misses;
+        double hitRate = requests == 0 ? 0 : (double)hits / requests;
+
+        int sampleCount = (int)Math.min(latencyCount, LATENCY_SAMPLES);
+        long[] samples = Arrays.copyOf(latencies, sampleCount);
+        Arrays.sort(samples);
+
+        return String.format(Locale.ROOT,
+                "{\"requests\": %d, \"hits\": %d, \"misses\": %d, \"hitRate\": %.4f, " +
+                        "\"p50Millis\": %.3f, \"p99Millis\": %.3f, \"cachedTiles\": %d, " +
+                        "\"cachedBytes\": %d, \"tilings\": %d}\n",
+                requests, hits, misses, hitRate,
+                percentile(samples, .50) / 1E6, percentile(samples, .99) / 1E6,
+                tiles.size(), tiles.getBytes(), tilings.size());
+    }
+
+    private static long percentile(long[] sortedSamples, double percentile) {
+        if (sortedSamples.length == 0) {
+            return 0;
+        }
+        int index = (int)Math.ceil(percentile * sortedSamples.length) - 1;
+        return sortedSamples[Math.max(0, Math.min(index, sortedSamples.length - 1))];
+    }
+
+    /**
+     * The parameters of a tile request.
+     */
+    private static class TileKey {
+        public final long seed;
+        public final int x;
+        public final int y;
+        public final double size;
+        public final OutputType type;
+
+        public TileKey(long seed, int x, int y, double size, OutputType type) {
+            this.seed = seed;
+            this.x = x;
+            this.y = y;
+            this.size = size;
+            this.type = type;
+        }
+
+        @Override public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+
+            TileKey tileKey = (TileKey)o;
+
+            if (seed != tileKey.seed) return false;
+            if (x != tileKey.x) return false;
+            if (y != tileKey.y) return false;
+            if (Double.compare(tileKey.size, size) != 0) return false;
+            return type == tileKey.type;
+        }
+
+        @Override public int hashCode() {
+            int result = Long.hashCode(seed);
+            result = 31 * result + x;
+            result = 31 * result + y;
+            result = 31 * result + Double.hashCode(size);
+            result = 31 * result + type.hashCode();
+            return result;
+        }
+    }
+
+    /**
+     * A least recently used cache of the tilings for each seed.
+     */
+    private static class TilingCache {
+        private final int maxTilings;
+        private final LinkedHashMap<Long, PenroseTiling> tilings;
+
+        TilingCache(int maxTilings) {
+            this.maxTilings = maxTilings;
+            this.tilings = new LinkedHashMap<Long, PenroseTiling>(16, .75f, true) {
+                @Override protected boolean removeEldestEntry(Map.Entry<Long, PenroseTiling> e) {
+                    return size() > TilingCache.this.maxTilings;
+                }
+            };
+        }
+
+        synchronized PenroseTiling get(long seed) {
+            // This matches the tiling that PTGen generates for the same seed
+            return tilings.computeIfAbsent(seed, key -> new PenroseTiling(new Random(key)));
+        }
+
+        synchronized int size() {
+            return tilings.size();
+        }
+    }
+
+    /**
+     * A least recently used cache of rendered tiles, bounded by their total size.
+     *
+     * <p>The tiles that are being generated are also tracked, so that concurrent requests for the
+     * same tile wait for the one generation rather than each generating it.
+     */
+    private static class TileCache {
+        private final long maxBytes;
+        private final LinkedHashMap<TileKey, byte[]> tiles = new LinkedHashMap<>(16, .75f, true);
+        private final Map<TileKey, CompletableFuture<byte[]>> pending = new HashMap<>();
+        private long bytes = 0;
+
+        TileCache(long maxBytes) {
+            this.maxBytes = maxBytes;
+        }
+
+        /**
+         * Gets the given tile, or the tile that is being generated for it.
+         *
+         * @param reservation The future to return if the tile is neither cached nor being
+         *                    generated. The caller must then generate the tile, and either put()
+         *                    it or cancel() it before completing the reservation.
+         * @return A future for the tile.
+         */
+        synchronized CompletableFuture<byte[]> getOrReserve(TileKey key,
+                                                            CompletableFuture<byte[]> reservation) {
+            byte[] tile = tiles.get(key);
+            if (tile != null) {
+                return CompletableFuture.completedFuture(tile);
+            }
+            CompletableFuture<byte[]> existing = pending.putIfAbsent(key, reservation);
+            return existing != null ? existing : reservation;
+        }
+
+        /**
+         * Releases the reservation for a tile that failed to generate.
+         */
+        synchronized void cancel(TileKey key) {
+            pending.remove(key);
+        }
+
+        synchronized void put(TileKey key, byte[] tile) {
+            pending.remove(key);
+            if (tile.length > maxBytes) {
+                return;
+            }
+
+            byte[] previous = tiles.put(key, tile);
+            if (previous != null) {
+                bytes -= previous.length;
+            }
+            bytes += tile.length;
+
+            Iterator<byte[]> iterator = tiles.values().iterator();
+            while (bytes > maxBytes) {
+                bytes -= iterator.next().length;
+                iterator.remove();
+            }
+        }
+
+        synchronized int size() {
+            return tiles.size();
+        }
+
+        synchronized long getBytes() {
+            return bytes;
+        }
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright 2019 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jf.ptgen.penrose;
+
+/**
+ * Determines which band of a single box a rhombus belongs to, when sweeping across the box in
+ * horizontal bands.
+ *
+ * <p>The bands are treated as a grid with a single column, so that they can be visited like the
+ * boxes of a normal grid. A rhombus belongs to the (0, band) box of that grid if it belongs to the
+ * swept box in the original grid, and its center is in that band. Rhombii with a center above
+ * or below the swept box belong to the nearest band. Rhombii that belong to other boxes in the
+ * original grid don't belong to any band.
+ */
+class BandOwnership extends GridOwnership {
+    // The x multiple reported for rhombii that don't belong to any band
+    private static final int NO_BAND = -1;
+
+    // How far past the top of a band the rhombii of the next band are followed while visiting
+    // it. The centers of rhombii that share an edge are less than 1 apart, so this reaches the
+    // neighbors of any rhombus at the top of the band. Otherwise, a rhombus at the top corner of
+    // a band whose neighbors all belong to the next band or to another box would never be found,
+    // since the walks that reach it would only start from rhombii in the next band.
+    private static final double FOLLOW_MARGIN = 1;
+
+    private final int boxX;
+    private final int boxY;
+    private final double boxLeft;
+    private final double boxRight;
+    private final double bandOriginY;
+    private final double bandHeight;
+    private final int bandCount;
+
+    BandOwnership(BoundingBox boundingBox, double bandHeight, int bandCount) {
+        super(boundingBox.gridOrigin, boundingBox.gridSize);
+        this.boxX = boundingBox.xMultiple;
+        this.boxY = boundingBox.yMultiple;
+        this.boxLeft = boundingBox.origin.x;
+        this.boxRight = boundingBox.extent.x;
+        this.bandOriginY = boundingBox.origin.y;
+        this.bandHeight = bandHeight;
+        this.bandCount = bandCount;
+    }
+
+    @Override void findOwner(double[] vertices, int offset) {
+        super.findOwner(vertices, offset);
+        if (getOwnerX() != boxX || getOwnerY() != boxY) {
+            setOwner(NO_BAND, NO_BAND);
+            return;
+        }
+        // The center of a rhombus is halfway between opposite vertices
+        setOwner(0, getBand((vertices[offset + 1] + vertices[offset + 5]) / 2));
+    }
+
+    @Override boolean isFollowedBy(Rhombus rhombus, int xMultiple, int yMultiple) {
+        double bandBottom = bandOriginY + bandHeight * yMultiple;
+        if (xMultiple == 0 &&
+                overlaps(rhombus, boxLeft, bandBottom, boxRight, bandBottom + bandHeight)) {
+            return true;
+        }
+
+        double centerY = getCenterY(rhombus);
+        if (xMultiple != 0 || getBand(centerY) != yMultiple + 1 ||
+                centerY >= bandOriginY + bandHeight * (yMultiple + 1) + FOLLOW_MARGIN) {
+            return false;
+        }
+        findOwner(rhombus);
+        return getOwnerX() == 0;
+    }
+
+    private int getBand(double centerY) {
+        int band = (int)Math.floor((centerY - bandOriginY) / bandHeight);
+        return Math.max(0, Math.min(bandCount - 1, band));
+    }
+
+    private static double getCenterY(Rhombus rhombus) {
+        // The center of a rhombus is halfway between opposite vertices
+        double[] vertices = rhombus.getVertexCoordinates();
+        return (vertices[1] + vertices[5]) / 2;
+    }
+}
@@ -0,0 +1,159 @@
+/*
+ * Copyright 2019 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jf.ptgen.penrose;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Hands the work done while visiting one box over to the next box in the same column.
+ *
+ * <p>While visiting a box, strips are walked a short distance past the edges of the box. For
+ * the boxes of a column that are visited in order of increasing y, this means that the walks
+ * for one box cover most of the bottom edge of the next box. Rather than walking those strips
+ * again, the next box picks up the walks where they stopped past the top edge of the previous
+ * box, and starts with the rhombii belonging to it that were already found.
+ *
+ * <p>Only the rhombii and walks near the top edge of the previous box are kept, so the memory
+ * used doesn't grow with the number of boxes. If a box isn't the next box in the same column
+ * as the previous one, nothing is handed over and it is visited from scratch.
+ *
+ * <p>This must not be shared between threads.
+ */
+public class BoxHandoff {
+    private BoundingBox previousBox;
+
+    // The rhombii and walks handed over to the current box
+    private List<HandedRhombus> handedRhombii = new ArrayList<>();
+    private List<Frontier> frontiers = new ArrayList<>();
+
+    // The rhombii and walks to hand over to the next box
+    private List<HandedRhombus> nextHandedRhombii = new ArrayList<>();
+    private List<Frontier> nextFrontiers = new ArrayList<>();
+
+    /**
+     * Called before visiting a box.
+     */
+    void startBox(BoundingBox boundingBox) {
+        List<HandedRhombus> tempRhombii = handedRhombii;
+        handedRhombii = nextHandedRhombii;
+        nextHandedRhombii = tempRhombii;
+        nextHandedRhombii.clear();
+
+        List<Frontier> tempFrontiers = frontiers;
+        frontiers = nextFrontiers;
+        nextFrontiers = tempFrontiers;
+        nextFrontiers.clear();
+
+        if (!isNextInColumn(boundingBox)) {
+            handedRhombii.clear();
+            frontiers.clear();
+        }
+        previousBox = boundingBox;
+    }
+
+    private boolean isNextInColumn(BoundingBox boundingBox) {
+        return previousBox != null &&
+                previousBox.gridOrigin.equals2D(boundingBox.gridOrigin) &&
+                previousBox.gridSize.equals(boundingBox.gridSize) &&
+                previousBox.xMultiple == boundingBox.xMultiple &&
+                previousBox.yMultiple + 1 == boundingBox.yMultiple;
+    }
+
+    /**
+     * @return The walks that stopped past the top edge of the previous box.
+     */
+    List<Frontier> getFrontiers() {
+        return frontiers;
+    }
+
+    /**
+     * @return The rhombii found while visiting earlier boxes that belong to later boxes in the
+     * column, or whose strips are followed while visiting the box after the one they were found
+     * in. These must be checked against the box being visited.
+     */
+    List<HandedRhombus> getHandedRhombii() {
+        return handedRhombii;
+    }
+
+    /**
+     * Hands a rhombus that doesn't belong to the box being visited over to the next box, if it
+     * belongs to a later box in the column, or if its strips are followed while visiting the next
+     * box. In the latter case, the walks that pick up where they stopped in the next box
+     * wouldn't reach it again.
+     *
+     * @param boundingBox The box being visited.
+     * @param ownerX The x multiple of the box that the rhombus belongs to.
+     * @param ownerY The y multiple of the box that the rhombus belongs to.
+     */
+    void handOver(BoundingBox boundingBox, GridOwnership ownership, Rhombus rhombus, int ownerX,
+                  int ownerY) {
+        if ((ownerX == boundingBox.xMultiple && ownerY > boundingBox.yMultiple) ||
+                ownership.isFollowedBy(rhombus, boundingBox.xMultiple,
+                        boundingBox.yMultiple + 1)) {
+            nextHandedRhombii.add(new HandedRhombus(rhombus, ownerX, ownerY));
+        }
+    }
+
+    /**
+     * Hands a walk that stopped at the given rhombus over to the next box, if it stopped past the
+     * top edge of the box being visited.
+     *
+     * @param boundingBox The box being visited.
+     * @param rhombus The rhombus that the walk stopped at.
+     * @param forward The direction of the walk along rhombus.strip1.
+     */
+    void handOverWalk(BoundingBox boundingBox, Rhombus rhombus, boolean forward) {
+        double top = boundingBox.extent.y + PenroseTiling.STRIP_OVERSCAN;
+        double[] vertices = rhombus.getVertexCoordinates();
+        for (int i = 1; i < 8; i += 2) {
+            if (vertices[i] > top) {
+                nextFrontiers.add(new Frontier(rhombus, forward));
+                return;
+            }
+        }
+    }
+
+    /**
+     * A rhombus that was handed over to the next box.
+     */
+    static class HandedRhombus {
+        public final Rhombus rhombus;
+        public final int ownerX;
+        public final int ownerY;
+
+        HandedRhombus(Rhombus rhombus, int ownerX, int ownerY) {
+            this.rhombus = rhombus;
+            this.ownerX = ownerX;
+            this.ownerY = ownerY;
+        }
+    }
+
+    /**
+     * The point where a walk along a strip stopped.
+     */
+    static class Frontier {
+        // The rhombus the walk stopped at. The walk was along rhombus.strip1.
+        public final Rhombus rhombus;
+        public final boolean forward;
+
+        Frontier(Rhombus rhombus, boolean forward) {
+            this.rhombus = rhombus;
+            this.forward = forward;
+        }
+    }
+}
@@ -0,0 +1,221 @@
+/*
+ * Copyright 2019 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jf.ptgen.penrose;
+
+import java.util.Locale;
+
+/**
+ * Counters for the work done while generating a tiling.
+ *
+ * <p>This is not thread safe. When boxes are generated on multiple threads, each box should be
+ * counted in its own instance, which can then be combined with {@link #add}.
+ */
+public class GenerationStats {
+    private long boxes;
+    private long rhombiiVisited;
+    private long rhombiiDiscarded;
+    private long stripsWalked;
+    private long walkSteps;
+    private long overscanSteps;
+    private long maxProcessedRhombii;
+    private long maxPendingRhombii;
+    private long maxExistingStrips;
+    private long generationNanos;
+    private long outputNanos;
+
+    /**
+     * @return The number of boxes that were generated.
+     */
+    public long getBoxes() {
+        return boxes;
+    }
+
+    /**
+     * @return The number of rhombii that were passed to the visitor.
+     */
+    public long getRhombiiVisited() {
+        return rhombiiVisited;
+    }
+
+    /**
+     * @return The number of rhombii that were generated while walking strips, but that belong to
+     * another box.
+     */
+    public long getRhombiiDiscarded() {
+        return rhombiiDiscarded;
+    }
+
+    /**
+     * @return The number of times a strip was walked in one direction.
+     */
+    public long getStripsWalked() {
+        return stripsWalked;
+    }
+
+    /**
+     * @return The number of rhombii generated while walking strips.
+     */
+    public long getWalkSteps() {
+        return walkSteps;
+    }
+
+    /**
+     * @return The number of rhombii generated while walking strips that have their center outside
+     * of the box being visited, i.e. that were only generated because of the overscan past the
+     * edges of the box.
+     */
+    public long getOverscanSteps() {
+        return overscanSteps;
+    }
+
+    /**
+     * @return The fraction of the rhombii generated while walking strips that were outside of the
+     * box being visited.
+     */
+    public double getOverscanRatio() {
+        return walkSteps == 0 ? 0 : overscanSteps / (double)walkSteps;
+    }
+
+    /**
+     * @return The largest number of rhombii tracked as processed for a single box.
+     */
+    public long getMaxProcessedRhombii() {
+        return maxProcessedRhombii;
+    }
+
+    /**
+     * @return The largest number of rhombii waiting to have their strips walked at once.
+     */
+    public long getMaxPendingRhombii() {
+        return maxPendingRhombii;
+    }
+
+    /**
+     * @return The largest number of strips tracked as walked for a single box.
+     */
+    public long getMaxExistingStrips() {
+        return maxExistingStrips;
+    }
+
+    /**
+     * @return The total time spent generating boxes, in nanoseconds. This includes the time
+     * spent in output callbacks, if the output was written as the boxes were generated.
+     */
+    public long getGenerationNanos() {
+        return generationNanos;
+    }
+
+    /**
+     * @return The total time spent in output callbacks, in nanoseconds.
+     */
+    public long getOutputNanos() {
+        return outputNanos;
+    }
+
+    /**
+     * Records that a box was generated.
+     *
+     * @param generationNanos The time spent generating the box.
+     * @param outputNanos The time spent in output callbacks for the box.
+     */
+    public void addBox(long generationNanos, long outputNanos) {
+        boxes++;
+        this.generationNanos += generationNanos;
+        this.outputNanos += outputNanos;
+    }
+
+    /**
+     * Adds the counts from the given stats to these.
+     */
+    public void add(GenerationStats other) {
+        boxes += other.boxes;
+        rhombiiVisited += other.rhombiiVisited;
+        rhombiiDiscarded += other.rhombiiDiscarded;
+        stripsWalked += other.stripsWalked;
+        walkSteps += other.walkSteps;
+        overscanSteps += other.overscanSteps;
+        maxProcessedRhombii = Math.max(maxProcessedRhombii, other.maxProcessedRhombii);
+        maxPendingRhombii = Math.max(maxPendingRhombii, other.maxPendingRhombii);
+        maxExistingStrips = Math.max(maxExistingStrips, other.maxExistingStrips);
+        generationNanos += other.generationNanos;
+        outputNanos += other.outputNanos;
+    }
+
+    void rhombusVisited() {
+        rhombiiVisited++;
+    }
+
+    void stripWalked() {
+        stripsWalked++;
+    }
+
+    /**
+     * Records a rhombus generated while walking a strip.
+     */
+    void walkStep(Rhombus rhombus, BoundingBox boundingBox, boolean kept) {
+        walkStep(rhombus.getVertexCoordinates(), 0, boundingBox, kept);
+    }
+
+    /**
+     * Records a rhombus generated while walking a strip, from its vertex coordinates, in the same
+     * layout as {@link RhombusBatch#vertexCoords}.
+     */
+    void walkStep(double[] vertices, int offset, BoundingBox boundingBox, boolean kept) {
+        walkSteps++;
+        if (!kept) {
+            rhombiiDiscarded++;
+        }
+
+        // The center of a rhombus is halfway between opposite vertices
+        double centerX = (vertices[offset] + vertices[offset + 4]) / 2;
+        double centerY = (vertices[offset + 1] + vertices[offset + 5]) / 2;
+        if (centerX < boundingBox.origin.x || centerX > boundingBox.extent.x ||
+                centerY < boundingBox.origin.y || centerY > boundingBox.extent.y) {
+            overscanSteps++;
+        }
+    }
+
+    void pendingRhombii(int count) {
+        maxPendingRhombii = Math.max(maxPendingRhombii, count);
+    }
+
+    void boxFinished(int processedRhombii, int existingStrips) {
+        maxProcessedRhombii = Math.max(maxProcessedRhombii, processedRhombii);
+        maxExistingStrips = Math.max(maxExistingStrips, existingStrips);
+    }
+
+    /**
+     * @return A human readable summary of the stats, over several lines.
+     */
+    public String getSummary() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format(Locale.ROOT, "Boxes: %d, %.3f ms per box%n",
+                boxes, boxes == 0 ? 0 : generationNanos / 1E6 / boxes));
+        sb.append(String.format(Locale.ROOT, "Rhombii: %d visited, %d discarded%n",
+                rhombiiVisited, rhombiiDiscarded));
+        sb.append(String.format(Locale.ROOT,
+                "Strips walked: %d, %d steps, %.1f%% of steps in the overscan%n",
+                stripsWalked, walkSteps, getOverscanRatio() * 100));
+        sb.append(String.format(Locale.ROOT,
+                "Max set sizes: %d processed rhombii, %d pending rhombii, %d strips%n",
+                maxProcessedRhombii, maxPendingRhombii, maxExistingStrips));
+        sb.append(String.format(Locale.ROOT,
+                "Time: %.1f ms generating, %.1f ms in output callbacks%n",
+                generationNanos / 1E6, outputNanos / 1E6));
+        return sb.toString();
+    }
+}
@@ -0,0 +1,304 @@
+/*
+ * Copyright 2019 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jf.ptgen.penrose;
+
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.math.Vector2D;
+
+/**
+ * Determines which box in a grid a rhombus belongs to.
+ *
+ * <p>This implements the rules described in {@link Rhombus#getContainingBoundingBox}. The rhombus
+ * is clipped against each box that it touches, using primitive doubles, and the box with the
+ * largest clipped area wins. Ties are won by the box with the lower x, and then the lower y.
+ *
+ * <p>The clipping is done relative to the first vertex of the rhombus, so that the precision of
+ * the clipped areas doesn't depend on how far the rhombus is from the origin.
+ *
+ * <p>An instance holds the scratch buffers used for clipping, so that ownership tests don't
+ * allocate. It must not be shared between threads.
+ */
+class GridOwnership {
+    // Clipping a convex polygon against a half-plane adds at most 1 vertex, so clipping the 4
+    // vertices of a rhombus against the 4 sides of a box yields at most 8 vertices. The extra
+    // room is slack in case rounding makes a clipped polygon slightly non-convex.
+    private static final int MAX_VERTICES = 16;
+
+    // Areas that differ by less than this are considered equal. Vertices are only precise to
+    // PenroseTiling.PRECISION_MODEL, and rhombii that are split exactly in half by a grid line
+    // (e.g. a rhombus with 2 vertices on the line) are common, so these ties must be detected
+    // reliably in order to apply the tie-breaking rules. Far from the origin, the positions of
+    // the grid lines relative to the rhombus are less precise, so the tolerance grows with the
+    // ulp of the rhombus's position.
+    private static final double AREA_TOLERANCE = 1E-9;
+    private static final double AREA_TOLERANCE_ULPS = 64;
+
+    private final double originX;
+    private final double originY;
+    private final double sizeX;
+    private final double sizeY;
+
+    private double[] xs = new double[MAX_VERTICES];
+    private double[] ys = new double[MAX_VERTICES];
+    private double[] clippedXs = new double[MAX_VERTICES];
+    private double[] clippedYs = new double[MAX_VERTICES];
+
+    private int ownerX;
+    private int ownerY;
+
+    /**
+     * @param gridOrigin The lower left point of the (0, 0) box of the grid.
+     * @param gridSize A vector representing the x and y size of each grid box.
+     */
+    GridOwnership(Coordinate gridOrigin, Vector2D gridSize) {
+        this.originX = gridOrigin.x;
+        this.originY = gridOrigin.y;
+        this.sizeX = gridSize.getX();
+        this.sizeY = gridSize.getY();
+    }
+
+    /**
+     * @return true if the given rhombus belongs to the box at the given multiples.
+     */
+    boolean isOwnedBy(Rhombus rhombus, int xMultiple, int yMultiple) {
+        return isOwnedBy(rhombus.getVertexCoordinates(), 0, xMultiple, yMultiple);
+    }
+
+    /**
+     * @return true if the rhombus with the given vertex coordinates belongs to the box at the
+     * given multiples.
+     */
+    boolean isOwnedBy(double[] vertices, int offset, int xMultiple, int yMultiple) {
+        findOwner(vertices, offset);
+        return ownerX == xMultiple && ownerY == yMultiple;
+    }
+
+    /**
+     * Finds the box that the given rhombus belongs to. The box's multiples are then available
+     * from {@link #getOwnerX()} and {@link #getOwnerY()}.
+     */
+    final void findOwner(Rhombus rhombus) {
+        findOwner(rhombus.getVertexCoordinates(), 0);
+    }
+
+    /**
+     * Finds the box that a rhombus belongs to, from its vertex coordinates.
+     *
+     * @param vertices The array containing the x and y coordinates of the 4 vertices of the
+     *                 rhombus, in the same order as {@link Rhombus#getVertices()}.
+     * @param offset The index of the first coordinate in vertices.
+     */
+    void findOwner(double[] vertices, int offset) {
+        double minX = vertices[offset];
+        double maxX = vertices[offset];
+        double minY = vertices[offset + 1];
+        double maxY = vertices[offset + 1];
+        for (int i = offset + 2; i < offset + 8; i += 2) {
+            minX = Math.min(minX, vertices[i]);
+            maxX = Math.max(maxX, vertices[i]);
+            minY = Math.min(minY, vertices[i + 1]);
+            maxY = Math.max(maxY, vertices[i + 1]);
+        }
+
+        int minCellX = (int)Math.floor((minX - originX) / sizeX);
+        int maxCellX = (int)Math.floor((maxX - originX) / sizeX);
+        int minCellY = (int)Math.floor((minY - originY) / sizeY);
+        int maxCellY = (int)Math.floor((maxY - originY) / sizeY);
+
+        if (minCellX == maxCellX && minCellY == maxCellY) {
+            ownerX = minCellX;
+            ownerY = minCellY;
+            return;
+        }
+
+        double baseX = vertices[offset];
+        double baseY = vertices[offset + 1];
+        double tolerance = Math.max(AREA_TOLERANCE,
+                AREA_TOLERANCE_ULPS * Math.ulp(Math.max(Math.abs(baseX), Math.abs(baseY))));
+
+        // Cells are visited in order of increasing x and then y, so only a strictly larger area
+        // displaces the current owner.
+        double maxArea = 0;
+        boolean found = false;
+        for (int cellX = minCellX; cellX <= maxCellX; cellX++) {
+            double left = originX + sizeX * cellX;
+            double right = left + sizeX;
+            for (int cellY = minCellY; cellY <= maxCellY; cellY++) {
+                double bottom = originY + sizeY * cellY;
+                double top = bottom + sizeY;
+
+                double area = clippedArea(vertices, offset, baseX, baseY, left, bottom, right,
+                        top);
+                if (area > maxArea + tolerance) {
+                    maxArea = area;
+                    ownerX = cellX;
+                    ownerY = cellY;
+                    found = true;
+                }
+            }
+        }
+
+        assert found;
+    }
+
+    int getOwnerX() {
+        return ownerX;
+    }
+
+    int getOwnerY() {
+        return ownerY;
+    }
+
+    /**
+     * Checks whether the strips through the given rhombus should be followed while visiting the
+     * given box, even if the rhombus belongs to a different box.
+     *
+     * <p>This is the case for the rhombii that overlap the box. A rhombus at the corner of a box
+     * may be the only rhombus on both of its strips that belongs to the box, so it would never be
+     * found if only the strips through the rhombii of the box were followed. The rhombii that
+     * overlap a box are all connected to each other though, so following all of them finds it.
+     */
+    boolean isFollowedBy(Rhombus rhombus, int xMultiple, int yMultiple) {
+        double left = originX + sizeX * xMultiple;
+        double bottom = originY + sizeY * yMultiple;
+        return overlaps(rhombus, left, bottom, left + sizeX, bottom + sizeY);
+    }
+
+    /**
+     * Checks whether the given rhombus might overlap the given rectangle. This may also return
+     * true for some rhombii that are just outside of a corner of the rectangle.
+     */
+    static boolean overlaps(Rhombus rhombus, double left, double bottom, double right,
+                            double top) {
+        double[] vertices = rhombus.getVertexCoordinates();
+
+        double minX = vertices[0];
+        double maxX = vertices[0];
+        double minY = vertices[1];
+        double maxY = vertices[1];
+        for (int i = 2; i < 8; i += 2) {
+            minX = Math.min(minX, vertices[i]);
+            maxX = Math.max(maxX, vertices[i]);
+            minY = Math.min(minY, vertices[i + 1]);
+            maxY = Math.max(maxY, vertices[i + 1]);
+        }
+        return minX < right && maxX > left && minY < top && maxY > bottom;
+    }
+
+    /**
+     * Replaces the owner found by the last call to {@link #findOwner}.
+     */
+    void setOwner(int ownerX, int ownerY) {
+        this.ownerX = ownerX;
+        this.ownerY = ownerY;
+    }
+
+    /**
+     * Gets the area of the intersection of the given rhombus with the given box.
+     *
+     * <p>The clipping is done with the given base point moved to the origin. Otherwise, the
+     * products in the area calculation would be of the order of the square of the distance from
+     * the origin, and the area would lose most of its precision to cancellation.
+     */
+    private double clippedArea(double[] vertices, int offset, double baseX, double baseY,
+                               double left, double bottom, double right, double top) {
+        for (int i = 0; i < 4; i++) {
+            xs[i] = vertices[offset + i * 2] - baseX;
+            ys[i] = vertices[offset + i * 2 + 1] - baseY;
+        }
+
+        int count = clip(4, true, left - baseX, true);
+        count = clip(count, true, right - baseX, false);
+        count = clip(count, false, bottom - baseY, true);
+        count = clip(count, false, top - baseY, false);
+
+        if (count < 3) {
+            return 0;
+        }
+
+        double doubleArea = 0;
+        double previousX = xs[count - 1];
+        double previousY = ys[count - 1];
+        for (int i = 0; i < count; i++) {
+            doubleArea += previousX * ys[i] - xs[i] * previousY;
+            previousX = xs[i];
+            previousY = ys[i];
+        }
+        return Math.abs(doubleArea) / 2;
+    }
+
+    /**
+     * Clips the polygon in xs/ys to one side of an axis-aligned line, using one step of the
+     * Sutherland-Hodgman algorithm. The result is left in xs/ys.
+     *
+     * @param count The number of vertices in the polygon.
+     * @param xAxis true to clip against a vertical line at x=bound, false to clip against a
+     *              horizontal line at y=bound.
+     * @param bound The position of the line to clip against.
+     * @param keepAbove true to keep the part of the polygon above bound, false to keep the part
+     *                  below it.
+     * @return The number of vertices in the clipped polygon.
+     */
+    private int clip(int count, boolean xAxis, double bound, boolean keepAbove) {
+        if (count == 0) {
+            return 0;
+        }
+
+        int clippedCount = 0;
+
+        double previousX = xs[count - 1];
+        double previousY = ys[count - 1];
+        double previousDistance = distance(previousX, previousY, xAxis, bound, keepAbove);
+
+        for (int i = 0; i < count; i++) {
+            double x = xs[i];
+            double y = ys[i];
+            double distance = distance(x, y, xAxis, bound, keepAbove);
+
+            if ((distance >= 0) != (previousDistance >= 0)) {
+                double t = previousDistance / (previousDistance - distance);
+                clippedXs[clippedCount] = previousX + t * (x - previousX);
+                clippedYs[clippedCount] = previousY + t * (y - previousY);
+                clippedCount++;
+            }
+            if (distance >= 0) {
+                clippedXs[clippedCount] = x;
+                clippedYs[clippedCount] = y;
+                clippedCount++;
+            }
+
+            previousX = x;
+            previousY = y;
+            previousDistance = distance;
+        }
+
+        double[] temp = xs;
+        xs = clippedXs;
+        clippedXs = temp;
+        temp = ys;
+        ys = clippedYs;
+        clippedYs = temp;
+
+        return clippedCount;
+    }
+
+    private static double distance(double x, double y, boolean xAxis, double bound,
+                                   boolean keepAbove) {
+        double distance = (xAxis ? x : y) - bound;
+        return keepAbove ? distance : -distance;
+    }
+}
@@ -0,0 +1,56 @@
+/*
+ * Copyright 2019 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jf.ptgen.penrose;
+
+/**
+ * A set of longs, stored in a LongPairHashTable.
+ *
+ * <p>Adding a value doesn't allocate, except when the table grows. The table is reused after
+ * clear().
+ */
+class LongHashSet {
+    private static final int INITIAL_CAPACITY = 256;
+
+    private final LongPairHashTable table = new LongPairHashTable(INITIAL_CAPACITY);
+
+    /**
+     * Adds a value to the set.
+     *
+     * @return true if the value was added, or false if it was already present.
+     */
+    public boolean add(long value) {
+        return table.putIfAbsent(value, 0, 0) == LongPairHashTable.ABSENT;
+    }
+
+    public boolean contains(long value) {
+        return table.get(value, 0) != LongPairHashTable.ABSENT;
+    }
+
+    /**
+     * @return The number of values in the set.
+     */
+    public int size() {
+        return table.size();
+    }
+
+    /**
+     * Removes all values from the set. The table keeps its current capacity.
+     */
+    public void clear() {
+        table.clear();
+    }
+}
@@ -0,0 +1,179 @@
+/*
+ * Copyright 2019 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jf.ptgen.penrose;
+
+import javax.annotation.Nullable;
+import java.util.Arrays;
+
+/**
+ * An open-addressing hash table with linear probing, from keys made of 2 longs to non-negative
+ * ints.
+ *
+ * <p>This is the table behind the sets of strips, edges and vertices that are built while
+ * generating and writing a tiling. Adding a key doesn't allocate, except when the table grows,
+ * and the table is reused after clear().
+ */
+public class LongPairHashTable {
+    /**
+     * Returned by get() and putIfAbsent() when the key isn't in the table.
+     */
+    public static final int ABSENT = -1;
+
+    /**
+     * Selects which keys are kept by retain().
+     */
+    public interface KeyPredicate {
+        boolean test(long highKey, long lowKey);
+    }
+
+    // All 3 arrays have the same length, which is always a power of 2. A slot is empty when its
+    // value is 0, otherwise the value is the stored value + 1, so any key can be stored.
+    private long[] highKeys;
+    private long[] lowKeys;
+    private int[] values;
+    private int size = 0;
+
+    /**
+     * @param initialCapacity The initial number of slots in the table, which must be a power of 2.
+     *                        The table holds up to half this many keys before it grows.
+     */
+    public LongPairHashTable(int initialCapacity) {
+        if (initialCapacity < 2 || Integer.bitCount(initialCapacity) != 1) {
+            throw new IllegalArgumentException("initialCapacity must be a power of 2");
+        }
+        highKeys = new long[initialCapacity];
+        lowKeys = new long[initialCapacity];
+        values = new int[initialCapacity];
+    }
+
+    /**
+     * @return The number of keys in the table.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return The value for the given key, or ABSENT if it isn't in the table.
+     */
+    public int get(long highKey, long lowKey) {
+        int mask = values.length - 1;
+        int index = hash(highKey, lowKey) & mask;
+        while (values[index] != 0) {
+            if (lowKeys[index] == lowKey && highKeys[index] == highKey) {
+                return values[index] - 1;
+            }
+            index = (index + 1) & mask;
+        }
+        return ABSENT;
+    }
+
+    /**
+     * Adds a key to the table, unless it is already present.
+     *
+     * @param value The value for the key, which must not be negative.
+     * @return The existing value for the key, or ABSENT if the key was added.
+     */
+    public int putIfAbsent(long highKey, long lowKey, int value) {
+        if (value < 0) {
+            throw new IllegalArgumentException("value must not be negative");
+        }
+
+        int mask = values.length - 1;
+        int index = hash(highKey, lowKey) & mask;
+        while (values[index] != 0) {
+            if (lowKeys[index] == lowKey && highKeys[index] == highKey) {
+                return values[index] - 1;
+            }
+            index = (index + 1) & mask;
+        }
+
+        highKeys[index] = highKey;
+        lowKeys[index] = lowKey;
+        values[index] = value + 1;
+        size++;
+
+        // Keep the load factor at or below 1/2
+        if (size * 2 > values.length) {
+            rehash(values.length * 2, null);
+        }
+        return ABSENT;
+    }
+
+    /**
+     * Removes all keys from the table. The table keeps its current capacity.
+     */
+    public void clear() {
+        Arrays.fill(values, 0);
+        size = 0;
+    }
+
+    /**
+     * Removes all keys that don't match the given predicate. The table keeps its current
+     * capacity.
+     */
+    public void retain(KeyPredicate predicate) {
+        rehash(values.length, predicate);
+    }
+
+    /**
+     * Moves the keys into new arrays of the given capacity, dropping the ones that don't match
+     * the predicate, if there is one.
+     */
+    private void rehash(int capacity, @Nullable KeyPredicate predicate) {
+        long[] oldHighKeys = highKeys;
+        long[] oldLowKeys = lowKeys;
+        int[] oldValues = values;
+
+        highKeys = new long[capacity];
+        lowKeys = new long[capacity];
+        values = new int[capacity];
+        size = 0;
+
+        int mask = capacity - 1;
+        for (int i = 0; i < oldValues.length; i++) {
+            if (oldValues[i] == 0) {
+                continue;
+            }
+            long highKey = oldHighKeys[i];
+            long lowKey = oldLowKeys[i];
+            if (predicate != null && !predicate.test(highKey, lowKey)) {
+                continue;
+            }
+
+            int index = hash(highKey, lowKey) & mask;
+            while (values[index] != 0) {
+                index = (index + 1) & mask;
+            }
+            highKeys[index] = highKey;
+            lowKeys[index] = lowKey;
+            values[index] = oldValues[i];
+            size++;
+        }
+    }
+
+    private static int hash(long highKey, long lowKey) {
+        // The finalization step from MurmurHash3
+        long hash = highKey * 0x9E3779B97F4A7C15L + lowKey;
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return (int)hash;
+    }
+}
@@ -16,13 +16,25 @@
 
 package org.jf.ptgen.penrose;
 
+import org.jf.ptgen.penrose.BoxHandoff.Frontier;
+import org.jf.ptgen.penrose.BoxHandoff.HandedRhombus;
 import org.locationtech.jts.geom.Coordinate;
 import org.locationtech.jts.geom.GeometryFactory;
 import org.locationtech.jts.geom.PrecisionModel;
+import org.locationtech.jts.math.Vector2D;
 
+import javax.annotation.Nullable;
+import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Random;
 import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * Represents a penrose tiling generated by de Bruijn's method.
@@ -36,6 +48,58 @@ public class PenroseTiling {
     public static PrecisionModel PRECISION_MODEL = new PrecisionModel(1E10);
     public static GeometryFactory GEOMETRY_FACTORY = new GeometryFactory(PRECISION_MODEL);
 
+    // How far past the edges of a bounding box strips are walked. This catches the case of a
+    // strip parallel with an edge that goes in and out of the bounding box. 5 should be enough
+    // for approximately 2 strips width.
+    static final double STRIP_OVERSCAN = 5;
+
+    // How far the intersection of the strips of the rhombus containing a point can be from the
+    // estimate of its position in pentagrid space, in pentagrid units. See getContainingRhombus()
+    private static final double POINT_LOCATION_RADIUS = 1.5;
+
+    // Points this close to the edge of a rhombus, relative to its edge length, are considered to
+    // be inside it. This covers the rounding of the vertex coordinates.
+    private static final double CONTAINMENT_TOLERANCE = 1E-9;
+
+    // The minimum width and height of the regions that a box is split into, when generating the
+    // regions concurrently. Each region walks its strips past its edges, so smaller regions
+    // would mostly repeat the work of their neighbors.
+    static final double MIN_REGION_SIZE = 20;
+
+    // How many batches of rhombii each region can generate ahead of the visitor, when generating
+    // the regions of a box concurrently.
+    private static final int REGION_QUEUE_SIZE = 4;
+
+    // Queued after the last batch of a region
+    private static final RhombusBatch END_OF_REGION = new RhombusBatch(1);
+
+    // How far past the edges of a bounding box the strip intersections are enumerated, by
+    // Engine.ENUMERATION. A rhombus that belongs to a box (or to a region along its side, see
+    // RegionOwnership) has its first vertex within ~2.9 of the box, and that vertex is within
+    // ~1.6 of 2.5 times the strip intersection, once the offsets are accounted for.
+    private static final double ENUMERATION_MARGIN = 5;
+
+    // The positions within a bounding box to look for an initial rhombus at, as fractions of
+    // the size of the box
+    private static final double[][] INITIAL_POSITIONS = {
+            {.5, .5}, {.25, .25}, {.25, .75}, {.75, .25}, {.75, .75}
+    };
+
+    // The unit vectors that lattice coordinates are multiplied by to get a vertex, which are
+    // also the offset directions of each family. See Rhombus.calculateVertexCoordinates()
+    private final double[] latticeVectorsX = new double[5];
+    private final double[] latticeVectorsY = new double[5];
+
+    // The sum of offset_i * latticeVector_i over all families
+    private final double offsetSumX;
+    private final double offsetSumY;
+
+    // Tables for the distance along a strip to its intersection with another strip, indexed by
+    // [family][otherFamily]. See getIntersectionDistance()
+    final double[][] intersectionBases;
+    final double[][] intersectionIntervals;
+    final double[][] intersectionMultipleSteps;
+
     /**
      * Create a new tiling using the given offsets.
      *
@@ -55,6 +119,46 @@ public class PenroseTiling {
                 new StripFamily(this, offsets[3], 3),
                 new StripFamily(this, offsets[4], 4),
         };
+
+        // The intersections of a strip with the strips of another family are evenly spaced
+        // along it. For strip m of family j, the intersection with strip k of family i is at
+        // distance (offset_i + k - (offset_j + m) * (n_j . n_i)) / (d_j . n_i) from the strip's
+        // getPoint(), where d is the direction of a family, and n is its offset direction.
+        double offsetSumX = 0;
+        double offsetSumY = 0;
+        for (int family = 0; family < 5; family++) {
+            latticeVectorsX[family] = PentAngle.PENTANGLES[family].cos;
+            latticeVectorsY[family] = -PentAngle.PENTANGLES[family].sin;
+            offsetSumX += offsets[family] * latticeVectorsX[family];
+            offsetSumY += offsets[family] * latticeVectorsY[family];
+        }
+        this.offsetSumX = offsetSumX;
+        this.offsetSumY = offsetSumY;
+
+        intersectionBases = new double[5][5];
+        intersectionIntervals = new double[5][5];
+        intersectionMultipleSteps = new double[5][5];
+        for (int family = 0; family < 5; family++) {
+            StripFamily stripFamily = stripFamilies[family];
+            Vector2D direction = stripFamily.getDirection();
+            Vector2D offsetDirection = stripFamily.getOffsetDirection();
+
+            for (int otherFamily = 0; otherFamily < 5; otherFamily++) {
+                if (otherFamily == family) {
+                    continue;
+                }
+                StripFamily other = stripFamilies[otherFamily];
+                Vector2D otherOffsetDirection = other.getOffsetDirection();
+
+                double interval = 1 / direction.dot(otherOffsetDirection);
+                double projection = offsetDirection.dot(otherOffsetDirection);
+
+                intersectionIntervals[family][otherFamily] = interval;
+                intersectionBases[family][otherFamily] =
+                        (other.offset - stripFamily.offset * projection) * interval;
+                intersectionMultipleSteps[family][otherFamily] = -projection * interval;
+            }
+        }
     }
 
     /**
@@ -79,6 +183,21 @@ public class PenroseTiling {
         return offsets;
     }
 
+    /**
+     * Gets the distance along a strip to its intersection with another strip. The distance is
+     * relative to the strip's getPoint(), in units of its direction vector.
+     *
+     * @param family The family of the strip to measure along.
+     * @param multiple The multiple of the strip to measure along.
+     * @param otherFamily The family of the intersecting strip. This must be different than family.
+     * @param otherMultiple The multiple of the intersecting strip.
+     */
+    double getIntersectionDistance(int family, int multiple, int otherFamily, int otherMultiple) {
+        return intersectionBases[family][otherFamily] +
+                multiple * intersectionMultipleSteps[family][otherFamily] +
+                otherMultiple * intersectionIntervals[family][otherFamily];
+    }
+
     /**
      * Get the given StripFamily.
      *
@@ -89,6 +208,138 @@ public class PenroseTiling {
         return stripFamilies[familyIndex];
     }
 
+    /**
+     * Finds the rhombus that contains the given point, without walking any strips.
+     *
+     * <p>The vertex for a point p in pentagrid space is sum(floor(p . n_i - offset_i) * n_i),
+     * which is 2.5 * p - sum(offset_i * n_i), give or take ~1.6. So the rhombus containing a point
+     * t is at the intersection of 2 strips within ~1.4 of (t + sum(offset_i * n_i)) / 2.5 in
+     * pentagrid space. Each such intersection is checked, for each of the 10 pairs of families.
+     *
+     * @return The rhombus containing the point. If the point is on an edge or vertex shared by
+     * multiple rhombii, any one of them is returned.
+     */
+    public Rhombus getContainingRhombus(double x, double y) {
+        Rhombus rhombus = getContainingRhombus(x, y, POINT_LOCATION_RADIUS);
+        if (rhombus == null) {
+            // Should only be possible due to rounding. Try again with a larger radius
+            rhombus = getContainingRhombus(x, y, POINT_LOCATION_RADIUS * 2);
+            if (rhombus == null) {
+                throw new IllegalStateException(
+                        "Couldn't find the rhombus containing (" + x + ", " + y + ")");
+            }
+        }
+        return rhombus;
+    }
+
+    @Nullable
+    private Rhombus getContainingRhombus(double x, double y, double radius) {
+        // The estimated position of the point in pentagrid space
+        double gridX = (x + offsetSumX) / 2.5;
+        double gridY = (y + offsetSumY) / 2.5;
+
+        int[] latticeCoords = new int[5];
+
+        for (int family1 = 0; family1 < 5; family1++) {
+            double position1 = gridX * latticeVectorsX[family1] +
+                    gridY * latticeVectorsY[family1] - stripFamilies[family1].offset;
+            int minMultiple1 = (int)Math.ceil(position1 - radius);
+            int maxMultiple1 = (int)Math.floor(position1 + radius);
+
+            for (int family2 = family1 + 1; family2 < 5; family2++) {
+                double position2 = gridX * latticeVectorsX[family2] +
+                        gridY * latticeVectorsY[family2] - stripFamilies[family2].offset;
+                int minMultiple2 = (int)Math.ceil(position2 - radius);
+                int maxMultiple2 = (int)Math.floor(position2 + radius);
+
+                // For the offset d from the intersection to the estimate, with u = d . n1 and
+                // w = d . n2, |d|^2 = (u^2 + w^2 - 2 * u * w * cos) / sin^2, where cos and sin
+                // are of the angle between n1 and n2.
+                double cos = latticeVectorsX[family1] * latticeVectorsX[family2] +
+                        latticeVectorsY[family1] * latticeVectorsY[family2];
+                double maxDistance = radius * radius * (1 - cos * cos);
+
+                for (int multiple1 = minMultiple1; multiple1 <= maxMultiple1; multiple1++) {
+                    double u = position1 - multiple1;
+                    for (int multiple2 = minMultiple2; multiple2 <= maxMultiple2; multiple2++) {
+                        double w = position2 - multiple2;
+                        if (u * u + w * w - 2 * u * w * cos > maxDistance) {
+                            continue;
+                        }
+
+                        getIntersectionLatticeCoords(family1, multiple1, family2, multiple2,
+                                latticeCoords, 0);
+                        if (rhombusContains(latticeCoords, family1, family2, x, y)) {
+                            return new Rhombus(getStripFamily(family1).getStrip(multiple1),
+                                    getStripFamily(family2).getStrip(multiple2), latticeCoords);
+                        }
+                    }
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Gets the lattice coordinates of the rhombus at the intersection of 2 strips. These are the
+     * same as for the rhombus that Strip.getRhombii() returns for the intersection, walking
+     * forward along the first strip.
+     *
+     * @param latticeCoords The array to store the 5 lattice coordinates in.
+     * @param offset The index in latticeCoords to store the first lattice coordinate at.
+     */
+    private void getIntersectionLatticeCoords(int family1, int multiple1, int family2,
+                                              int multiple2, int[] latticeCoords, int offset) {
+        double target = getIntersectionDistance(family1, multiple1, family2, multiple2);
+
+        for (int i = 0; i < 5; i++) {
+            if (i == family1) {
+                latticeCoords[offset + i] = multiple1;
+            } else if (i == family2) {
+                latticeCoords[offset + i] = multiple2;
+            } else {
+                double delta = intersectionBases[family1][i] +
+                        multiple1 * intersectionMultipleSteps[family1][i] - target;
+                double interval = intersectionIntervals[family1][i];
+
+                // The next multiple past the intersection, and then the one before it
+                if (interval < 0) {
+                    latticeCoords[offset + i] = (int)-Math.ceil(delta / interval);
+                } else {
+                    latticeCoords[offset + i] = (int)-Math.floor(delta / interval) - 1;
+                }
+            }
+        }
+    }
+
+    /**
+     * @return true if the given point is inside or on the edge of the rhombus with the given
+     * lattice coordinates, with strip1 and strip2 from the given families.
+     */
+    private boolean rhombusContains(int[] latticeCoords, int family1, int family2, double x,
+                                    double y) {
+        PhiCoordinate vertex = PhiCoordinate.fromLatticeCoords(latticeCoords);
+        double vertexX = vertex.getX();
+        double vertexY = vertex.getY();
+
+        // The vertices are vertex, vertex - v2, vertex - v1 - v2 and vertex - v1, in order
+        double v1X = latticeVectorsX[family1];
+        double v1Y = latticeVectorsY[family1];
+        double v2X = latticeVectorsX[family2];
+        double v2Y = latticeVectorsY[family2];
+
+        // Write the point relative to the first vertex as -a * v1 - b * v2. It's inside if both
+        // a and b are in [0, 1].
+        double dx = x - vertexX;
+        double dy = y - vertexY;
+        double determinant = v1X * v2Y - v1Y * v2X;
+        double a = -(dx * v2Y - dy * v2X) / determinant;
+        double b = -(v1X * dy - v1Y * dx) / determinant;
+
+        return a >= -CONTAINMENT_TOLERANCE && a <= 1 + CONTAINMENT_TOLERANCE &&
+                b >= -CONTAINMENT_TOLERANCE && b <= 1 + CONTAINMENT_TOLERANCE;
+    }
+
     /**
      * Visit all rhombii for the given bounding box.
      *
@@ -100,10 +351,514 @@ public class PenroseTiling {
      * into multiple rectangular-ish segments that can then be re-joined with no gaps or overlaps.
      */
     public void visitRhombii(BoundingBox boundingBox, RhombusVisitor visitor) {
+        visitRhombii(boundingBox, visitor, null);
+    }
+
+    /**
+     * Visit all rhombii for the given bounding box, picking up the work done while visiting the
+     * previous box.
+     *
+     * <p>This visits the same rhombii as {@link #visitRhombii(BoundingBox, RhombusVisitor)}, but
+     * possibly in a different order. If the previous box visited with the given handoff was the
+     * box just below this one, the strips that were walked for it aren't walked again.
+     *
+     * @param handoff The work handed over from the previous box. The work to hand over to the
+     *                next box is stored back into it. If null, nothing is handed over.
+     */
+    public void visitRhombii(BoundingBox boundingBox, RhombusVisitor visitor,
+                             @Nullable BoxHandoff handoff) {
+        visitRhombii(boundingBox, visitor, handoff, null);
+    }
+
+    /**
+     * Visit all rhombii for the given bounding box, counting the work done.
+     *
+     * @param handoff See {@link #visitRhombii(BoundingBox, RhombusVisitor, BoxHandoff)}.
+     * @param stats The stats to add the work done for this box to. If null, nothing is counted.
+     */
+    public void visitRhombii(BoundingBox boundingBox, RhombusVisitor visitor,
+                             @Nullable BoxHandoff handoff, @Nullable GenerationStats stats) {
+        visitRhombii(boundingBox,
+                new GridOwnership(boundingBox.gridOrigin, boundingBox.gridSize), visitor,
+                handoff, stats);
+    }
+
+    private void visitRhombii(BoundingBox boundingBox, GridOwnership ownership,
+                              RhombusVisitor visitor, @Nullable BoxHandoff handoff,
+                              @Nullable GenerationStats stats) {
         Set<Rhombus> processedRhombii = new HashSet<>();
         Set<Rhombus> pendingRhombii = new HashSet<>();
-        Set<Strip> existingStrips = new HashSet<>();
+        LongHashSet existingStrips = new LongHashSet();
+
+        if (handoff != null) {
+            handoff.startBox(boundingBox);
+
+            // The walks that reached past the top of the previous box already covered the
+            // bottom of this one, so they just need to be continued.
+            for (Frontier frontier: handoff.getFrontiers()) {
+                existingStrips.add(frontier.rhombus.strip1.getKey());
+            }
+            for (Frontier frontier: handoff.getFrontiers()) {
+                walkStrip(boundingBox, ownership, handoff, stats, pendingRhombii,
+                        processedRhombii, visitor, frontier.rhombus.strip1,
+                        frontier.rhombus.strip2, frontier.forward);
+            }
+
+            for (HandedRhombus handedRhombus: handoff.getHandedRhombii()) {
+                Rhombus rhombus = handedRhombus.rhombus;
+                if (handedRhombus.ownerX != boundingBox.xMultiple ||
+                        handedRhombus.ownerY != boundingBox.yMultiple) {
+                    handoff.handOver(boundingBox, ownership, rhombus, handedRhombus.ownerX,
+                            handedRhombus.ownerY);
+                    if (ownership.isFollowedBy(rhombus, boundingBox.xMultiple,
+                            boundingBox.yMultiple)) {
+                        processedRhombii.add(rhombus);
+                        pendingRhombii.add(rhombus);
+                    }
+                    continue;
+                }
+                visitRhombus(stats, processedRhombii, pendingRhombii, visitor, rhombus);
+                processStrip(boundingBox, ownership, handoff, stats, existingStrips,
+                        pendingRhombii, processedRhombii, visitor, rhombus.strip1,
+                        rhombus.strip2);
+            }
+        }
+
+        if (pendingRhombii.isEmpty()) {
+            Rhombus initialRhombus = findInitialRhombus(boundingBox, ownership, handoff);
+            if (initialRhombus == null) {
+                throw new RuntimeException("Initial rhombus is outside the bounding box. Maybe "
+                        + "the bounding boxes are too small?");
+            }
+
+            visitRhombus(stats, processedRhombii, pendingRhombii, visitor, initialRhombus);
+            processStrip(boundingBox, ownership, handoff, stats, existingStrips, pendingRhombii,
+                    processedRhombii, visitor, initialRhombus.strip1, initialRhombus.strip2);
+            processStrip(boundingBox, ownership, handoff, stats, existingStrips, pendingRhombii,
+                    processedRhombii, visitor, initialRhombus.strip2, initialRhombus.strip1);
+        }
+
+        while (!pendingRhombii.isEmpty()) {
+            if (stats != null) {
+                stats.pendingRhombii(pendingRhombii.size());
+            }
+            Rhombus rhombus = pendingRhombii.iterator().next();
+            pendingRhombii.remove(rhombus);
+            processStrip(boundingBox, ownership, handoff, stats, existingStrips, pendingRhombii,
+                    processedRhombii, visitor, rhombus.strip2, rhombus.strip1);
+        }
+
+        if (stats != null) {
+            stats.boxFinished(processedRhombii.size(), existingStrips.size());
+        }
+    }
+
+    /**
+     * Visit all rhombii for the given bounding box, in chunks.
+     *
+     * <p>This visits the same rhombii as {@link #visitRhombii(BoundingBox, RhombusVisitor)}, in
+     * the same order. The batch is filled with rhombii and passed to the visitor each time it is
+     * full, and once more at the end for any remaining rhombii.
+     *
+     * @param batch The batch to collect the rhombii in. Any rhombii already in it are discarded.
+     */
+    public void visitRhombii(BoundingBox boundingBox, RhombusBatch batch,
+                             RhombusBatchVisitor visitor) {
+        visitRhombii(boundingBox, batch, visitor, null);
+    }
+
+    /**
+     * Visit all rhombii for the given bounding box, in chunks, picking up the work done while
+     * visiting the previous box.
+     *
+     * @see #visitRhombii(BoundingBox, RhombusBatch, RhombusBatchVisitor)
+     * @see #visitRhombii(BoundingBox, RhombusVisitor, BoxHandoff)
+     */
+    public void visitRhombii(BoundingBox boundingBox, RhombusBatch batch,
+                             RhombusBatchVisitor visitor, @Nullable BoxHandoff handoff) {
+        batch.clear();
+        visitRhombii(boundingBox, rhombus -> {
+            batch.add(rhombus);
+            if (batch.isFull()) {
+                visitor.visitRhombii(batch);
+                batch.clear();
+            }
+        }, handoff);
+
+        if (!batch.isEmpty()) {
+            visitor.visitRhombii(batch);
+            batch.clear();
+        }
+    }
+
+    /**
+     * Visit all rhombii for the given bounding box, splitting it into regions that are generated
+     * concurrently.
+     *
+     * <p>This visits the same rhombii as {@link #visitRhombii(BoundingBox, RhombusVisitor)}, but
+     * in a different order. The box is split into a grid of regions, each of which is generated
+     * separately on the given executor, like the boxes of a normal grid. The visitor is only
+     * called from the calling thread. It's called with the rhombii of each region in turn, in
+     * order of increasing x and then y, so the order doesn't depend on which regions finish
+     * first.
+     *
+     * <p>Each region hands its rhombii to the calling thread in batches as it generates them,
+     * and waits while REGION_QUEUE_SIZE of its batches are waiting to be visited. So only a few
+     * batches per region are held at once, rather than all the rhombii of the box. If the
+     * executor hasn't started a region by the time it is to be visited, the calling thread
+     * generates it instead.
+     *
+     * <p>The executor must not be running the calling thread, since it waits for the regions.
+     *
+     * @param executor The executor to generate the regions on.
+     * @param regionCount The maximum number of regions to split the box into. Each region is at
+     *                    least MIN_REGION_SIZE wide and high, so smaller boxes are split into
+     *                    fewer regions.
+     * @param engine How to generate each region.
+     * @param stats The stats to add the work done for this box to. If null, nothing is counted.
+     */
+    public void visitRhombii(BoundingBox boundingBox, RhombusVisitor visitor, Executor executor,
+                             int regionCount, Engine engine, @Nullable GenerationStats stats) {
+        int[] regionLayout = getRegionLayout(boundingBox, regionCount);
+        if (regionLayout[0] * regionLayout[1] == 1) {
+            if (engine == Engine.ENUMERATION) {
+                enumerateRhombii(boundingBox, visitor, stats);
+            } else {
+                visitRhombii(boundingBox, visitor, null, stats);
+            }
+            return;
+        }
+
+        visitRegions(boundingBox, new RhombusBatch(), batch -> batch.visitEach(visitor), executor,
+                regionLayout[0], regionLayout[1], engine, stats);
+    }
+
+    /**
+     * Visit all rhombii for the given bounding box in chunks, splitting it into regions that are
+     * generated concurrently.
+     *
+     * <p>The batches generated by the regions are passed to the visitor as they are, so the
+     * visitor isn't always called with the given batch.
+     *
+     * @see #visitRhombii(BoundingBox, RhombusBatch, RhombusBatchVisitor)
+     * @see #visitRhombii(BoundingBox, RhombusVisitor, Executor, int, Engine, GenerationStats)
+     */
+    public void visitRhombii(BoundingBox boundingBox, RhombusBatch batch,
+                             RhombusBatchVisitor visitor, Executor executor, int regionCount,
+                             Engine engine) {
+        int[] regionLayout = getRegionLayout(boundingBox, regionCount);
+        if (regionLayout[0] * regionLayout[1] == 1) {
+            if (engine == Engine.ENUMERATION) {
+                enumerateRhombii(boundingBox, batch, visitor);
+            } else {
+                visitRhombii(boundingBox, batch, visitor);
+            }
+            return;
+        }
+
+        batch.clear();
+        visitRegions(boundingBox, batch, visitor, executor, regionLayout[0], regionLayout[1],
+                engine, null);
+    }
+
+    /**
+     * @return The number of columns and rows of regions to split the given box into, for
+     * {@link #visitRhombii(BoundingBox, RhombusVisitor, Executor, int, Engine, GenerationStats)}.
+     */
+    private static int[] getRegionLayout(BoundingBox boundingBox, int regionCount) {
+        if (regionCount < 1) {
+            throw new IllegalArgumentException("regionCount must be at least 1");
+        }
+
+        double width = boundingBox.extent.x - boundingBox.origin.x;
+        double height = boundingBox.extent.y - boundingBox.origin.y;
+
+        // Split into roughly square regions
+        int columns = Math.max(1, Math.min((int)Math.round(Math.sqrt(regionCount * width / height)),
+                (int)(width / MIN_REGION_SIZE)));
+        int rows = Math.max(1, Math.min(regionCount / columns, (int)(height / MIN_REGION_SIZE)));
+        return new int[] {columns, rows};
+    }
+
+    private void visitRegions(BoundingBox boundingBox, RhombusBatch batch,
+                              RhombusBatchVisitor visitor, Executor executor, int columns, int rows,
+                              Engine engine, @Nullable GenerationStats stats) {
+        double width = boundingBox.extent.x - boundingBox.origin.x;
+        double height = boundingBox.extent.y - boundingBox.origin.y;
+        Vector2D regionSize = new Vector2D(width / columns, height / rows);
+
+        List<GeneratedRegion> regions = new ArrayList<>();
+        try {
+            for (int column = 0; column < columns; column++) {
+                for (int row = 0; row < rows; row++) {
+                    GeneratedRegion region = new GeneratedRegion(
+                            new BoundingBox(boundingBox.origin, regionSize, column, row),
+                            new RegionOwnership(boundingBox, regionSize, columns, rows), engine,
+                            stats != null ? new GenerationStats() : null);
+                    regions.add(region);
+                    executor.execute(region.task);
+                }
+            }
+
+            for (GeneratedRegion region: regions) {
+                region.visit(batch, visitor);
+                if (stats != null) {
+                    stats.add(region.stats);
+                }
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(ex);
+        } catch (ExecutionException ex) {
+            Throwable cause = ex.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException)cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error)cause;
+            }
+            throw new RuntimeException(cause);
+        } finally {
+            for (GeneratedRegion region: regions) {
+                region.task.cancel(true);
+            }
+        }
+    }
+
+    /**
+     * Visit all rhombii for the given bounding box, by enumerating the strip intersections near
+     * it directly, rather than walking strips out from an initial rhombus.
+     *
+     * <p>This visits the same rhombii as {@link #visitRhombii(BoundingBox, RhombusVisitor)}, but
+     * in a different order. For each of the 10 pairs of strip families, every intersection of
+     * their strips in the area of pentagrid space that maps to the box is turned into a rhombus
+     * from its lattice coordinates, and visited if it belongs to the box. No sets of rhombii or
+     * strips are kept, so the memory used doesn't depend on the size of the box, and the result
+     * doesn't depend on finding an initial rhombus.
+     *
+     * @param stats The stats to add the work done for this box to. If null, nothing is counted.
+     */
+    public void enumerateRhombii(BoundingBox boundingBox, RhombusVisitor visitor,
+                                 @Nullable GenerationStats stats) {
+        enumerateRhombii(boundingBox,
+                new GridOwnership(boundingBox.gridOrigin, boundingBox.gridSize), visitor, stats);
+    }
+
+    private void enumerateRhombii(BoundingBox boundingBox, GridOwnership ownership,
+                                  RhombusVisitor visitor, @Nullable GenerationStats stats) {
+        enumerateRhombii(boundingBox, ownership, new RhombusBatch(),
+                batch -> batch.visitEach(visitor), stats);
+    }
+
+    /**
+     * Visit all rhombii for the given bounding box in chunks, by enumerating the strip
+     * intersections near it directly.
+     *
+     * @see #visitRhombii(BoundingBox, RhombusBatch, RhombusBatchVisitor)
+     * @see #enumerateRhombii(BoundingBox, RhombusVisitor, GenerationStats)
+     */
+    public void enumerateRhombii(BoundingBox boundingBox, RhombusBatch batch,
+                                 RhombusBatchVisitor visitor) {
+        enumerateRhombii(boundingBox, batch, visitor, null);
+    }
+
+    /**
+     * Visit all rhombii for the given bounding box in chunks, by enumerating the strip
+     * intersections near it directly, and counting the work done.
+     *
+     * <p>The rhombii are written straight into the batch, so no Rhombus objects are created.
+     *
+     * @param stats The stats to add the work done for this box to. If null, nothing is counted.
+     * @see #enumerateRhombii(BoundingBox, RhombusBatch, RhombusBatchVisitor)
+     */
+    public void enumerateRhombii(BoundingBox boundingBox, RhombusBatch batch,
+                                 RhombusBatchVisitor visitor, @Nullable GenerationStats stats) {
+        enumerateRhombii(boundingBox,
+                new GridOwnership(boundingBox.gridOrigin, boundingBox.gridSize), batch, visitor,
+                stats);
+    }
+
+    private void enumerateRhombii(BoundingBox boundingBox, GridOwnership ownership,
+                                  RhombusBatch batch, RhombusBatchVisitor visitor,
+                                  @Nullable GenerationStats stats) {
+        batch.clear();
+        int[] latticeCoords = batch.latticeCoords;
+        double[] vertexCoords = batch.vertexCoords;
+
+        // The area of pentagrid space to enumerate. See getContainingRhombus() for the mapping
+        // between the 2 spaces.
+        double minX = (boundingBox.origin.x - ENUMERATION_MARGIN + offsetSumX) / 2.5;
+        double minY = (boundingBox.origin.y - ENUMERATION_MARGIN + offsetSumY) / 2.5;
+        double maxX = (boundingBox.extent.x + ENUMERATION_MARGIN + offsetSumX) / 2.5;
+        double maxY = (boundingBox.extent.y + ENUMERATION_MARGIN + offsetSumY) / 2.5;
+
+        for (int family1 = 0; family1 < 5; family1++) {
+            double n1X = latticeVectorsX[family1];
+            double n1Y = latticeVectorsY[family1];
+            double offset1 = stripFamilies[family1].offset;
+
+            // The position of a point across the strips of a family is p . n - offset, so the
+            // strips crossing the area are between the lowest and highest corner.
+            double minPosition1 = Math.min(minX * n1X, maxX * n1X) +
+                    Math.min(minY * n1Y, maxY * n1Y) - offset1;
+            double maxPosition1 = Math.max(minX * n1X, maxX * n1X) +
+                    Math.max(minY * n1Y, maxY * n1Y) - offset1;
+
+            for (int family2 = family1 + 1; family2 < 5; family2++) {
+                double n2X = latticeVectorsX[family2];
+                double n2Y = latticeVectorsY[family2];
+                double offset2 = stripFamilies[family2].offset;
+
+                for (int multiple1 = (int)Math.ceil(minPosition1);
+                     multiple1 <= maxPosition1; multiple1++) {
+                    if (stats != null) {
+                        stats.stripWalked();
+                    }
+
+                    // The strip is the line (offset1 + multiple1) * n1 + t * d1, with d1
+                    // perpendicular to n1. Clip it to the area, and find the range of strips of
+                    // family2 that cross it there.
+                    double baseX = (offset1 + multiple1) * n1X;
+                    double baseY = (offset1 + multiple1) * n1Y;
+                    double d1X = -n1Y;
+                    double d1Y = n1X;
+
+                    double minT = Double.NEGATIVE_INFINITY;
+                    double maxT = Double.POSITIVE_INFINITY;
+                    if (d1X != 0) {
+                        double t1 = (minX - baseX) / d1X;
+                        double t2 = (maxX - baseX) / d1X;
+                        minT = Math.max(minT, Math.min(t1, t2));
+                        maxT = Math.min(maxT, Math.max(t1, t2));
+                    }
+                    if (d1Y != 0) {
+                        double t1 = (minY - baseY) / d1Y;
+                        double t2 = (maxY - baseY) / d1Y;
+                        minT = Math.max(minT, Math.min(t1, t2));
+                        maxT = Math.min(maxT, Math.max(t1, t2));
+                    }
+                    if (!(minT <= maxT)) {
+                        continue;
+                    }
+
+                    double position2 = baseX * n2X + baseY * n2Y - offset2;
+                    double step2 = d1X * n2X + d1Y * n2Y;
+                    double position2A = position2 + minT * step2;
+                    double position2B = position2 + maxT * step2;
+
+                    for (int multiple2 = (int)Math.ceil(Math.min(position2A, position2B));
+                         multiple2 <= Math.max(position2A, position2B); multiple2++) {
+                        // The rhombus is written into the next free slot of the batch, and only
+                        // added to it if it's kept.
+                        int index = batch.size();
+                        getIntersectionLatticeCoords(family1, multiple1, family2, multiple2,
+                                latticeCoords, index * 5);
+                        Rhombus.calculateVertexCoordinates(family1, family2, latticeCoords,
+                                index * 5, vertexCoords, index * 8);
+
+                        boolean keep = ownership.isOwnedBy(vertexCoords, index * 8,
+                                boundingBox.xMultiple, boundingBox.yMultiple);
+                        if (stats != null) {
+                            stats.walkStep(vertexCoords, index * 8, boundingBox, keep);
+                        }
+                        if (keep) {
+                            if (stats != null) {
+                                stats.rhombusVisited();
+                            }
+                            batch.addInPlace(this, family1, multiple1, family2, multiple2);
+                            if (batch.isFull()) {
+                                visitor.visitRhombii(batch);
+                                batch.clear();
+                            }
+                        }
+                    }
+                }
+            }
+        }
+
+        if (!batch.isEmpty()) {
+            visitor.visitRhombii(batch);
+            batch.clear();
+        }
+    }
+
+    /**
+     * Visit all rhombii for the given bounding box, sweeping across it in horizontal bands.
+     *
+     * <p>This visits the same rhombii as {@link #visitRhombii(BoundingBox, RhombusVisitor)}, but
+     * in a different order. The box is visited one band at a time, from the bottom up, and only
+     * the rhombii and strips around the current band are held in memory. So the memory used
+     * grows with the width of the box rather than its area, which allows very large boxes to be
+     * generated.
+     *
+     * @param bandHeight The maximum height of each band.
+     */
+    public void sweepRhombii(BoundingBox boundingBox, double bandHeight, RhombusVisitor visitor) {
+        sweepRhombii(boundingBox, bandHeight, visitor, null);
+    }
+
+    /**
+     * Visit all rhombii for the given bounding box, sweeping across it in horizontal bands, and
+     * counting the work done.
+     *
+     * @param stats The stats to add the work done for this box to. If null, nothing is counted.
+     * @see #sweepRhombii(BoundingBox, double, RhombusVisitor)
+     */
+    public void sweepRhombii(BoundingBox boundingBox, double bandHeight, RhombusVisitor visitor,
+                             @Nullable GenerationStats stats) {
+        if (!(bandHeight > 0)) {
+            throw new IllegalArgumentException("bandHeight must be positive");
+        }
+
+        double height = boundingBox.extent.y - boundingBox.origin.y;
+        int bandCount = Math.max(1, (int)Math.ceil(height / bandHeight));
+        Vector2D bandSize = new Vector2D(boundingBox.extent.x - boundingBox.origin.x,
+                height / bandCount);
+
+        BandOwnership ownership = new BandOwnership(boundingBox, bandSize.getY(), bandCount);
+
+        // Each band picks up the walks and rhombii past the top of the previous one, so strips
+        // are only walked across each band once.
+        BoxHandoff handoff = new BoxHandoff();
+        for (int band = 0; band < bandCount; band++) {
+            BoundingBox bandBox = new BoundingBox(boundingBox.origin, bandSize, 0, band);
+            visitRhombii(bandBox, ownership, visitor, handoff, stats);
+        }
+    }
+
+    /**
+     * Visit all rhombii for the given bounding box in chunks, sweeping across it in horizontal
+     * bands.
+     *
+     * @see #visitRhombii(BoundingBox, RhombusBatch, RhombusBatchVisitor)
+     * @see #sweepRhombii(BoundingBox, double, RhombusVisitor)
+     */
+    public void sweepRhombii(BoundingBox boundingBox, double bandHeight, RhombusBatch batch,
+                             RhombusBatchVisitor visitor) {
+        batch.clear();
+        sweepRhombii(boundingBox, bandHeight, rhombus -> {
+            batch.add(rhombus);
+            if (batch.isFull()) {
+                visitor.visitRhombii(batch);
+                batch.clear();
+            }
+        });
+
+        if (!batch.isEmpty()) {
+            visitor.visitRhombii(batch);
+            batch.clear();
+        }
+    }
 
+    /**
+     * Finds a rhombus in the given bounding box to start visiting from.
+     *
+     * @return The rhombus, or null if none of the places that were checked has a rhombus
+     * belonging to the box.
+     */
+    @Nullable
+    private Rhombus findInitialRhombus(BoundingBox boundingBox, GridOwnership ownership,
+                                       @Nullable BoxHandoff handoff) {
         StripFamily initialFamily = getStripFamily(0);
 
         // every unit in pentagrid space is ~2.5 units in the penrose space
@@ -113,97 +868,242 @@ public class PenroseTiling {
 
         Strip strip = initialFamily.getStrip(approximateMultiple);
 
+        // This rough guess is tried first, since the order the rhombii are visited in depends on
+        // the initial rhombus.
         Rhombus initialRhombus = strip.getRhombus(approximateTarget);
-        if (!keepRhombus(boundingBox, initialRhombus)) {
-            throw new RuntimeException("Initial rhombus is outside the bounding box. Maybe the "
-                    + "bounding boxes are too small?");
+        if (keepRhombus(ownership, handoff, boundingBox, initialRhombus)) {
+            return initialRhombus;
         }
 
-        visitRhombus(processedRhombii, pendingRhombii, visitor, initialRhombus);
-        processStrip(boundingBox, existingStrips, pendingRhombii, processedRhombii, visitor,
-                initialRhombus.strip1, initialRhombus.strip2);
-        processStrip(boundingBox, existingStrips, pendingRhombii, processedRhombii, visitor,
-                initialRhombus.strip2, initialRhombus.strip1);
-
-        while (!pendingRhombii.isEmpty()) {
-            Rhombus rhombus = pendingRhombii.iterator().next();
-            pendingRhombii.remove(rhombus);
-            processStrip(boundingBox, existingStrips, pendingRhombii, processedRhombii, visitor,
-                    rhombus.strip2, rhombus.strip1);
+        // Otherwise, try the rhombii at the middle of the box, and then at the middle of each
+        // quarter of the box.
+        double width = boundingBox.extent.x - boundingBox.origin.x;
+        double height = boundingBox.extent.y - boundingBox.origin.y;
+        for (double[] position: INITIAL_POSITIONS) {
+            initialRhombus = getContainingRhombus(boundingBox.origin.x + width * position[0],
+                    boundingBox.origin.y + height * position[1]);
+            if (keepRhombus(ownership, handoff, boundingBox, initialRhombus)) {
+                return initialRhombus;
+            }
         }
+        return null;
     }
 
-    private static void visitRhombus(Set<Rhombus> processedRhombii, Set<Rhombus> pendingRhombii,
+    private static void visitRhombus(@Nullable GenerationStats stats,
+                                     Set<Rhombus> processedRhombii, Set<Rhombus> pendingRhombii,
                                      RhombusVisitor visitor, Rhombus rhombus) {
         if (!processedRhombii.contains(rhombus)) {
             processedRhombii.add(rhombus);
+            if (stats != null) {
+                stats.rhombusVisited();
+            }
             visitor.visitRhombus(rhombus);
         }
 
         pendingRhombii.add(rhombus);
     }
 
-    private static boolean keepRhombus(BoundingBox boundingBox, Rhombus rhombus) {
-        return rhombus.getContainingBoundingBox(boundingBox.gridOrigin, boundingBox.gridSize)
-                .equals(boundingBox);
+    private static boolean keepRhombus(GridOwnership ownership, @Nullable BoxHandoff handoff,
+                                       BoundingBox boundingBox, Rhombus rhombus) {
+        if (handoff == null) {
+            return ownership.isOwnedBy(rhombus, boundingBox.xMultiple, boundingBox.yMultiple);
+        }
+
+        ownership.findOwner(rhombus);
+        int ownerX = ownership.getOwnerX();
+        int ownerY = ownership.getOwnerY();
+        if (ownerX == boundingBox.xMultiple && ownerY == boundingBox.yMultiple) {
+            return true;
+        }
+        handoff.handOver(boundingBox, ownership, rhombus, ownerX, ownerY);
+        return false;
     }
 
-    private static void processStrip(BoundingBox boundingBox, Set<Strip> existingStrips,
-                                     Set<Rhombus> pendingRhombii, Set<Rhombus> processedRhombii,
-                                     RhombusVisitor visitor, Strip strip1, Strip strip2) {
-        if (existingStrips.contains(strip1)) {
+    private static void processStrip(BoundingBox boundingBox, GridOwnership ownership,
+                                     @Nullable BoxHandoff handoff, @Nullable GenerationStats stats,
+                                     LongHashSet existingStrips, Set<Rhombus> pendingRhombii,
+                                     Set<Rhombus> processedRhombii, RhombusVisitor visitor,
+                                     Strip strip1, Strip strip2) {
+        if (!existingStrips.add(strip1.getKey())) {
             return;
         }
-        existingStrips.add(strip1);
 
+        walkStrip(boundingBox, ownership, handoff, stats, pendingRhombii, processedRhombii,
+                visitor, strip1, strip2, true);
+        walkStrip(boundingBox, ownership, handoff, stats, pendingRhombii, processedRhombii,
+                visitor, strip1, strip2, false);
+    }
+
+    /**
+     * Walks along strip1 in one direction, starting just past its intersection with strip2,
+     * until the walk leaves the area around the bounding box.
+     */
+    private static void walkStrip(BoundingBox boundingBox, GridOwnership ownership,
+                                  @Nullable BoxHandoff handoff, @Nullable GenerationStats stats,
+                                  Set<Rhombus> pendingRhombii, Set<Rhombus> processedRhombii,
+                                  RhombusVisitor visitor, Strip strip1, Strip strip2,
+                                  boolean forward) {
+        if (stats != null) {
+            stats.stripWalked();
+        }
         boolean first = true;
-        for (Rhombus next: strip1.getRhombii(strip2, true)) {
+        for (Rhombus next: strip1.getRhombii(strip2, forward)) {
             if (first) {
                 first = false;
                 continue;
             }
-            if (keepRhombus(boundingBox, next)) {
-                visitRhombus(processedRhombii, pendingRhombii, visitor, next);
-            } else {
-                processedRhombii.add(next);
-            }
-            if (!continueProcessingStrip(next, boundingBox)) {
-                break;
-            }
-        }
 
-        first = true;
-        for (Rhombus next: strip1.getRhombii(strip2, false)) {
-            if (first) {
-                first = false;
-                continue;
+            boolean keep = keepRhombus(ownership, handoff, boundingBox, next);
+            if (stats != null) {
+                stats.walkStep(next, boundingBox, keep);
             }
-
-            if (keepRhombus(boundingBox, next)) {
-                visitRhombus(processedRhombii, pendingRhombii, visitor, next);
+            if (keep) {
+                visitRhombus(stats, processedRhombii, pendingRhombii, visitor, next);
             } else {
                 processedRhombii.add(next);
+                if (ownership.isFollowedBy(next, boundingBox.xMultiple,
+                        boundingBox.yMultiple)) {
+                    pendingRhombii.add(next);
+                }
             }
             if (!continueProcessingStrip(next, boundingBox)) {
+                if (handoff != null) {
+                    handoff.handOverWalk(boundingBox, next, forward);
+                }
                 break;
             }
         }
     }
 
     private static boolean continueProcessingStrip(Rhombus rhombus, BoundingBox boundingBox) {
-        // +/- 5, in order to catch the case of a strip parallel with an edge that goes in and out
-        // of the bounding box 5 should enough for approximately 2 strips width
-        for (Coordinate vertex : rhombus.getVertices()) {
-            if (vertex.x < (boundingBox.origin.x - 5) || vertex.x > (boundingBox.extent.x + 5)) {
+        double[] vertexCoordinates = rhombus.getVertexCoordinates();
+        for (int i = 0; i < 8; i += 2) {
+            double x = vertexCoordinates[i];
+            double y = vertexCoordinates[i + 1];
+            if (x < (boundingBox.origin.x - STRIP_OVERSCAN) ||
+                    x > (boundingBox.extent.x + STRIP_OVERSCAN)) {
                 return false;
             }
-            if (vertex.y < (boundingBox.origin.y - 5) || vertex.y > (boundingBox.extent.y + 5)) {
+            if (y < (boundingBox.origin.y - STRIP_OVERSCAN) ||
+                    y > (boundingBox.extent.y + STRIP_OVERSCAN)) {
                 return false;
             }
         }
         return true;
     }
 
+    /**
+     * A region of a box that is generated concurrently, and the batches of its rhombii that are
+     * waiting to be visited.
+     */
+    private class GeneratedRegion {
+        private final BoundingBox regionBox;
+        private final RegionOwnership ownership;
+        private final Engine engine;
+        @Nullable public final GenerationStats stats;
+
+        // Set by whichever of the executor and the visiting thread gets to the region first. Each
+        // region has its own ownership, since the ownership tests use scratch buffers.
+        private final AtomicBoolean started = new AtomicBoolean();
+        private final BlockingQueue<RhombusBatch> batches =
+                new ArrayBlockingQueue<>(REGION_QUEUE_SIZE);
+        public final FutureTask<Void> task = new FutureTask<>(this::generateQueued);
+
+        public GeneratedRegion(BoundingBox regionBox, RegionOwnership ownership, Engine engine,
+                               @Nullable GenerationStats stats) {
+            this.regionBox = regionBox;
+            this.ownership = ownership;
+            this.engine = engine;
+            this.stats = stats;
+        }
+
+        /**
+         * Visits the rhombii of the region, waiting for them to be generated by the executor, or
+         * generating them on this thread if the executor hasn't started on the region yet.
+         */
+        public void visit(RhombusBatch batch, RhombusBatchVisitor visitor)
+                throws InterruptedException, ExecutionException {
+            if (started.compareAndSet(false, true)) {
+                generate(batch, visitor);
+                return;
+            }
+
+            for (RhombusBatch queued = batches.take(); queued != END_OF_REGION;
+                 queued = batches.take()) {
+                visitor.visitRhombii(queued);
+            }
+            task.get();
+        }
+
+        private Void generateQueued() throws InterruptedException {
+            if (!started.compareAndSet(false, true)) {
+                return null;
+            }
+
+            try {
+                generate(new RhombusBatch(), batch -> {
+                    // The engine reuses its batch, so each chunk is queued in a copy
+                    RhombusBatch copy = new RhombusBatch(batch.size());
+                    for (int i = 0; i < batch.size(); i++) {
+                        copy.add(batch, i);
+                    }
+                    try {
+                        batches.put(copy);
+                    } catch (InterruptedException ex) {
+                        Thread.currentThread().interrupt();
+                        throw new RuntimeException(ex);
+                    }
+                });
+                batches.put(END_OF_REGION);
+            } catch (Throwable ex) {
+                // The visiting thread only needs the failure now, but it may be waiting for a
+                // batch. This is the only thread adding batches, so there's room after clearing.
+                batches.clear();
+                batches.offer(END_OF_REGION);
+                throw ex;
+            }
+            return null;
+        }
+
+        private void generate(RhombusBatch batch, RhombusBatchVisitor visitor) {
+            if (engine == Engine.ENUMERATION) {
+                enumerateRhombii(regionBox, ownership, batch, visitor, stats);
+                return;
+            }
+
+            batch.clear();
+            visitRhombii(regionBox, ownership, rhombus -> {
+                batch.add(rhombus);
+                if (batch.isFull()) {
+                    visitor.visitRhombii(batch);
+                    batch.clear();
+                }
+            }, null, stats);
+
+            if (!batch.isEmpty()) {
+                visitor.visitRhombii(batch);
+                batch.clear();
+            }
+        }
+    }
+
+    /**
+     * The ways of generating the rhombii of a bounding box.
+     */
+    public enum Engine {
+        /**
+         * Walk the strips out from an initial rhombus, following the rhombii that overlap the
+         * box. See {@link #visitRhombii(BoundingBox, RhombusVisitor)}.
+         */
+        FLOOD_FILL,
+
+        /**
+         * Enumerate the strip intersections near the box directly. See
+         * {@link #enumerateRhombii(BoundingBox, RhombusVisitor, GenerationStats)}.
+         */
+        ENUMERATION
+    }
+
     /**
      * A callback for visiting a rhombus when generating a tiling.
      */
@@ -214,4 +1114,13 @@ public class PenroseTiling {
          */
         void visitRhombus(Rhombus rhombus);
     }
+
+    public interface RhombusBatchVisitor {
+        /**
+         * When generating a tiling, this method will be called with chunks of the rhombii in the
+         * tiling.
+         * @param batch The rhombii to visit. This is only valid until this method returns.
+         */
+        void visitRhombii(RhombusBatch batch);
+    }
 }
@@ -0,0 +1,117 @@
+/*
+ * Copyright 2019 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jf.ptgen.penrose;
+
+import org.locationtech.jts.geom.Coordinate;
+
+/**
+ * An exact representation of a point in Z[phi], like the vertices of a tiling. Angles are in
+ * degrees below.
+ *
+ * <p>The x coordinate is (xRational + xPhi * phi) / 2, and the y coordinate is
+ * sin(72) * (yRational + yPhi * phi). Every integer combination of the 5 unit vectors of the
+ * pentagrid can be written this way, so the vertices can be compared and hashed exactly, with a
+ * few integer operations. They are only converted to doubles for output.
+ */
+public final class PhiCoordinate {
+    public static final double PHI = (1 + Math.sqrt(5)) / 2;
+    private static final double SIN_72 = Math.sin(Math.PI * 2 / 5);
+
+    public final int xRational;
+    public final int xPhi;
+    public final int yRational;
+    public final int yPhi;
+
+    public PhiCoordinate(int xRational, int xPhi, int yRational, int yPhi) {
+        this.xRational = xRational;
+        this.xPhi = xPhi;
+        this.yRational = yRational;
+        this.yPhi = yPhi;
+    }
+
+    /**
+     * Gets the point at the given lattice coordinates, i.e. the sum of the unit vectors of each
+     * family, multiplied by the lattice coordinate for that family.
+     *
+     * @param latticeCoords An array of 5 lattice coordinates.
+     */
+    public static PhiCoordinate fromLatticeCoords(int[] latticeCoords) {
+        // cos(72) = (phi - 1) / 2 and cos(144) = -phi / 2, while sin(144) = sin(72) * (phi - 1).
+        // The unit vector of family i is (cos(72 * i), -sin(72 * i)).
+        int k0 = latticeCoords[0];
+        int k1 = latticeCoords[1];
+        int k2 = latticeCoords[2];
+        int k3 = latticeCoords[3];
+        int k4 = latticeCoords[4];
+        return new PhiCoordinate(
+                2 * k0 - k1 - k4,
+                k1 + k4 - k2 - k3,
+                k2 - k3 - k1 + k4,
+                k3 - k2);
+    }
+
+    public double getX() {
+        return getX(xRational, xPhi);
+    }
+
+    public double getY() {
+        return getY(yRational, yPhi);
+    }
+
+    /**
+     * @return The x coordinate of a point with the given rational and phi parts, without creating
+     * a PhiCoordinate.
+     */
+    static double getX(int xRational, int xPhi) {
+        return (xRational + xPhi * PHI) / 2;
+    }
+
+    /**
+     * @return The y coordinate of a point with the given rational and phi parts, without creating
+     * a PhiCoordinate.
+     */
+    static double getY(int yRational, int yPhi) {
+        return SIN_72 * (yRational + yPhi * PHI);
+    }
+
+    public Coordinate toCoordinate() {
+        return new Coordinate(getX(), getY());
+    }
+
+    @Override public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+
+        PhiCoordinate that = (PhiCoordinate)o;
+
+        return xRational == that.xRational && xPhi == that.xPhi &&
+                yRational == that.yRational && yPhi == that.yPhi;
+    }
+
+    @Override public int hashCode() {
+        int result = xRational;
+        result = 31 * result + xPhi;
+        result = 31 * result + yRational;
+        result = 31 * result + yPhi;
+        return result;
+    }
+
+    @Override public String toString() {
+        return "PhiCoordinate((" + xRational + " + " + xPhi + " * phi) / 2, sin(72) * (" +
+                yRational + " + " + yPhi + " * phi))";
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright 2019 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jf.ptgen.penrose;
+
+import org.locationtech.jts.math.Vector2D;
+
+/**
+ * Determines which region of a single box a rhombus belongs to, when the box is split into a
+ * grid of regions that are visited separately.
+ *
+ * <p>Like the bands of {@link BandOwnership}, the regions are treated as a grid of their own. A
+ * rhombus belongs to the (column, row) box of that grid if it belongs to the split box in the
+ * original grid, and its center is in that region. Rhombii with a center outside of the split
+ * box belong to the nearest region. Rhombii that belong to other boxes in the original grid
+ * don't belong to any region.
+ */
+class RegionOwnership extends GridOwnership {
+    // The multiples reported for rhombii that don't belong to any region
+    private static final int NO_REGION = -1;
+
+    // How far the regions along the sides of the box are extended past them, when deciding which
+    // rhombii to follow. Every point of a rhombus is less than 1 from its center, so this reaches
+    // the rhombii that belong to the box with a center outside of it.
+    private static final double EDGE_MARGIN = 1;
+
+    private final int boxX;
+    private final int boxY;
+    private final double regionOriginX;
+    private final double regionOriginY;
+    private final double regionWidth;
+    private final double regionHeight;
+    private final int columns;
+    private final int rows;
+
+    RegionOwnership(BoundingBox boundingBox, Vector2D regionSize, int columns, int rows) {
+        super(boundingBox.gridOrigin, boundingBox.gridSize);
+        this.boxX = boundingBox.xMultiple;
+        this.boxY = boundingBox.yMultiple;
+        this.regionOriginX = boundingBox.origin.x;
+        this.regionOriginY = boundingBox.origin.y;
+        this.regionWidth = regionSize.getX();
+        this.regionHeight = regionSize.getY();
+        this.columns = columns;
+        this.rows = rows;
+    }
+
+    @Override void findOwner(double[] vertices, int offset) {
+        super.findOwner(vertices, offset);
+        if (getOwnerX() != boxX || getOwnerY() != boxY) {
+            setOwner(NO_REGION, NO_REGION);
+            return;
+        }
+
+        // The center of a rhombus is halfway between opposite vertices
+        double centerX = (vertices[offset] + vertices[offset + 4]) / 2;
+        double centerY = (vertices[offset + 1] + vertices[offset + 5]) / 2;
+        setOwner(getCell(centerX, regionOriginX, regionWidth, columns),
+                getCell(centerY, regionOriginY, regionHeight, rows));
+    }
+
+    /**
+     * The rhombii that overlap a region are followed, like the boxes of a normal grid. The
+     * regions along the sides of the box are extended past them, since the rhombii that belong
+     * to them may be outside of the box.
+     */
+    @Override boolean isFollowedBy(Rhombus rhombus, int xMultiple, int yMultiple) {
+        double left = regionOriginX + regionWidth * xMultiple;
+        double bottom = regionOriginY + regionHeight * yMultiple;
+        double right = left + regionWidth;
+        double top = bottom + regionHeight;
+
+        if (xMultiple == 0) {
+            left -= EDGE_MARGIN;
+        }
+        if (xMultiple == columns - 1) {
+            right += EDGE_MARGIN;
+        }
+        if (yMultiple == 0) {
+            bottom -= EDGE_MARGIN;
+        }
+        if (yMultiple == rows - 1) {
+            top += EDGE_MARGIN;
+        }
+        return overlaps(rhombus, left, bottom, right, top);
+    }
+
+    private static int getCell(double position, double origin, double size, int count) {
+        int cell = (int)Math.floor((position - origin) / size);
+        return Math.max(0, Math.min(count - 1, cell));
+    }
+}
@@ -20,9 +20,6 @@ import org.locationtech.jts.geom.Coordinate;
 import org.locationtech.jts.geom.Polygon;
 import org.locationtech.jts.math.Vector2D;
 
-import java.util.HashSet;
-import java.util.Set;
-
 /**
  * Represents a single rhombus at the intersection of 2 strips in a tiling.
  */
@@ -36,21 +33,36 @@ public class Rhombus {
 
     public final int[] latticeCoords;
 
-    public final Polygon polygon;
+    // The geometry is computed lazily, since many rhombii are only generated in order to be
+    // compared or hashed. These are only ever set once, to values that are fully computed
+    // beforehand.
+    private volatile double[] vertexCoordinates;
+    private volatile Polygon polygon;
 
     public Rhombus(Strip strip1, Strip strip2, int[] latticeCoords) {
         this.strip1 = strip1;
         this.strip2 = strip2;
         this.latticeCoords = latticeCoords;
+    }
 
-        Coordinate[] coordinates = new Coordinate[5];
-        System.arraycopy(getVertices(), 0, coordinates, 0, 4);
-        coordinates[4] = coordinates[0];
-        polygon = PenroseTiling.GEOMETRY_FACTORY.createPolygon(coordinates);
+    /**
+     * Creates a rhombus whose vertex coordinates have already been computed, e.g. by
+     * {@link #calculateVertexCoordinates(int, int, int[], int, double[], int)}.
+     */
+    Rhombus(Strip strip1, Strip strip2, int[] latticeCoords, double[] vertexCoordinates) {
+        this(strip1, strip2, latticeCoords);
+        this.vertexCoordinates = vertexCoordinates;
     }
 
     public int getRhombusType() {
-        switch (Math.abs(strip1.stripFamily.angle - strip2.stripFamily.angle)) {
+        return getRhombusType(strip1.stripFamily.angle, strip2.stripFamily.angle);
+    }
+
+    /**
+     * @return The type of the rhombus at the intersection of strips from the given families.
+     */
+    static int getRhombusType(int family1, int family2) {
+        switch (Math.abs(family1 - family2)) {
             case 1:
             case 4:
                 return THICK;
@@ -62,14 +74,30 @@ public class Rhombus {
         }
     }
 
-    // This order produces the list of vertices in order around the rhombus
-    private static int[][] offsets = new int[][]{
+    // The offsets of the lattice coordinates of each vertex, for the families of strip1 and
+    // strip2. This order produces the list of vertices in order around the rhombus
+    static final int[][] offsets = new int[][]{
             {0, 0},
             {0, -1},
             {-1, -1},
             {-1, 0}
     };
 
+    // The exact position of the unit vector of each family, as the xRational, xPhi, yRational
+    // and yPhi parts of a PhiCoordinate. A vertex is the sum of these, multiplied by its
+    // lattice coordinates.
+    private static final int[][] UNIT_VECTORS = new int[5][];
+    static {
+        for (int family = 0; family < 5; family++) {
+            int[] unitLatticeCoords = new int[5];
+            unitLatticeCoords[family] = 1;
+            PhiCoordinate unitVector = PhiCoordinate.fromLatticeCoords(unitLatticeCoords);
+            UNIT_VECTORS[family] = new int[] {
+                    unitVector.xRational, unitVector.xPhi, unitVector.yRational, unitVector.yPhi
+            };
+        }
+    }
+
     /**
      * Given a particular grid configuration, gets the bounding box in that grid that contains
      * this rhombus.
@@ -79,71 +107,140 @@ public class Rhombus {
      * bounding boxes with a lower y win.
      */
     public BoundingBox getContainingBoundingBox(Coordinate gridStart, Vector2D gridSize) {
-        Set<Integer> possibleXs = new HashSet<>();
-        Set<Integer> possibleYs = new HashSet<>();
-
-        for (Coordinate vertex : getVertices()) {
-            Coordinate normalized =
-                    new Vector2D(vertex).subtract(new Vector2D(gridStart)).toCoordinate();
-            possibleXs.add((int)Math.floor(normalized.x / gridSize.getX()));
-            possibleYs.add((int)Math.floor(normalized.y / gridSize.getY()));
-        }
+        GridOwnership ownership = new GridOwnership(gridStart, gridSize);
+        ownership.findOwner(this);
+        return new BoundingBox(gridStart, gridSize, ownership.getOwnerX(), ownership.getOwnerY());
+    }
 
-        BoundingBox maxBoundingBox = null;
-        double maxArea = 0;
-        for (Integer possibleX : possibleXs) {
-            for (Integer possibleY : possibleYs) {
-                BoundingBox boundingBox =
-                        new BoundingBox(gridStart, gridSize, possibleX, possibleY);
-
-                double area = Math.abs(polygon.intersection(boundingBox.polygon).getArea());
-
-                if (area > 0) {
-                    if (area > maxArea ||
-                            (area == maxArea && boundingBox.compareTo(maxBoundingBox) < 0)) {
-                        maxArea = area;
-                        maxBoundingBox = boundingBox;
-                    }
-                }
-            }
+    /**
+     * @return The x and y coordinates of the vertices, in the same order as getVertices(). The
+     * returned array must not be modified.
+     */
+    double[] getVertexCoordinates() {
+        double[] vertexCoordinates = this.vertexCoordinates;
+        if (vertexCoordinates == null) {
+            vertexCoordinates = calculateVertexCoordinates();
+            this.vertexCoordinates = vertexCoordinates;
         }
+        return vertexCoordinates;
+    }
+
+    /**
+     * @return The x coordinate of the given vertex, in the same order as getVertices().
+     */
+    public double getVertexX(int vertex) {
+        return getVertexCoordinates()[vertex * 2];
+    }
+
+    /**
+     * @return The y coordinate of the given vertex, in the same order as getVertices().
+     */
+    public double getVertexY(int vertex) {
+        return getVertexCoordinates()[vertex * 2 + 1];
+    }
+
+    /**
+     * Gets the lattice coordinates of a vertex of this rhombus.
+     *
+     * @param vertex The index of the vertex, in the same order as getVertices().
+     * @param vertexLatticeCoords An array of 5 ints to store the lattice coordinates in.
+     */
+    public void getVertexLatticeCoords(int vertex, int[] vertexLatticeCoords) {
+        System.arraycopy(latticeCoords, 0, vertexLatticeCoords, 0, 5);
+        vertexLatticeCoords[strip1.stripFamily.angle] += offsets[vertex][0];
+        vertexLatticeCoords[strip2.stripFamily.angle] += offsets[vertex][1];
+    }
 
-        assert maxBoundingBox != null;
-        return maxBoundingBox;
+    /**
+     * @return The exact position of the given vertex, in the same order as getVertices().
+     */
+    public PhiCoordinate getExactVertex(int vertex) {
+        int[] vertexLatticeCoords = new int[5];
+        getVertexLatticeCoords(vertex, vertexLatticeCoords);
+        return PhiCoordinate.fromLatticeCoords(vertexLatticeCoords);
     }
 
     /**
      * @return An array of Coordinates of the vertices of this rhombus.
      */
     public Coordinate[] getVertices() {
+        double[] vertexCoordinates = getVertexCoordinates();
+
         Coordinate[] vertices = new Coordinate[4];
-        int[] coords = new int[5];
         for (int i = 0; i < 4; i++) {
-            int[] currentOffsets = offsets[i];
-
-            System.arraycopy(latticeCoords, 0, coords, 0, 5);
-
-            coords[strip1.stripFamily.angle] += currentOffsets[0];
-            coords[strip2.stripFamily.angle] += currentOffsets[1];
-
-            vertices[i] = getCoordinate(coords);
+            vertices[i] = new Coordinate(vertexCoordinates[i * 2], vertexCoordinates[i * 2 + 1]);
         }
-
         return vertices;
     }
 
-    private Coordinate getCoordinate(int[] latticeCoords) {
-        double x = 0;
-        double y = 0;
+    /**
+     * @return A Polygon for this rhombus.
+     */
+    public Polygon getPolygon() {
+        Polygon polygon = this.polygon;
+        if (polygon == null) {
+            Coordinate[] coordinates = new Coordinate[5];
+            System.arraycopy(getVertices(), 0, coordinates, 0, 4);
+            coordinates[4] = coordinates[0];
+            polygon = PenroseTiling.GEOMETRY_FACTORY.createPolygon(coordinates);
+            this.polygon = polygon;
+        }
+        return polygon;
+    }
 
-        for (int i = 0; i < 5; i++) {
-            x += latticeCoords[i] * PentAngle.PENTANGLES[i].cos;
-            y -= latticeCoords[i] * PentAngle.PENTANGLES[i].sin;
+    private double[] calculateVertexCoordinates() {
+        double[] vertexCoordinates = new double[8];
+        calculateVertexCoordinates(strip1.stripFamily.angle, strip2.stripFamily.angle,
+                latticeCoords, 0, vertexCoordinates, 0);
+        return vertexCoordinates;
+    }
+
+    /**
+     * Computes the vertex coordinates of a rhombus from its lattice coordinates, without creating
+     * any objects.
+     *
+     * @param family1 The family of strip1 of the rhombus.
+     * @param family2 The family of strip2 of the rhombus.
+     * @param latticeCoords The array containing the 5 lattice coordinates of the rhombus.
+     * @param latticeOffset The index of the first lattice coordinate in latticeCoords.
+     * @param vertexCoords The array to store the x and y coordinates of the 4 vertices in, in
+     *                     the same order as getVertices().
+     * @param vertexOffset The index in vertexCoords to store the first coordinate at.
+     */
+    static void calculateVertexCoordinates(int family1, int family2, int[] latticeCoords,
+                                           int latticeOffset, double[] vertexCoords,
+                                           int vertexOffset) {
+        // The coordinates are converted from their exact form, rather than summing the rounded
+        // unit vectors of each family, so that the only error is the final rounding. Otherwise,
+        // the error grows with the distance from the origin.
+        int xRational = 0;
+        int xPhi = 0;
+        int yRational = 0;
+        int yPhi = 0;
+        for (int family = 0; family < 5; family++) {
+            int latticeCoord = latticeCoords[latticeOffset + family];
+            int[] unitVector = UNIT_VECTORS[family];
+            xRational += latticeCoord * unitVector[0];
+            xPhi += latticeCoord * unitVector[1];
+            yRational += latticeCoord * unitVector[2];
+            yPhi += latticeCoord * unitVector[3];
         }
 
-        Coordinate coordinate = new Coordinate(x, y);
-        PenroseTiling.PRECISION_MODEL.makePrecise(coordinate);
-        return coordinate;
+        int[] unitVector1 = UNIT_VECTORS[family1];
+        int[] unitVector2 = UNIT_VECTORS[family2];
+        for (int vertex = 0; vertex < 4; vertex++) {
+            int offset1 = offsets[vertex][0];
+            int offset2 = offsets[vertex][1];
+
+            vertexCoords[vertexOffset + vertex * 2] = PenroseTiling.PRECISION_MODEL.makePrecise(
+                    PhiCoordinate.getX(
+                            xRational + offset1 * unitVector1[0] + offset2 * unitVector2[0],
+                            xPhi + offset1 * unitVector1[1] + offset2 * unitVector2[1]));
+            vertexCoords[vertexOffset + vertex * 2 + 1] =
+                    PenroseTiling.PRECISION_MODEL.makePrecise(PhiCoordinate.getY(
+                            yRational + offset1 * unitVector1[2] + offset2 * unitVector2[2],
+                            yPhi + offset1 * unitVector1[3] + offset2 * unitVector2[3]));
+        }
     }
 
     @Override public boolean equals(Object o) {
@@ -0,0 +1,241 @@
+/*
+ * Copyright 2019 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jf.ptgen.penrose;
+
+import javax.annotation.Nullable;
+import java.util.Arrays;
+
+/**
+ * A chunk of rhombii, stored as parallel arrays of primitives.
+ *
+ * <p>The data for the rhombus at index i is at index i of the per-rhombus arrays, at
+ * [i * 5, i * 5 + 5) of latticeCoords, and at [i * 8, i * 8 + 8) of vertexCoords. Only the
+ * first size() entries are valid. A batch is reused for many chunks, so the data must not be
+ * held on to after the batch is visited.
+ *
+ * <p>No Rhombus objects are kept. The engines fill the arrays directly from the strips and
+ * lattice coordinates they generate, and a Rhombus is only created when one is asked for, by
+ * getRhombus() or visitEach(). All the rhombii in a batch must be from the same tiling.
+ */
+public class RhombusBatch {
+    public static final int DEFAULT_CAPACITY = 256;
+
+    /**
+     * The strip family index and multiple of strip1 of each rhombus.
+     */
+    public final int[] strip1Families;
+    public final int[] strip1Multiples;
+
+    /**
+     * The strip family index and multiple of strip2 of each rhombus.
+     */
+    public final int[] strip2Families;
+    public final int[] strip2Multiples;
+
+    /**
+     * The 5 lattice coordinates of each rhombus. See {@link Rhombus#latticeCoords}.
+     */
+    public final int[] latticeCoords;
+
+    /**
+     * The x and y coordinates of the 4 vertices of each rhombus, in the same order as
+     * {@link Rhombus#getVertices()}.
+     */
+    public final double[] vertexCoords;
+
+    // The tiling that the rhombii are from, which is needed to create Rhombus objects for them.
+    // This is null while the batch is empty.
+    @Nullable private PenroseTiling tiling = null;
+    private int size = 0;
+
+    public RhombusBatch() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public RhombusBatch(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity must be at least 1");
+        }
+        strip1Families = new int[capacity];
+        strip1Multiples = new int[capacity];
+        strip2Families = new int[capacity];
+        strip2Multiples = new int[capacity];
+        latticeCoords = new int[capacity * 5];
+        vertexCoords = new double[capacity * 8];
+    }
+
+    /**
+     * @return The number of rhombii in this batch.
+     */
+    public int size() {
+        return size;
+    }
+
+    public int capacity() {
+        return strip1Families.length;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public boolean isFull() {
+        return size == capacity();
+    }
+
+    /**
+     * Adds a copy of a rhombus to the end of this batch. The rhombus itself isn't kept.
+     *
+     * <p>This computes the vertex coordinates of the rhombus if they haven't been already, so it
+     * is meant for rhombii whose geometry is already needed, like the ones that flood fill
+     * checks the ownership of. See {@link #add(PenroseTiling, int, int, int, int, int[], int)}
+     * for adding a rhombus from its strips and lattice coordinates.
+     *
+     * @throws IllegalStateException if the batch is full.
+     */
+    public void add(Rhombus rhombus) {
+        int index = startAdd(rhombus.strip1.stripFamily.tiling);
+        System.arraycopy(rhombus.latticeCoords, 0, latticeCoords, index * 5, 5);
+        System.arraycopy(rhombus.getVertexCoordinates(), 0, vertexCoords, index * 8, 8);
+        finishAdd(rhombus.strip1.stripFamily.angle, rhombus.strip1.multiple,
+                rhombus.strip2.stripFamily.angle, rhombus.strip2.multiple);
+    }
+
+    /**
+     * Adds the rhombus at the intersection of 2 strips to the end of this batch, computing its
+     * vertex coordinates from its lattice coordinates, without creating a Rhombus.
+     *
+     * @param latticeCoords The array containing the 5 lattice coordinates of the rhombus.
+     * @param offset The index of the first lattice coordinate in latticeCoords.
+     * @throws IllegalStateException if the batch is full.
+     */
+    public void add(PenroseTiling tiling, int strip1Family, int strip1Multiple,
+                    int strip2Family, int strip2Multiple, int[] latticeCoords, int offset) {
+        int index = startAdd(tiling);
+        System.arraycopy(latticeCoords, offset, this.latticeCoords, index * 5, 5);
+        Rhombus.calculateVertexCoordinates(strip1Family, strip2Family, this.latticeCoords,
+                index * 5, vertexCoords, index * 8);
+        finishAdd(strip1Family, strip1Multiple, strip2Family, strip2Multiple);
+    }
+
+    /**
+     * Adds a copy of a rhombus from another batch to the end of this batch.
+     *
+     * @throws IllegalStateException if the batch is full.
+     */
+    public void add(RhombusBatch other, int index) {
+        other.checkIndex(index);
+        int newIndex = startAdd(other.tiling);
+        System.arraycopy(other.latticeCoords, index * 5, latticeCoords, newIndex * 5, 5);
+        System.arraycopy(other.vertexCoords, index * 8, vertexCoords, newIndex * 8, 8);
+        finishAdd(other.strip1Families[index], other.strip1Multiples[index],
+                other.strip2Families[index], other.strip2Multiples[index]);
+    }
+
+    /**
+     * Adds the rhombus whose lattice and vertex coordinates have already been written to
+     * latticeCoords and vertexCoords at index size(). The engines use this to check the
+     * ownership of a rhombus in place, and only add it if it's kept.
+     *
+     * @throws IllegalStateException if the batch is full.
+     */
+    void addInPlace(PenroseTiling tiling, int strip1Family, int strip1Multiple,
+                    int strip2Family, int strip2Multiple) {
+        startAdd(tiling);
+        finishAdd(strip1Family, strip1Multiple, strip2Family, strip2Multiple);
+    }
+
+    private int startAdd(@Nullable PenroseTiling tiling) {
+        if (isFull()) {
+            throw new IllegalStateException("The batch is full");
+        }
+        if (this.tiling == null) {
+            this.tiling = tiling;
+        } else if (this.tiling != tiling) {
+            throw new IllegalArgumentException("The rhombii in a batch must be from the same " +
+                    "tiling");
+        }
+        return size;
+    }
+
+    private void finishAdd(int strip1Family, int strip1Multiple, int strip2Family,
+                           int strip2Multiple) {
+        strip1Families[size] = strip1Family;
+        strip1Multiples[size] = strip1Multiple;
+        strip2Families[size] = strip2Family;
+        strip2Multiples[size] = strip2Multiple;
+        size++;
+    }
+
+    /**
+     * Removes all rhombii from this batch.
+     */
+    public void clear() {
+        size = 0;
+        tiling = null;
+    }
+
+    /**
+     * Visits each rhombus in this batch with a per-rhombus visitor, in order. A Rhombus is
+     * created for each one.
+     */
+    public void visitEach(PenroseTiling.RhombusVisitor visitor) {
+        for (int i = 0; i < size; i++) {
+            visitor.visitRhombus(getRhombus(i));
+        }
+    }
+
+    /**
+     * @return A new Rhombus for the rhombus at the given index.
+     */
+    public Rhombus getRhombus(int index) {
+        checkIndex(index);
+        return new Rhombus(
+                tiling.getStripFamily(strip1Families[index]).getStrip(strip1Multiples[index]),
+                tiling.getStripFamily(strip2Families[index]).getStrip(strip2Multiples[index]),
+                Arrays.copyOfRange(latticeCoords, index * 5, index * 5 + 5),
+                Arrays.copyOfRange(vertexCoords, index * 8, index * 8 + 8));
+    }
+    /**
+     * @return The type of the rhombus at the given index. Either {@link Rhombus#THIN} or
+     * {@link Rhombus#THICK}.
+     */
+    public int getRhombusType(int index) {
+        checkIndex(index);
+        return Rhombus.getRhombusType(strip1Families[index], strip2Families[index]);
+    }
+
+    /**
+     * Gets the lattice coordinates of a vertex of a rhombus.
+     *
+     * @param index The index of the rhombus.
+     * @param vertex The index of the vertex, in the same order as vertexCoords.
+     * @param vertexLatticeCoords An array of 5 ints to store the lattice coordinates in.
+     */
+    public void getVertexLatticeCoords(int index, int vertex, int[] vertexLatticeCoords) {
+        checkIndex(index);
+        System.arraycopy(latticeCoords, index * 5, vertexLatticeCoords, 0, 5);
+        vertexLatticeCoords[strip1Families[index]] += Rhombus.offsets[vertex][0];
+        vertexLatticeCoords[strip2Families[index]] += Rhombus.offsets[vertex][1];
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+    }
+}
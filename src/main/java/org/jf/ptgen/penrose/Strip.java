@@ -49,26 +49,35 @@ public class Strip {
     }
 
     private Iterable<Rhombus> getRhombii(@Nullable Strip start, double target, boolean forward) {
+        final PenroseTiling tiling = stripFamily.tiling;
+        final int angle = stripFamily.angle;
+
+        // The intersections with each other family are an arithmetic progression along this
+        // strip. intersectionBases[i] is the distance to the intersection with strip 0 of family
+        // i, and the intersection with strip k is intervals[i] * k further along.
+        final double[] intersectionBases = new double[5];
+        final double[] intervals = new double[5];
+
         final double[] intersections = new double[5];
         final int[] intersectionMultiples = new int[5];
 
         for (int i = 0; i < 5; i++) {
-            if (i == stripFamily.angle) {
+            if (i == angle) {
                 continue;
             }
 
+            intersectionBases[i] = tiling.intersectionBases[angle][i] +
+                    multiple * tiling.intersectionMultipleSteps[angle][i];
+            intervals[i] = tiling.intersectionIntervals[angle][i];
+
             if (start != null && i == start.stripFamily.angle) {
                 intersections[i] = target;
                 intersectionMultiples[i] = start.multiple;
                 continue;
             }
 
-            StripFamily other = stripFamily.tiling.getStripFamily(i);
-
-            double initialIntersection = getIntersectionDistanceFromPoint(other.getStrip(0));
-            double delta = initialIntersection - target;
-            double sin = PentAngle.PENTANGLES[i].sin(PentAngle.PENTANGLES[stripFamily.angle]);
-            double interval = 1 / sin;
+            double delta = intersectionBases[i] - target;
+            double interval = intervals[i];
 
             if (forward) {
                 if (interval < 0) {
@@ -84,7 +93,7 @@ public class Strip {
                 }
             }
 
-            intersections[i] = getIntersectionDistanceFromPoint(other.getStrip(intersectionMultiples[i]));
+            intersections[i] = intersectionBases[i] + intersectionMultiples[i] * interval;
         }
 
         return new Iterable<Rhombus>() {
@@ -103,7 +112,7 @@ public class Strip {
                                 forward ? Double.POSITIVE_INFINITY : Double.NEGATIVE_INFINITY;
 
                         for (int i=0; i<5; i++) {
-                            if (i == stripFamily.angle) {
+                            if (i == angle) {
                                 interMultiples[i] = multiple;
                                 continue;
                             }
@@ -115,40 +124,39 @@ public class Strip {
                             }
                         }
 
+                        // The intervals are positive for the families whose multiples increase
+                        // along the direction of this strip.
                         int[] latticeCoords = new int[5];
 
                         for (int i = 0; i < 5; i++) {
-                            if (i == stripFamily.angle) {
+                            if (i == angle) {
                                 latticeCoords[i] = multiple;
                             } else if (i == closest) {
                                 latticeCoords[i] = interMultiples[i];
                             } else {
                                 latticeCoords[i] = interMultiples[i];
 
-                                double sin = stripFamily.pentangle().sin(PentAngle.PENTANGLES[i]);
-                                if ((forward && sin < 0) || (!forward && sin > 0)) {
+                                if ((forward && intervals[i] > 0) ||
+                                        (!forward && intervals[i] < 0)) {
                                     latticeCoords[i]--;
                                 }
                             }
                         }
 
                         int multiple = interMultiples[closest];
-                        double sin = PentAngle.PENTANGLES[closest]
-                                .sin(PentAngle.PENTANGLES[stripFamily.angle]);
 
-                        if ((forward && sin < 0) || (!forward && sin > 0)) {
+                        if ((forward && intervals[closest] < 0) ||
+                                (!forward && intervals[closest] > 0)) {
                             interMultiples[closest]--;
                         } else {
                             interMultiples[closest]++;
                         }
 
-                        inter[closest] = getIntersectionDistanceFromPoint(
-                                stripFamily.tiling.getStripFamily(closest).getStrip
-                                        (interMultiples[closest]));
+                        inter[closest] = intersectionBases[closest] +
+                                interMultiples[closest] * intervals[closest];
 
                         return new Rhombus(Strip.this,
-                                stripFamily.tiling.getStripFamily(closest)
-                                        .getStrip(multiple), latticeCoords);
+                                tiling.getStripFamily(closest).getStrip(multiple), latticeCoords);
                     }
 
                     @Override public void remove() {
@@ -196,20 +204,20 @@ public class Strip {
      * Gets the distance from the getPoint() point to the intersection with the given strip
      */
     public double getIntersectionDistanceFromPoint(Strip other) {
-        Coordinate intersectionCoordinate = getIntersectionPoint(other);
-        if (intersectionCoordinate == null) {
+        if (other.stripFamily.angle == stripFamily.angle) {
             throw new IllegalArgumentException("The strips don't intersect");
         }
-        if (new Vector2D(intersectionCoordinate).length() == 0) {
-            return 0;
-        }
-        return divide(new Vector2D(intersectionCoordinate).subtract(new Vector2D(getPoint())),
-                stripFamily.getDirection());
+        return stripFamily.tiling.getIntersectionDistance(
+                stripFamily.angle, multiple, other.stripFamily.angle, other.multiple);
     }
 
-    private double divide(Vector2D vector1, Vector2D vector2) {
-        return (vector1.dot(vector2) / (vector1.length() * vector2.length())) *
-                (vector1.length() / vector2.length());
+    /**
+     * Gets a key that uniquely identifies this strip within its tiling.
+     *
+     * @return The family index in the high 32 bits, and the multiple in the low 32 bits.
+     */
+    public long getKey() {
+        return ((long)stripFamily.angle << 32) | (multiple & 0xFFFFFFFFL);
     }
 
     @Override public boolean equals(Object o) {
@@ -223,7 +231,9 @@ public class Strip {
     }
 
     @Override public int hashCode() {
-        int result = stripFamily.hashCode();
+        // Strips are only ever compared to strips from the same tiling, so the family's index is
+        // enough to distinguish them, and is cheaper and more stable than its identity hash.
+        int result = stripFamily.angle;
         result = 31 * result + multiple;
         return result;
     }
@@ -22,10 +22,19 @@ import org.locationtech.jts.math.Vector2D;
  * Represents 1 of the 5 families of strips of rhombii in de Bruijn's method.
  */
 public class StripFamily {
+    // The number of strips kept in each family's strip cache. This must be a power of 2.
+    private static final int STRIP_CACHE_SIZE = 1024;
+
     public final PenroseTiling tiling;
     public final double offset;
     public final int angle;
 
+    // A direct-mapped cache of recently used strips, indexed by the low bits of the multiple.
+    // Strips are immutable, so this can be shared between threads without synchronization. A
+    // thread may occasionally miss a strip that another thread just cached, in which case it
+    // creates an equivalent one.
+    private final Strip[] stripCache = new Strip[STRIP_CACHE_SIZE];
+
     public StripFamily(PenroseTiling tiling, double offset, int angle) {
         this.tiling = tiling;
         this.offset = offset;
@@ -33,7 +42,13 @@ public class StripFamily {
     }
 
     public Strip getStrip(int multiple) {
-        return new Strip(this, multiple);
+        int index = multiple & (STRIP_CACHE_SIZE - 1);
+        Strip strip = stripCache[index];
+        if (strip == null || strip.multiple != multiple) {
+            strip = new Strip(this, multiple);
+            stripCache[index] = strip;
+        }
+        return strip;
     }
 
     public Vector2D getDirection() {
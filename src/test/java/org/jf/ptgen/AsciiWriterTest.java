@@ -0,0 +1,127 @@
+/*
+ * Copyright 2019 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jf.ptgen;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.Random;
+
+public class AsciiWriterTest {
+    @Test
+    public void testSpecialValues() {
+        double[] values = {
+                0, -0.0, 1, -1, .1, -.1, 1E-10, -1E-10, -1E-7,
+                // Ties, which are rounded half up, away from 0
+                .5, 1.5, 2.5, -.5, -2.5, .125, .375, -.625, 0.0000005, 1.0000005, -0.0000005,
+                2.0000000005,
+                // Carries into the integer part
+                .9999996, 9.9999999, 99.99999951, -.99999999, 999999.9999999,
+                // Large magnitudes, around the switch to String.format
+                123456789.123456789, 999999999999.9999, 1E12 - .001, 1E12, -1E12, 1E15, 1E20,
+                Double.MAX_VALUE, -Double.MAX_VALUE, Double.MIN_VALUE, -Double.MIN_VALUE,
+                Double.NaN, Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY
+        };
+        for (double value: values) {
+            for (int decimals = 0; decimals <= 9; decimals++) {
+                checkFormat(value, decimals);
+            }
+        }
+    }
+
+    @Test
+    public void testRandomValues() {
+        Random random = new Random(0);
+        for (int i = 0; i < 200000; i++) {
+            // Spread over many orders of magnitude, including some past the fast path
+            double value = (random.nextDouble() - .5) * Math.pow(10, random.nextInt(28) - 14);
+            checkFormat(value, random.nextInt(10));
+        }
+    }
+
+    @Test
+    public void testShortDecimals() {
+        // Values with few decimal digits, like the coordinates of the tiling, where the exact
+        // ties are common
+        Random random = new Random(1);
+        for (int i = 0; i < 200000; i++) {
+            int digits = random.nextInt(10) + 1;
+            double value = (random.nextLong() % 100000000000L) / Math.pow(10, digits);
+            checkFormat(value, random.nextInt(Math.min(digits, 9) + 1));
+        }
+    }
+
+    @Test
+    public void testDefaultDecimals() {
+        for (double value: new double[] {0, -0.0, 3.14159265, -2.0000005, 1E13}) {
+            Assert.assertEquals(String.format(Locale.ROOT, "%f", value),
+                    write(writer -> writer.write(value)));
+        }
+    }
+
+    @Test
+    public void testLongs() {
+        for (long value: new long[] {0, 7, -7, 10, 1000000007, Long.MAX_VALUE, Long.MIN_VALUE,
+                Long.MIN_VALUE + 1}) {
+            Assert.assertEquals(Long.toString(value), write(writer -> writer.write(value)));
+        }
+    }
+
+    @Test
+    public void testSmallBuffer() {
+        StringBuilder expected = new StringBuilder();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        AsciiWriter writer = new AsciiWriter(bytes, 30);
+        for (int i = 0; i < 1000; i++) {
+            double value = i * -1.37;
+            writer.write(value, 9).write(' ').write("text that is longer than the buffer ")
+                    .write((long)i * 123456789L).newLine();
+            expected.append(String.format(Locale.ROOT, "%.9f", value))
+                    .append(" text that is longer than the buffer ")
+                    .append((long)i * 123456789L).append('\n');
+        }
+        writer.flush();
+        Assert.assertEquals(expected.toString(),
+                new String(bytes.toByteArray(), StandardCharsets.US_ASCII));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testTooManyDecimals() {
+        write(writer -> writer.write(1.0, 10));
+    }
+
+    private static void checkFormat(double value, int decimals) {
+        Assert.assertEquals(value + " with " + decimals + " decimals",
+                String.format(Locale.ROOT, "%." + decimals + "f", value),
+                write(writer -> writer.write(value, decimals)));
+    }
+
+    private interface WriterAction {
+        void write(AsciiWriter writer);
+    }
+
+    private static String write(WriterAction action) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        AsciiWriter writer = new AsciiWriter(bytes);
+        action.write(writer);
+        writer.flush();
+        return new String(bytes.toByteArray(), StandardCharsets.US_ASCII);
+    }
+}
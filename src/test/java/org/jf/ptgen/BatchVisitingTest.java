@@ -0,0 +1,153 @@
+/*
+ * Copyright 2019 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jf.ptgen;
+
+import org.jf.ptgen.PTGen.RhombusOutput;
+import org.jf.ptgen.penrose.BoundingBox;
+import org.jf.ptgen.penrose.PenroseTiling;
+import org.jf.ptgen.penrose.PenroseTiling.Engine;
+import org.jf.ptgen.penrose.Rhombus;
+import org.jf.ptgen.penrose.RhombusBatch;
+import org.junit.Assert;
+import org.junit.Test;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.math.Vector2D;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+public class BatchVisitingTest {
+    @Test
+    public void testSvgOutputMatches() {
+        for (Engine engine: Engine.values()) {
+            for (boolean showGrid: new boolean[] {false, true}) {
+                SvgOutput batchOutput = new SvgOutput();
+                SvgOutput rhombusOutput = new SvgOutput();
+                batchOutput.showGrid = rhombusOutput.showGrid = showGrid;
+                assertSameOutput(engine, batchOutput, rhombusOutput);
+            }
+        }
+    }
+
+    @Test
+    public void testSvgLineOutputMatches() {
+        for (Engine engine: Engine.values()) {
+            for (boolean polylines: new boolean[] {false, true}) {
+                SvgLineOutput batchOutput = new SvgLineOutput();
+                SvgLineOutput rhombusOutput = new SvgLineOutput();
+                batchOutput.polylines = rhombusOutput.polylines = polylines;
+                batchOutput.gridSpacing = rhombusOutput.gridSpacing = 0;
+                assertSameOutput(engine, batchOutput, rhombusOutput);
+            }
+        }
+    }
+
+    @Test
+    public void testBatchMatchesRhombii() {
+        PenroseTiling tiling = new PenroseTiling(new Random(3));
+        BoundingBox boundingBox = new BoundingBox(new Coordinate(-7.5, 2.25),
+                new Vector2D(12, 9), 0, 0);
+
+        List<Rhombus> expected = new ArrayList<>();
+        tiling.enumerateRhombii(boundingBox, expected::add, null);
+
+        // A small batch, so that it is flushed several times
+        List<Rhombus> actual = new ArrayList<>();
+        RhombusBatch copy = new RhombusBatch(expected.size());
+        tiling.enumerateRhombii(boundingBox, new RhombusBatch(7), batch -> {
+            Assert.assertTrue(batch.size() > 0);
+            for (int i = 0; i < batch.size(); i++) {
+                Rhombus rhombus = batch.getRhombus(i);
+                Assert.assertEquals(rhombus.getRhombusType(), batch.getRhombusType(i));
+                for (int vertex = 0; vertex < 4; vertex++) {
+                    Assert.assertEquals(rhombus.getVertexX(vertex),
+                            batch.vertexCoords[i * 8 + vertex * 2], 0);
+                    Assert.assertEquals(rhombus.getVertexY(vertex),
+                            batch.vertexCoords[i * 8 + vertex * 2 + 1], 0);
+                }
+                actual.add(rhombus);
+                copy.add(batch, i);
+            }
+        });
+        Assert.assertEquals(expected, actual);
+
+        for (int i = 0; i < copy.size(); i++) {
+            Assert.assertEquals(expected.get(i), copy.getRhombus(i));
+        }
+
+        // Adding the rhombii one at a time gives the same batch as the engine's
+        RhombusBatch added = new RhombusBatch(expected.size());
+        for (Rhombus rhombus: expected) {
+            added.add(rhombus);
+        }
+        Assert.assertArrayEquals(copy.latticeCoords, added.latticeCoords);
+        Assert.assertArrayEquals(copy.vertexCoords, added.vertexCoords, 0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testMixedTilings() {
+        PenroseTiling tiling1 = new PenroseTiling(new Random(1));
+        PenroseTiling tiling2 = new PenroseTiling(new Random(2));
+        RhombusBatch batch = new RhombusBatch();
+        batch.add(tiling1.getStripFamily(0).getStrip(0).getRhombus(1));
+        batch.add(tiling2.getStripFamily(0).getStrip(0).getRhombus(1));
+    }
+
+    /**
+     * Generates the same tiling into both outputs, passing it to the first in batches, and to the
+     * second one rhombus at a time.
+     */
+    private static void assertSameOutput(Engine engine, SvgOutput batchOutput,
+                                         SvgOutput rhombusOutput) {
+        PTGen ptGen = new PTGen(17, -20.5, 13.25, 9, 11, 3, 2);
+        ptGen.setEngine(engine);
+
+        ByteArrayOutputStream batchBytes = new ByteArrayOutputStream();
+        batchOutput.setOutputStream(batchBytes);
+        ptGen.visitRhombii(batchOutput);
+
+        ByteArrayOutputStream rhombusBytes = new ByteArrayOutputStream();
+        rhombusOutput.setOutputStream(rhombusBytes);
+        // This only implements RhombusOutput, so PTGen doesn't pass it any batches
+        ptGen.visitRhombii(new RhombusOutput() {
+            @Override public void start(PTGen ptgen) {
+                rhombusOutput.start(ptgen);
+            }
+
+            @Override public void startBox(BoundingBox boundingBox) {
+                rhombusOutput.startBox(boundingBox);
+            }
+
+            @Override public void visitRhombus(Rhombus rhombus) {
+                rhombusOutput.visitRhombus(rhombus);
+            }
+
+            @Override public void endBox(BoundingBox boundingBox) {
+                rhombusOutput.endBox(boundingBox);
+            }
+
+            @Override public void end() {
+                rhombusOutput.end();
+            }
+        });
+
+        Assert.assertTrue(batchBytes.size() > 0);
+        Assert.assertArrayEquals(batchBytes.toByteArray(), rhombusBytes.toByteArray());
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright 2019 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jf.ptgen;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+public class BinaryOutputTest {
+    @Test
+    public void testReplayMatchesGeneration() throws IOException {
+        // The grid is far enough from the origin that the strip multiples are negative.
+        // Box (1, 1) is filtered out.
+        PTGen ptGen = new PTGen(11, -60.5, -45.25, 8, 6, 3, 2);
+        PTGen.BoxFilter boxFilter = (x, y) -> x != 1 || y != 1;
+
+        RecordingOutput expected = new RecordingOutput();
+        ptGen.visitRhombii(expected, false, boxFilter);
+        Assert.assertFalse(expected.calls.contains("startBox 1 1"));
+        Assert.assertTrue(expected.calls.stream().anyMatch(call -> call.contains(":-")));
+
+        RecordingOutput actual = new RecordingOutput();
+        new BinaryTilingReader(new ByteArrayInputStream(write(ptGen, boxFilter)))
+                .replay(actual);
+
+        Assert.assertEquals(expected.calls, actual.calls);
+    }
+
+    @Test
+    public void testBadMagic() {
+        byte[] tiling = write(new PTGen(0, 0, 0, 10, 10, 1, 1), PTGen.BoxFilter.ALL_BOXES);
+        tiling[0] = 'X';
+        assertInvalid(tiling, "Not a binary tiling file");
+    }
+
+    @Test
+    public void testBadVersion() {
+        byte[] tiling = write(new PTGen(0, 0, 0, 10, 10, 1, 1), PTGen.BoxFilter.ALL_BOXES);
+        tiling[BinaryOutput.MAGIC.length] = BinaryOutput.VERSION + 1;
+        assertInvalid(tiling, "Unsupported binary tiling version: " + (BinaryOutput.VERSION + 1));
+    }
+
+    private static byte[] write(PTGen ptGen, PTGen.BoxFilter boxFilter) {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        BinaryOutput output = new BinaryOutput();
+        output.setOutputStream(outputStream);
+        ptGen.visitRhombii(output, false, boxFilter);
+        return outputStream.toByteArray();
+    }
+
+    private static void assertInvalid(byte[] tiling, String message) {
+        try {
+            new BinaryTilingReader(new ByteArrayInputStream(tiling)).replay(new RecordingOutput());
+            Assert.fail();
+        } catch (IOException ex) {
+            Assert.assertEquals(message, ex.getMessage());
+        }
+    }
+}
@@ -0,0 +1,149 @@
+/*
+ * Copyright 2019 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jf.ptgen;
+
+import org.jf.ptgen.penrose.BoundingBox;
+import org.jf.ptgen.penrose.RhombusBatch;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.function.Supplier;
+
+public class CheckpointedOutputTest {
+    @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+    private final PTGen ptGen = new PTGen(5, -12.5, 3.75, 6, 7, 3, 3);
+
+    @Test
+    public void testResumeMatchesUninterruptedRun() throws IOException {
+        Supplier<StreamOutput> outputSupplier = () -> {
+            SvgOutput output = new SvgOutput();
+            output.showGrid = true;
+            return output;
+        };
+
+        Path expectedPath = folder.getRoot().toPath().resolve("expected.svg");
+        try (OutputStream outputStream = Files.newOutputStream(expectedPath)) {
+            StreamOutput output = outputSupplier.get();
+            output.setOutputStream(outputStream);
+            ptGen.visitRhombii(output);
+        }
+
+        Path outputPath = folder.getRoot().toPath().resolve("output.svg");
+        Path manifestPath = folder.getRoot().toPath().resolve("output.checkpoint");
+        interrupt(outputSupplier.get(), outputPath, manifestPath, 4);
+
+        try (CheckpointedOutput output = new CheckpointedOutput(outputSupplier.get(), outputPath,
+                manifestPath)) {
+            ptGen.visitRhombii(output, false, output);
+            Assert.assertEquals(4, output.getCompletedBoxCount());
+        }
+
+        Assert.assertArrayEquals(Files.readAllBytes(expectedPath), Files.readAllBytes(outputPath));
+    }
+
+    @Test
+    public void testDifferentGridOptionRejected() throws IOException {
+        SvgOutput output = new SvgOutput();
+        SvgOutput resumedOutput = new SvgOutput();
+        resumedOutput.showGrid = true;
+        assertResumeRejected(output, resumedOutput);
+    }
+
+    @Test
+    public void testDifferentPolylinesOptionRejected() throws IOException {
+        SvgLineOutput output = new SvgLineOutput();
+        SvgLineOutput resumedOutput = new SvgLineOutput();
+        resumedOutput.polylines = true;
+        assertResumeRejected(output, resumedOutput);
+    }
+
+    @Test
+    public void testDifferentTilingRejected() throws IOException {
+        Path outputPath = folder.getRoot().toPath().resolve("output.svg");
+        Path manifestPath = folder.getRoot().toPath().resolve("output.checkpoint");
+        interrupt(new SvgOutput(), outputPath, manifestPath, 2);
+
+        PTGen otherPtGen = new PTGen(5, -12.5, 3.75, 6, 7, 3, 4);
+        try (CheckpointedOutput output = new CheckpointedOutput(new SvgOutput(), outputPath,
+                manifestPath)) {
+            otherPtGen.visitRhombii(output, false, output);
+            Assert.fail();
+        } catch (UncheckedIOException ex) {
+            Assert.assertTrue(ex.getCause().getMessage().endsWith("is for a different tiling"));
+        }
+    }
+
+    private void assertResumeRejected(StreamOutput output, StreamOutput resumedOutput)
+            throws IOException {
+        Path outputPath = folder.getRoot().toPath().resolve("output.svg");
+        Path manifestPath = folder.getRoot().toPath().resolve("output.checkpoint");
+        interrupt(output, outputPath, manifestPath, 2);
+
+        try (CheckpointedOutput checkpointedOutput = new CheckpointedOutput(resumedOutput,
+                outputPath, manifestPath)) {
+            ptGen.visitRhombii(checkpointedOutput, false, checkpointedOutput);
+            Assert.fail();
+        } catch (UncheckedIOException ex) {
+            Assert.assertTrue(ex.getCause().getMessage().endsWith(
+                    "was written with different output options"));
+        }
+    }
+
+    /**
+     * Generates the tiling with a checkpoint, stopping partway through the box after the given
+     * number of boxes, after part of that box has been written. The manifest is left with an
+     * incomplete last line, as if it was interrupted while writing it.
+     */
+    private void interrupt(StreamOutput output, Path outputPath, Path manifestPath,
+                           int completedBoxes) throws IOException {
+        try (CheckpointedOutput checkpointedOutput = new CheckpointedOutput(output, outputPath,
+                manifestPath) {
+            private int boxes = 0;
+
+            @Override public void startBox(BoundingBox boundingBox) {
+                super.startBox(boundingBox);
+                boxes++;
+            }
+
+            @Override public void visitRhombii(RhombusBatch batch) {
+                super.visitRhombii(batch);
+                if (boxes > completedBoxes) {
+                    output.flush();
+                    throw new IllegalStateException("Interrupted");
+                }
+            }
+        }) {
+            ptGen.visitRhombii(checkpointedOutput, false, checkpointedOutput);
+            Assert.fail();
+        } catch (IllegalStateException ex) {
+            Assert.assertEquals("Interrupted", ex.getMessage());
+        }
+
+        Files.write(manifestPath, "box 2".getBytes(StandardCharsets.UTF_8),
+                StandardOpenOption.APPEND);
+    }
+}
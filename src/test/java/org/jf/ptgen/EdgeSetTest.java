@@ -0,0 +1,138 @@
+/*
+ * Copyright 2019 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jf.ptgen;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+public class EdgeSetTest {
+    @Test
+    public void testGrowth() {
+        EdgeSet edges = new EdgeSet();
+        Set<String> expected = new HashSet<>();
+        Random random = new Random(0);
+        int[] lowerVertex = new int[5];
+        // Many more edges than the initial capacity, some of them repeated
+        for (int i = 0; i < 50000; i++) {
+            for (int j = 0; j < 5; j++) {
+                lowerVertex[j] = random.nextInt(9) - 4;
+            }
+            int family = random.nextInt(5);
+            Assert.assertEquals(expected.add(Arrays.toString(lowerVertex) + family),
+                    edges.add(lowerVertex, family));
+        }
+        Assert.assertEquals(expected.size(), edges.size());
+    }
+
+    @Test
+    public void testCoordinateRange() {
+        int[][] vertices = {
+                {EdgeSet.MIN_COORD, EdgeSet.MAX_COORD, EdgeSet.MIN_COORD, EdgeSet.MAX_COORD,
+                        EdgeSet.MIN_COORD},
+                {EdgeSet.MAX_COORD, EdgeSet.MIN_COORD, EdgeSet.MAX_COORD, EdgeSet.MIN_COORD,
+                        EdgeSet.MAX_COORD},
+                // Past the old limit of 21 bits
+                {1 << 20, -(1 << 20) - 1, 3000000, -3000000, 0},
+                {-1, -1, -1, -1, -1},
+                {0, 0, -1, 0, 0},
+                {0, 0, 1 << 13, 0, 0},
+                {0, 0, 1 << 11, 0, 0},
+                {0, 0, 1 << 10, 0, 0},
+        };
+
+        EdgeSet edges = new EdgeSet();
+        for (int[] vertex: vertices) {
+            for (int family = 0; family < 5; family++) {
+                Assert.assertTrue(edges.add(vertex, family));
+            }
+        }
+        for (int[] vertex: vertices) {
+            for (int family = 0; family < 5; family++) {
+                Assert.assertFalse(edges.add(vertex, family));
+            }
+        }
+
+        // The coordinates survive being packed and unpacked
+        List<String> retained = new ArrayList<>();
+        edges.retain((lowerVertex, family) -> {
+            retained.add(Arrays.toString(lowerVertex) + family);
+            return true;
+        });
+        List<String> expected = new ArrayList<>();
+        for (int[] vertex: vertices) {
+            for (int family = 0; family < 5; family++) {
+                expected.add(Arrays.toString(vertex) + family);
+            }
+        }
+        retained.sort(null);
+        expected.sort(null);
+        Assert.assertEquals(expected, retained);
+    }
+
+    @Test
+    public void testCoordinateTooLarge() {
+        EdgeSet edges = new EdgeSet();
+        for (int coord: new int[] {EdgeSet.MIN_COORD - 1, EdgeSet.MAX_COORD + 1}) {
+            for (int i = 0; i < 5; i++) {
+                int[] lowerVertex = new int[5];
+                lowerVertex[i] = coord;
+                try {
+                    edges.add(lowerVertex, 0);
+                    Assert.fail();
+                } catch (IllegalStateException ex) {
+                    // expected
+                }
+            }
+        }
+        Assert.assertEquals(0, edges.size());
+    }
+
+    @Test
+    public void testRetain() {
+        EdgeSet edges = new EdgeSet();
+        int[] lowerVertex = new int[5];
+        for (int i = -500; i < 500; i++) {
+            Arrays.fill(lowerVertex, i);
+            for (int family = 0; family < 5; family++) {
+                edges.add(lowerVertex, family);
+            }
+        }
+
+        // Like SvgLineOutput, keep the edges near the boxes that haven't been written yet
+        edges.retain((vertex, family) -> vertex[0] >= 0 && family != 2);
+        Assert.assertEquals(500 * 4, edges.size());
+
+        for (int i = -500; i < 500; i++) {
+            Arrays.fill(lowerVertex, i);
+            for (int family = 0; family < 5; family++) {
+                Assert.assertEquals(i < 0 || family == 2, edges.add(lowerVertex, family));
+            }
+        }
+        Assert.assertEquals(1000 * 5, edges.size());
+
+        edges.clear();
+        Assert.assertEquals(0, edges.size());
+        Assert.assertTrue(edges.add(lowerVertex, 0));
+    }
+}
@@ -0,0 +1,154 @@
+/*
+ * Copyright 2019 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jf.ptgen;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+public class MainTest {
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void testParseSeeds() {
+        Assert.assertEquals(Collections.singletonList(7L), Main.parseSeeds("7"));
+        Assert.assertEquals(Arrays.asList(1L, 5L, 6L, 7L), Main.parseSeeds("1,5-7"));
+        Assert.assertEquals(Arrays.asList(3L, -2L, -1L, 0L), Main.parseSeeds(" 3 , -2 - 0 "));
+        Assert.assertEquals(Arrays.asList(-5L, -4L), Main.parseSeeds("-5--4"));
+        Assert.assertEquals(Collections.singletonList(4L), Main.parseSeeds("4-4"));
+        Assert.assertEquals(Arrays.asList(Long.MAX_VALUE - 1, Long.MAX_VALUE),
+                Main.parseSeeds((Long.MAX_VALUE - 1) + "-" + Long.MAX_VALUE));
+
+        // Repeated seeds are only kept the first time
+        Assert.assertEquals(Arrays.asList(4L, 3L, 5L, 1L), Main.parseSeeds("4,3-5,4,1,3"));
+    }
+
+    @Test
+    public void testParseMalformedSeeds() {
+        for (String seeds: new String[] {"", "a", "1,", "1,,2", "1-", "-", "1-2-3", "5-3", "1.5",
+                "99999999999999999999"}) {
+            try {
+                Main.parseSeeds(seeds);
+                Assert.fail(seeds);
+            } catch (IllegalArgumentException ex) {
+                // expected
+            }
+        }
+    }
+
+    @Test
+    public void testOutputPerSeed() throws IOException {
+        for (String threads: new String[] {"1", "3"}) {
+            File folder = temporaryFolder.newFolder();
+            Main main = Main.parse("--seeds", "8,2-3,8", "--countX", "2", "--width", "12",
+                    "--threads", threads, "--output", folder + "/tiling-%d.svg",
+                    "--show-grid");
+            main.generateSeeds(Main.parseSeeds("8,2-3,8"));
+
+            String[] files = folder.list();
+            Arrays.sort(files);
+            Assert.assertArrayEquals(
+                    new String[] {"tiling-2.svg", "tiling-3.svg", "tiling-8.svg"}, files);
+
+            for (long seed: new long[] {2, 3, 8}) {
+                SvgOutput output = new SvgOutput();
+                output.showGrid = true;
+                ByteArrayOutputStream expected = new ByteArrayOutputStream();
+                output.setOutputStream(expected);
+                new PTGen(seed, 0, 0, 12, 10, 2, 1).visitRhombii(output);
+
+                Assert.assertArrayEquals(expected.toByteArray(),
+                        Files.readAllBytes(new File(folder, "tiling-" + seed + ".svg").toPath()));
+            }
+        }
+    }
+
+    @Test
+    public void testStatsOutput() throws IOException {
+        int rhombusCount = 0;
+        for (String call: getCalls(new PTGen(0, 0, 0, 10, 10, 2, 2))) {
+            if (call.startsWith("Rhombus")) {
+                rhombusCount++;
+            }
+        }
+
+        String[] summary = getStatsSummary("--countX", "2", "--countY", "2").split("\\R");
+        Assert.assertEquals(5, summary.length);
+        Assert.assertTrue(summary[0], summary[0].startsWith("Boxes: 4, "));
+        Assert.assertTrue(summary[1], summary[1].startsWith("Rhombii: " + rhombusCount +
+                " visited, "));
+
+        // The boxes are counted the same way when they are generated concurrently
+        String[] concurrentSummary = getStatsSummary("--countX", "2", "--countY", "2",
+                "--threads", "3").split("\\R");
+        for (int i = 0; i < 4; i++) {
+            Assert.assertEquals(summary[i].replaceAll(", [0-9.]+ ms per box", ""),
+                    concurrentSummary[i].replaceAll(", [0-9.]+ ms per box", ""));
+        }
+
+        // The stats of all the seeds are combined
+        File folder = temporaryFolder.newFolder();
+        String seedSummary = getStatsSummary("--seeds", "1-3", "--countX", "2",
+                "--output", folder + "/tiling-%d.svg");
+        Assert.assertTrue(seedSummary, seedSummary.startsWith("Boxes: 6, "));
+
+        Assert.assertEquals("", getStatsSummary("--countX", "2", "--no-stats"));
+    }
+
+    private List<String> getCalls(PTGen ptGen) {
+        RecordingOutput output = new RecordingOutput();
+        ptGen.visitRhombii(output);
+        return output.calls;
+    }
+
+    /**
+     * Runs Main with the given arguments, and returns what it writes for --stats.
+     *
+     * @param args The arguments, which include --stats unless they end with --no-stats.
+     */
+    private String getStatsSummary(String... args) throws IOException {
+        List<String> argList = new ArrayList<>(Arrays.asList(args));
+        if (!argList.remove("--no-stats")) {
+            argList.add("--stats");
+        }
+        if (!argList.contains("--output")) {
+            argList.add("--output");
+            argList.add(temporaryFolder.newFile().getPath());
+        }
+        Main main = Main.parse(argList.toArray(new String[0]));
+
+        int seedsIndex = argList.indexOf("--seeds");
+        List<Long> seedList = seedsIndex < 0 ? null : Main.parseSeeds(argList.get(seedsIndex + 1));
+
+        ByteArrayOutputStream statsBytes = new ByteArrayOutputStream();
+        main.run(new SvgOutput(), seedList, new PrintStream(statsBytes, true, "UTF-8"));
+        return new String(statsBytes.toByteArray(), StandardCharsets.UTF_8);
+    }
+}
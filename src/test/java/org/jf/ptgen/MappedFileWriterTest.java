@@ -0,0 +1,86 @@
+/*
+ * Copyright 2019 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jf.ptgen;
+
+import org.jf.ptgen.PTGen.BoxFilter;
+import org.jf.ptgen.penrose.GenerationStats;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Supplier;
+
+public class MappedFileWriterTest {
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void testMatchesStreamedOutput() throws IOException {
+        checkOutput(() -> {
+            SvgOutput output = new SvgOutput();
+            output.showGrid = true;
+            return output;
+        }, BoxFilter.ALL_BOXES);
+        checkOutput(SvgLineOutput::new, BoxFilter.ALL_BOXES);
+        checkOutput(BinaryOutput::new, (x, y) -> x != 2 || y != 1);
+    }
+
+    /**
+     * Writes the same tiling with a MappedFileWriter, with several region sizes, and by
+     * streaming it to a single output, and checks that they're identical.
+     */
+    private void checkOutput(Supplier<StreamOutput> outputFactory, BoxFilter boxFilter)
+            throws IOException {
+        PTGen ptGen = new PTGen(13, -22.5, 8.75, 11, 9, 4, 3);
+
+        ByteArrayOutputStream streamed = new ByteArrayOutputStream();
+        StreamOutput streamedOutput = outputFactory.get();
+        streamedOutput.setOutputStream(streamed);
+        ptGen.visitRhombii(streamedOutput, false, boxFilter);
+        byte[] expected = streamed.toByteArray();
+
+        ExecutorService executor = Executors.newFixedThreadPool(3);
+        try {
+            // Each box in its own region, a few boxes per region, and a single region
+            for (int minRegionSize: new int[] {1, expected.length / 5, expected.length * 2}) {
+                Path path = temporaryFolder.newFile().toPath();
+                GenerationStats stats = new GenerationStats();
+                ptGen.setStats(stats);
+                new MappedFileWriter(path, outputFactory, minRegionSize).write(ptGen,
+                        outputFactory.get(), executor, 2, true, boxFilter);
+                ptGen.setStats(null);
+
+                Assert.assertArrayEquals(expected, Files.readAllBytes(path));
+                // The regions are at least this large, so there's more than one unless the
+                // size is larger than the whole file
+                Assert.assertTrue(minRegionSize * 2 < expected.length ||
+                        minRegionSize > expected.length);
+                Assert.assertEquals(boxFilter == BoxFilter.ALL_BOXES ? 12 : 11,
+                        stats.getBoxes());
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
@@ -0,0 +1,84 @@
+/*
+ * Copyright 2019 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jf.ptgen;
+
+import org.jf.ptgen.PTGen.BoxFilter;
+import org.jf.ptgen.PTGen.GeneratedBox;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+public class PTGenTest {
+    @Test
+    public void testConsumedBoxesAreReleased() throws InterruptedException {
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            for (boolean ordered: new boolean[] {true, false}) {
+                checkConsumedBoxesAreReleased(executor, ordered);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Generates the boxes concurrently, and checks that by the time the last box is consumed, the
+     * boxes consumed before it can be garbage collected.
+     */
+    private static void checkConsumedBoxesAreReleased(ExecutorService executor, boolean ordered)
+            throws InterruptedException {
+        PTGen ptGen = new PTGen(5, 0, 0, 10, 10, 4, 4);
+        int boxCount = 16;
+
+        List<WeakReference<GeneratedBox>> consumedBoxes = new ArrayList<>();
+        boolean[] released = new boolean[1];
+        ptGen.generateConcurrently(executor, 2, ordered, BoxFilter.ALL_BOXES,
+                generatedBox -> generatedBox, generatedBox -> {
+                    consumedBoxes.add(new WeakReference<>(generatedBox));
+                    if (consumedBoxes.size() == boxCount) {
+                        released[0] = waitForRelease(consumedBoxes.subList(0, boxCount - 1));
+                    }
+                });
+
+        Assert.assertEquals(boxCount, consumedBoxes.size());
+        Assert.assertTrue("Consumed boxes are still reachable, ordered=" + ordered, released[0]);
+    }
+
+    /**
+     * @return Whether all the references were cleared, after several garbage collections.
+     */
+    private static boolean waitForRelease(List<WeakReference<GeneratedBox>> references) {
+        for (int i = 0; i < 20; i++) {
+            System.gc();
+            if (references.stream().allMatch(reference -> reference.get() == null)) {
+                return true;
+            }
+            try {
+                Thread.sleep(10);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+        return false;
+    }
+}
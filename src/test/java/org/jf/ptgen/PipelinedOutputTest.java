@@ -0,0 +1,112 @@
+/*
+ * Copyright 2019 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jf.ptgen;
+
+import org.jf.ptgen.penrose.BoundingBox;
+import org.jf.ptgen.penrose.Rhombus;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class PipelinedOutputTest {
+    @Test(timeout = 60000)
+    public void testOrder() {
+        PTGen ptGen = new PTGen(9, -31.5, 17.25, 12, 9, 3, 3);
+
+        RecordingOutput expected = new RecordingOutput();
+        ptGen.visitRhombii(expected);
+
+        for (int queueSize: new int[] {1, 2, 64}) {
+            RecordingOutput actual = new RecordingOutput();
+            try (PipelinedOutput pipelinedOutput = new PipelinedOutput(actual, queueSize)) {
+                ptGen.visitRhombii(pipelinedOutput);
+            }
+            Assert.assertEquals(expected.calls, actual.calls);
+        }
+    }
+
+    @Test(timeout = 60000)
+    public void testOutputFailure() {
+        PTGen ptGen = new PTGen(9, -31.5, 17.25, 12, 9, 3, 3);
+
+        RecordingOutput output = new RecordingOutput() {
+            @Override public void startBox(BoundingBox boundingBox) {
+                if (boundingBox.xMultiple == 1 && boundingBox.yMultiple == 1) {
+                    throw new IllegalStateException("Output failed");
+                }
+                super.startBox(boundingBox);
+            }
+        };
+
+        PipelinedOutput pipelinedOutput = new PipelinedOutput(output, 1);
+        try {
+            ptGen.visitRhombii(pipelinedOutput);
+            Assert.fail();
+        } catch (IllegalStateException ex) {
+            Assert.assertEquals("Output failed", ex.getMessage());
+        } finally {
+            pipelinedOutput.close();
+        }
+
+        // Nothing after the failure reached the output
+        Assert.assertEquals("endBox 1 0", output.calls.get(output.calls.size() - 1));
+        Assert.assertFalse(output.calls.contains("end"));
+    }
+
+    @Test(timeout = 60000)
+    public void testOutputThreadInterrupted() {
+        PTGen ptGen = new PTGen(9, -31.5, 17.25, 12, 9, 3, 3);
+
+        RecordingOutput output = new RecordingOutput() {
+            @Override public void visitRhombus(Rhombus rhombus) {
+                super.visitRhombus(rhombus);
+                if (calls.size() == 50) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        };
+
+        // With a queue of 1, generation would block forever if the output thread stopped taking
+        // from the queue when it was interrupted
+        PipelinedOutput pipelinedOutput = new PipelinedOutput(output, 1);
+        try {
+            ptGen.visitRhombii(pipelinedOutput);
+            Assert.fail();
+        } catch (RuntimeException ex) {
+            Assert.assertTrue(ex.getCause() instanceof InterruptedException);
+        } finally {
+            pipelinedOutput.close();
+        }
+        Assert.assertFalse(output.calls.contains("end"));
+    }
+
+    @Test(timeout = 60000)
+    public void testEnqueueAfterClose() {
+        PTGen ptGen = new PTGen(9, -31.5, 17.25, 12, 9, 1, 1);
+        PipelinedOutput pipelinedOutput = new PipelinedOutput(new RecordingOutput(), 1);
+        pipelinedOutput.start(ptGen);
+        pipelinedOutput.close();
+        // Closing again does nothing
+        pipelinedOutput.close();
+
+        try {
+            pipelinedOutput.startBox(null);
+            Assert.fail();
+        } catch (IllegalStateException ex) {
+            Assert.assertEquals("The output isn't running", ex.getMessage());
+        }
+    }
+}
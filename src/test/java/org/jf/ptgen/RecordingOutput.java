@@ -0,0 +1,54 @@
+/*
+ * Copyright 2019 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jf.ptgen;
+
+import org.jf.ptgen.PTGen.RhombusOutput;
+import org.jf.ptgen.penrose.BoundingBox;
+import org.jf.ptgen.penrose.Rhombus;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * An output that records every call made to it as a string, so that the calls made by
+ * different ways of generating a tiling can be compared.
+ */
+class RecordingOutput implements RhombusOutput {
+    public final List<String> calls = new ArrayList<>();
+
+    @Override public void start(PTGen ptgen) {
+        calls.add("start " + ptgen.getSeed() + " " + ptgen.minX + " " + ptgen.minY + " " +
+                ptgen.width + " " + ptgen.height + " " + ptgen.countX + " " + ptgen.countY);
+    }
+
+    @Override public void startBox(BoundingBox boundingBox) {
+        calls.add("startBox " + boundingBox.xMultiple + " " + boundingBox.yMultiple);
+    }
+
+    @Override public void visitRhombus(Rhombus rhombus) {
+        calls.add(rhombus + " " + Arrays.toString(rhombus.latticeCoords));
+    }
+
+    @Override public void endBox(BoundingBox boundingBox) {
+        calls.add("endBox " + boundingBox.xMultiple + " " + boundingBox.yMultiple);
+    }
+
+    @Override public void end() {
+        calls.add("end");
+    }
+}
@@ -0,0 +1,141 @@
+/*
+ * Copyright 2019 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jf.ptgen;
+
+import org.jf.ptgen.penrose.PenroseTiling;
+import org.junit.Assert;
+import org.junit.Test;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.Point;
+import org.locationtech.jts.geom.Polygon;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.function.IntConsumer;
+
+public class RhombusIndexTest {
+    @Test
+    public void testQueriesMatchBruteForce() throws IOException {
+        // Box (1, 0) is left out, so that some queries are in a gap in the tiling
+        PTGen ptGen = new PTGen(7, -15.3, -9.8, 10, 10, 3, 2);
+        RhombusIndex index = new RhombusIndex();
+        ptGen.visitRhombii(index, false, (x, y) -> x != 1 || y != 0);
+        Assert.assertTrue(index.size() > 0);
+
+        checkQueries(index, getPolygons(index), new Random(0));
+
+        RhombusIndex readIndex = roundTrip(index);
+        Assert.assertEquals(index.getSeed(), readIndex.getSeed());
+        Assert.assertEquals(index.size(), readIndex.size());
+        for (int i = 0; i < index.size(); i++) {
+            // The rhombii are from different tilings, so they aren't equal to each other
+            Assert.assertEquals(index.getRhombus(i).toString(), readIndex.getRhombus(i).toString());
+            Assert.assertArrayEquals(index.getRhombus(i).latticeCoords,
+                    readIndex.getRhombus(i).latticeCoords);
+            for (int vertex = 0; vertex < 4; vertex++) {
+                Assert.assertEquals(index.getVertexX(i, vertex), readIndex.getVertexX(i, vertex),
+                        0);
+                Assert.assertEquals(index.getVertexY(i, vertex), readIndex.getVertexY(i, vertex),
+                        0);
+            }
+        }
+        checkQueries(readIndex, getPolygons(index), new Random(0));
+    }
+
+    @Test
+    public void testEmptyIndex() throws IOException {
+        PTGen ptGen = new PTGen(0, 0, 0, 10, 10, 2, 2);
+        RhombusIndex index = new RhombusIndex();
+        ptGen.visitRhombii(index, false, (x, y) -> false);
+
+        for (RhombusIndex emptyIndex: new RhombusIndex[] {index, roundTrip(index)}) {
+            Assert.assertEquals(0, emptyIndex.size());
+            Assert.assertEquals(-1, emptyIndex.findNearest(3, 4));
+            emptyIndex.queryRectangle(-100, -100, 100, 100, i -> Assert.fail());
+            emptyIndex.queryCircle(0, 0, 100, i -> Assert.fail());
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void testBadMagic() throws IOException {
+        RhombusIndex.readFrom(new ByteArrayInputStream(new byte[] {'P', 'T', 'G', 'X', 1}));
+    }
+
+    private static void checkQueries(RhombusIndex index, Polygon[] polygons, Random random) {
+        for (int i = 0; i < 2000; i++) {
+            // Some of the queries are outside the tiling
+            double x = -20 + random.nextDouble() * 40;
+            double y = -15 + random.nextDouble() * 30;
+            double size = random.nextDouble() * 5;
+
+            Geometry rectangle = PenroseTiling.GEOMETRY_FACTORY.toGeometry(
+                    new Envelope(x, x + size, y, y + size));
+            Set<Integer> expected = new HashSet<>();
+            for (int j = 0; j < polygons.length; j++) {
+                if (polygons[j].intersects(rectangle)) {
+                    expected.add(j);
+                }
+            }
+            Assert.assertEquals(expected, query(visitor ->
+                    index.queryRectangle(x, y, x + size, y + size, visitor)));
+
+            Point point = PenroseTiling.GEOMETRY_FACTORY.createPoint(new Coordinate(x, y));
+            expected.clear();
+            double nearestDistance = Double.POSITIVE_INFINITY;
+            for (int j = 0; j < polygons.length; j++) {
+                double distance = polygons[j].distance(point);
+                if (distance <= size) {
+                    expected.add(j);
+                }
+                nearestDistance = Math.min(nearestDistance, distance);
+            }
+            Assert.assertEquals(expected, query(visitor ->
+                    index.queryCircle(x, y, size, visitor)));
+
+            // Several rhombii may be equally near, so only the distance is compared
+            int nearest = index.findNearest(x, y);
+            Assert.assertEquals(nearestDistance, polygons[nearest].distance(point), 1E-9);
+        }
+    }
+
+    private static Polygon[] getPolygons(RhombusIndex index) {
+        Polygon[] polygons = new Polygon[index.size()];
+        for (int i = 0; i < polygons.length; i++) {
+            polygons[i] = index.getRhombus(i).getPolygon();
+        }
+        return polygons;
+    }
+
+    private static Set<Integer> query(Consumer<IntConsumer> query) {
+        Set<Integer> found = new HashSet<>();
+        query.accept(i -> Assert.assertTrue(found.add(i)));
+        return found;
+    }
+
+    private static RhombusIndex roundTrip(RhombusIndex index) throws IOException {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        index.writeTo(outputStream);
+        return RhombusIndex.readFrom(new ByteArrayInputStream(outputStream.toByteArray()));
+    }
+}
@@ -0,0 +1,174 @@
+/*
+ * Copyright 2019 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jf.ptgen;
+
+import org.jf.ptgen.penrose.Rhombus;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+public class SvgLineOutputTest {
+    private static final Pattern PATH = Pattern.compile(
+            "<path class=\"rhombusEdge\" id=\"(edge|polyline)[0-9]+\" d=\"M([^\"]*)\"/>");
+
+    @Test
+    public void testNoDuplicateEdges() {
+        for (PTGen ptGen: getGrids()) {
+            Set<String> expected = getEdges(ptGen);
+
+            SvgLineOutput output = new SvgLineOutput();
+            output.gridSpacing = 0;
+            List<List<String>> paths = getPaths(ptGen, output, "edge");
+
+            Set<String> edges = new HashSet<>();
+            for (List<String> path: paths) {
+                Assert.assertEquals(2, path.size());
+                String edge = getEdge(path.get(0), path.get(1));
+                Assert.assertTrue("Duplicate edge " + edge, edges.add(edge));
+            }
+            Assert.assertEquals(expected, edges);
+        }
+    }
+
+    @Test
+    public void testPolylinesCoverEdges() {
+        for (PTGen ptGen: getGrids()) {
+            Set<String> expected = getEdges(ptGen);
+
+            SvgLineOutput output = new SvgLineOutput();
+            output.gridSpacing = 0;
+            output.polylines = true;
+            List<List<String>> paths = getPaths(ptGen, output, "polyline");
+
+            // Each edge is in exactly one polyline
+            Set<String> edges = new HashSet<>();
+            for (List<String> path: paths) {
+                Assert.assertTrue(path.size() >= 2);
+                for (int i = 1; i < path.size(); i++) {
+                    String edge = getEdge(path.get(i - 1), path.get(i));
+                    Assert.assertTrue("Duplicate edge " + edge, edges.add(edge));
+                }
+            }
+            Assert.assertEquals(expected, edges);
+
+            // The edges are joined up, rather than each being a separate polyline
+            Assert.assertTrue(paths.size() * 2 < edges.size());
+        }
+    }
+
+    @Test
+    public void testSeparateBoxesKeepSharedEdges() {
+        PTGen ptGen = new PTGen(21, -3.5, 2.25, 5, 5, 3, 3);
+
+        // With space between the boxes, each box has all the edges of its own rhombii, so the
+        // edges shared with the neighboring boxes are written by both
+        SvgLineOutput output = new SvgLineOutput();
+        int rhombusCount = getRhombii(ptGen).size();
+        int edgeCount = getPaths(ptGen, output, "edge").size();
+        Assert.assertTrue(edgeCount < rhombusCount * 4);
+        Assert.assertTrue(edgeCount > getEdges(ptGen).size());
+    }
+
+    /**
+     * @return 3x3 grids of boxes that are only a few times bigger than the distance within which
+     * edges are kept between boxes, so that dropping them too early would be noticed.
+     */
+    private static List<PTGen> getGrids() {
+        List<PTGen> grids = new ArrayList<>();
+        grids.add(new PTGen(21, -3.5, 2.25, 5, 5, 3, 3));
+        grids.add(new PTGen(4, 17.125, -40.5, 7, 4.5, 3, 3));
+        grids.add(new PTGen(-8, 0, 0, 12, 9, 3, 3));
+        return grids;
+    }
+
+    private static List<Rhombus> getRhombii(PTGen ptGen) {
+        List<Rhombus> rhombii = new ArrayList<>();
+        ptGen.visitRhombii(new RecordingOutput() {
+            @Override public void visitRhombus(Rhombus rhombus) {
+                rhombii.add(rhombus);
+            }
+        });
+        return rhombii;
+    }
+
+    /**
+     * @return The distinct edges of all the rhombii in the tiling, as formatted by getEdge().
+     */
+    private static Set<String> getEdges(PTGen ptGen) {
+        Set<String> edges = new HashSet<>();
+        for (Rhombus rhombus: getRhombii(ptGen)) {
+            for (int vertex = 0; vertex < 4; vertex++) {
+                int nextVertex = (vertex + 1) % 4;
+                edges.add(getEdge(
+                        formatPoint(rhombus.getVertexX(vertex), rhombus.getVertexY(vertex)),
+                        formatPoint(rhombus.getVertexX(nextVertex),
+                                rhombus.getVertexY(nextVertex))));
+            }
+        }
+        return edges;
+    }
+
+    /**
+     * @return The points of each path written by the given output, formatted as "x,y".
+     */
+    private static List<List<String>> getPaths(PTGen ptGen, SvgLineOutput output,
+                                               String pathType) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        output.setOutputStream(bytes);
+        ptGen.visitRhombii(output);
+
+        List<List<String>> paths = new ArrayList<>();
+        Matcher matcher = PATH.matcher(new String(bytes.toByteArray(), StandardCharsets.UTF_8));
+        while (matcher.find()) {
+            Assert.assertEquals(pathType, matcher.group(1));
+            List<String> path = new ArrayList<>();
+            for (String point: matcher.group(2).trim().split(" ")) {
+                path.add(point);
+            }
+            paths.add(path);
+        }
+        Assert.assertFalse(paths.isEmpty());
+        return paths;
+    }
+
+    private static String formatPoint(double x, double y) {
+        // Formatted the same way as the output, so that the points can be compared exactly
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        AsciiWriter writer = new AsciiWriter(bytes);
+        writer.write(x).write(',').write(y);
+        writer.flush();
+        return new String(bytes.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @return A key for the edge between the 2 given points, that doesn't depend on their order.
+     */
+    private static String getEdge(String point1, String point2) {
+        if (point1.compareTo(point2) < 0) {
+            return point1 + " " + point2;
+        }
+        return point2 + " " + point1;
+    }
+}
@@ -0,0 +1,230 @@
+/*
+ * Copyright 2019 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jf.ptgen;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+public class TileServerTest {
+    private static final String TILE_A = "/tile?seed=3&x=0&y=0&size=15";
+    private static final String TILE_B = "/tile?seed=3&x=1&y=0&size=15";
+    private static final String TILE_C = "/tile?seed=3&x=0&y=-1&size=15";
+
+    @Test
+    public void testTiles() throws IOException {
+        TileServer server = startServer(1, 1 << 20);
+        try {
+            Response svg = get(server, TILE_A);
+            Assert.assertEquals(200, svg.status);
+            Assert.assertEquals("image/svg+xml", svg.contentType);
+            Assert.assertTrue(new String(svg.body, StandardCharsets.UTF_8).contains("<svg"));
+
+            Response cached = get(server, TILE_A + "&type=svg");
+            Assert.assertArrayEquals(svg.body, cached.body);
+
+            Response svgLine = get(server, TILE_A + "&type=svgline");
+            Assert.assertEquals(200, svgLine.status);
+            Assert.assertEquals("image/svg+xml", svgLine.contentType);
+
+            Response binary = get(server, TILE_A + "&type=binary");
+            Assert.assertEquals(200, binary.status);
+            Assert.assertEquals("application/octet-stream", binary.contentType);
+            Assert.assertArrayEquals(BinaryOutput.MAGIC,
+                    Arrays.copyOf(binary.body, BinaryOutput.MAGIC.length));
+
+            Response index = get(server, TILE_A + "&type=index");
+            Assert.assertEquals(200, index.status);
+            Assert.assertEquals("application/octet-stream", index.contentType);
+
+            Response stats = get(server, "/stats");
+            Assert.assertEquals(200, stats.status);
+            Assert.assertEquals("application/json", stats.contentType);
+            String json = new String(stats.body, StandardCharsets.UTF_8);
+            Assert.assertEquals(5, getStat(json, "requests"), 0);
+            Assert.assertEquals(1, getStat(json, "hits"), 0);
+            Assert.assertEquals(4, getStat(json, "misses"), 0);
+            Assert.assertEquals(.2, getStat(json, "hitRate"), 0);
+            Assert.assertEquals(4, getStat(json, "cachedTiles"), 0);
+            Assert.assertEquals(1, getStat(json, "tilings"), 0);
+            Assert.assertTrue(getStat(json, "p99Millis") >= getStat(json, "p50Millis"));
+        } finally {
+            server.stop();
+        }
+    }
+
+    @Test
+    public void testBadRequests() throws IOException {
+        TileServer server = startServer(1, 1 << 20);
+        try {
+            Assert.assertEquals(400, get(server, "/tile?x=0").status);
+            Assert.assertEquals(400, get(server, "/tile?x=0&y=zero").status);
+            Assert.assertEquals(400, get(server, "/tile?x=0&y=0&size=0").status);
+            Assert.assertEquals(400, get(server, "/tile?x=0&y=0&size=1001").status);
+            Assert.assertEquals(400, get(server, "/tile?x=0&y=2000000").status);
+            Assert.assertEquals(400, get(server, "/tile?x=0&y=0&type=png").status);
+
+            HttpURLConnection connection = open(server, TILE_A);
+            connection.setRequestMethod("POST");
+            Assert.assertEquals(405, connection.getResponseCode());
+            connection.disconnect();
+
+            // Rejected requests don't count as cache misses
+            Assert.assertEquals(0, getStat(server.getStats(), "misses"), 0);
+        } finally {
+            server.stop();
+        }
+    }
+
+    @Test
+    public void testLeastRecentlyUsedEviction() throws IOException {
+        long[] sizes = new long[3];
+        TileServer server = startServer(1, 1 << 20);
+        try {
+            sizes[0] = get(server, TILE_A).body.length;
+            sizes[1] = get(server, TILE_B).body.length;
+            sizes[2] = get(server, TILE_C).body.length;
+        } finally {
+            server.stop();
+        }
+
+        // All 3 tiles don't fit, but removing any one of them is enough
+        server = startServer(1, sizes[0] + sizes[1] + sizes[2] - 1);
+        try {
+            get(server, TILE_A);
+            get(server, TILE_B);
+            get(server, TILE_A);
+            // B is the least recently used, rather than A, which was added first
+            get(server, TILE_C);
+
+            String json = server.getStats();
+            Assert.assertEquals(2, getStat(json, "cachedTiles"), 0);
+            Assert.assertEquals(sizes[0] + sizes[2], getStat(json, "cachedBytes"), 0);
+
+            get(server, TILE_A);
+            Assert.assertEquals(2, getStat(server.getStats(), "hits"), 0);
+            get(server, TILE_B);
+            Assert.assertEquals(4, getStat(server.getStats(), "misses"), 0);
+        } finally {
+            server.stop();
+        }
+
+        // A tile bigger than the whole cache isn't cached
+        server = startServer(1, sizes[0] - 1);
+        try {
+            get(server, TILE_A);
+            get(server, TILE_A);
+            String json = server.getStats();
+            Assert.assertEquals(2, getStat(json, "misses"), 0);
+            Assert.assertEquals(0, getStat(json, "cachedTiles"), 0);
+        } finally {
+            server.stop();
+        }
+    }
+
+    @Test
+    public void testConcurrentMissesGenerateOnce() throws Exception {
+        int requestCount = 8;
+        TileServer server = startServer(requestCount, 1 << 20);
+        ExecutorService clients = Executors.newFixedThreadPool(requestCount);
+        try {
+            CountDownLatch ready = new CountDownLatch(requestCount);
+            List<Future<Response>> responses = new ArrayList<>();
+            for (int i = 0; i < requestCount; i++) {
+                responses.add(clients.submit((Callable<Response>)() -> {
+                    ready.countDown();
+                    ready.await();
+                    return get(server, "/tile?seed=5&x=2&y=3&size=200");
+                }));
+            }
+
+            byte[] body = responses.get(0).get().body;
+            for (Future<Response> response: responses) {
+                Assert.assertEquals(200, response.get().status);
+                Assert.assertArrayEquals(body, response.get().body);
+            }
+
+            String json = server.getStats();
+            Assert.assertEquals(1, getStat(json, "misses"), 0);
+            Assert.assertEquals(requestCount - 1, getStat(json, "hits"), 0);
+        } finally {
+            clients.shutdown();
+            server.stop();
+        }
+    }
+
+    private static TileServer startServer(int threads, long maxCacheBytes) throws IOException {
+        TileServer server = new TileServer(0, threads, 4, maxCacheBytes);
+        server.start();
+        return server;
+    }
+
+    private static HttpURLConnection open(TileServer server, String path) throws IOException {
+        URL url = new URL("http", "localhost", server.getPort(), path);
+        return (HttpURLConnection)url.openConnection();
+    }
+
+    private static Response get(TileServer server, String path) throws IOException {
+        HttpURLConnection connection = open(server, path);
+        try {
+            int status = connection.getResponseCode();
+            InputStream inputStream = status < 400 ?
+                    connection.getInputStream() : connection.getErrorStream();
+            ByteArrayOutputStream body = new ByteArrayOutputStream();
+            try (InputStream stream = inputStream) {
+                stream.transferTo(body);
+            }
+            return new Response(status, connection.getContentType(), body.toByteArray());
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    private static double getStat(String json, String name) {
+        Matcher matcher = Pattern.compile("\"" + name + "\": ([0-9.]+)").matcher(json);
+        Assert.assertTrue(json, matcher.find());
+        return Double.parseDouble(matcher.group(1));
+    }
+
+    private static class Response {
+        public final int status;
+        public final String contentType;
+        public final byte[] body;
+
+        public Response(int status, String contentType, byte[] body) {
+            this.status = status;
+            this.contentType = contentType;
+            this.body = body;
+        }
+    }
+}
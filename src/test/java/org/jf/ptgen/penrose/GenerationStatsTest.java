@@ -0,0 +1,120 @@
+/*
+ * Copyright 2019 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jf.ptgen.penrose;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.math.Vector2D;
+
+import java.util.Random;
+
+public class GenerationStatsTest {
+    private static final Coordinate GRID_ORIGIN = new Coordinate(0, 0);
+    private static final Vector2D GRID_SIZE = new Vector2D(10, 10);
+
+    @Test
+    public void testVisitStats() {
+        PenroseTiling tiling = new PenroseTiling(new Random(0));
+
+        GenerationStats stats = new GenerationStats();
+        int[] visited = new int[1];
+        for (int x = 0; x < 2; x++) {
+            BoundingBox boundingBox = new BoundingBox(GRID_ORIGIN, GRID_SIZE, x, 0);
+            tiling.visitRhombii(boundingBox, rhombus -> visited[0]++, null, stats);
+            stats.addBox(2_000_000, 1_000_000);
+        }
+
+        Assert.assertTrue(visited[0] > 0);
+        Assert.assertEquals(2, stats.getBoxes());
+        Assert.assertEquals(visited[0], stats.getRhombiiVisited());
+        Assert.assertTrue(stats.getStripsWalked() > 0);
+        Assert.assertTrue(stats.getWalkSteps() >= stats.getRhombiiDiscarded());
+        Assert.assertTrue(stats.getOverscanSteps() <= stats.getWalkSteps());
+        Assert.assertEquals((double)stats.getOverscanSteps() / stats.getWalkSteps(),
+                stats.getOverscanRatio(), 0);
+        Assert.assertTrue(stats.getMaxProcessedRhombii() > 0);
+        Assert.assertTrue(stats.getMaxExistingStrips() > 0);
+        Assert.assertEquals(4_000_000, stats.getGenerationNanos());
+        Assert.assertEquals(2_000_000, stats.getOutputNanos());
+
+        String[] summary = stats.getSummary().split("\\R");
+        Assert.assertEquals(5, summary.length);
+        Assert.assertEquals("Boxes: 2, 2.000 ms per box", summary[0]);
+        Assert.assertEquals("Rhombii: " + visited[0] + " visited, " +
+                stats.getRhombiiDiscarded() + " discarded", summary[1]);
+        Assert.assertEquals("Time: 4.0 ms generating, 2.0 ms in output callbacks", summary[4]);
+    }
+
+    @Test
+    public void testEnumerateStats() {
+        PenroseTiling tiling = new PenroseTiling(new Random(0));
+        BoundingBox boundingBox = new BoundingBox(GRID_ORIGIN, GRID_SIZE, 0, 0);
+
+        int[] visited = new int[1];
+        tiling.visitRhombii(boundingBox, rhombus -> visited[0]++);
+
+        GenerationStats stats = new GenerationStats();
+        tiling.enumerateRhombii(boundingBox, rhombus -> { }, stats);
+        Assert.assertEquals(visited[0], stats.getRhombiiVisited());
+    }
+
+    @Test
+    public void testAdd() {
+        PenroseTiling tiling = new PenroseTiling(new Random(0));
+
+        GenerationStats total = new GenerationStats();
+        GenerationStats[] boxStats = new GenerationStats[2];
+        for (int x = 0; x < boxStats.length; x++) {
+            boxStats[x] = new GenerationStats();
+            tiling.visitRhombii(new BoundingBox(GRID_ORIGIN, GRID_SIZE, x, 0), rhombus -> { },
+                    null, boxStats[x]);
+            boxStats[x].addBox(x + 1, 10 * (x + 1));
+            total.add(boxStats[x]);
+        }
+
+        Assert.assertEquals(2, total.getBoxes());
+        Assert.assertEquals(boxStats[0].getRhombiiVisited() + boxStats[1].getRhombiiVisited(),
+                total.getRhombiiVisited());
+        Assert.assertEquals(boxStats[0].getRhombiiDiscarded() +
+                boxStats[1].getRhombiiDiscarded(), total.getRhombiiDiscarded());
+        Assert.assertEquals(boxStats[0].getStripsWalked() + boxStats[1].getStripsWalked(),
+                total.getStripsWalked());
+        Assert.assertEquals(boxStats[0].getWalkSteps() + boxStats[1].getWalkSteps(),
+                total.getWalkSteps());
+        Assert.assertEquals(boxStats[0].getOverscanSteps() + boxStats[1].getOverscanSteps(),
+                total.getOverscanSteps());
+        // The set sizes are maximums over the boxes rather than totals
+        Assert.assertEquals(Math.max(boxStats[0].getMaxProcessedRhombii(),
+                boxStats[1].getMaxProcessedRhombii()), total.getMaxProcessedRhombii());
+        Assert.assertEquals(Math.max(boxStats[0].getMaxExistingStrips(),
+                boxStats[1].getMaxExistingStrips()), total.getMaxExistingStrips());
+        Assert.assertEquals(3, total.getGenerationNanos());
+        Assert.assertEquals(30, total.getOutputNanos());
+    }
+
+    @Test
+    public void testEmptySummary() {
+        GenerationStats stats = new GenerationStats();
+        Assert.assertEquals(0, stats.getOverscanRatio(), 0);
+        Assert.assertEquals(String.format("Boxes: 0, 0.000 ms per box%n" +
+                "Rhombii: 0 visited, 0 discarded%n" +
+                "Strips walked: 0, 0 steps, 0.0%% of steps in the overscan%n" +
+                "Max set sizes: 0 processed rhombii, 0 pending rhombii, 0 strips%n" +
+                "Time: 0.0 ms generating, 0.0 ms in output callbacks%n"), stats.getSummary());
+    }
+}
@@ -0,0 +1,119 @@
+/*
+ * Copyright 2019 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jf.ptgen.penrose;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.math.Vector2D;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+public class GridOwnershipTest {
+    // The tolerance used when comparing the areas computed with JTS
+    private static final double AREA_TOLERANCE = 1E-9;
+
+    @Test
+    public void testOwnerMatchesPolygonIntersection() {
+        Random random = new Random(0);
+        for (int i = 0; i < 40; i++) {
+            List<Rhombus> rhombii = getRhombii(new PenroseTiling(random));
+
+            Vector2D gridSize;
+            if (i % 4 == 0) {
+                gridSize = new Vector2D(1, 1);
+            } else {
+                gridSize = new Vector2D(0.5 + random.nextDouble() * 6,
+                        0.5 + random.nextDouble() * 6);
+            }
+
+            Coordinate gridOrigin;
+            if (i % 2 == 0) {
+                // With the origin on a vertex, many rhombii are split exactly by the grid lines,
+                // so the tie-breaking rules are exercised
+                Rhombus rhombus = rhombii.get(random.nextInt(rhombii.size()));
+                gridOrigin = new Coordinate(rhombus.getVertices()[random.nextInt(4)]);
+            } else {
+                gridOrigin = new Coordinate(random.nextDouble() * 12 - 6,
+                        random.nextDouble() * 12 - 6);
+            }
+
+            GridOwnership ownership = new GridOwnership(gridOrigin, gridSize);
+            for (Rhombus rhombus: rhombii) {
+                BoundingBox expected = getLargestIntersection(rhombus, gridOrigin, gridSize);
+                Assert.assertEquals(expected,
+                        rhombus.getContainingBoundingBox(gridOrigin, gridSize));
+
+                ownership.findOwner(rhombus.getVertexCoordinates(), 0);
+                Assert.assertEquals(expected.xMultiple, ownership.getOwnerX());
+                Assert.assertEquals(expected.yMultiple, ownership.getOwnerY());
+            }
+        }
+    }
+
+    /**
+     * @return The rhombii in the 12x12 square around the origin.
+     */
+    private static List<Rhombus> getRhombii(PenroseTiling tiling) {
+        List<Rhombus> rhombii = new ArrayList<>();
+        Coordinate origin = new Coordinate(-6, -6);
+        Vector2D size = new Vector2D(6, 6);
+        for (int x = 0; x < 2; x++) {
+            for (int y = 0; y < 2; y++) {
+                tiling.visitRhombii(new BoundingBox(origin, size, x, y), rhombii::add);
+            }
+        }
+        return rhombii;
+    }
+
+    /**
+     * Finds the box that the rhombus overlaps the most with, using JTS polygon intersections.
+     * If several boxes overlap it equally, the one with the lowest x wins, and then the one with
+     * the lowest y.
+     */
+    private static BoundingBox getLargestIntersection(Rhombus rhombus, Coordinate gridOrigin,
+                                                      Vector2D gridSize) {
+        int minX = Integer.MAX_VALUE;
+        int maxX = Integer.MIN_VALUE;
+        int minY = Integer.MAX_VALUE;
+        int maxY = Integer.MIN_VALUE;
+        for (Coordinate vertex: rhombus.getVertices()) {
+            int x = (int)Math.floor((vertex.x - gridOrigin.x) / gridSize.getX());
+            int y = (int)Math.floor((vertex.y - gridOrigin.y) / gridSize.getY());
+            minX = Math.min(minX, x);
+            maxX = Math.max(maxX, x);
+            minY = Math.min(minY, y);
+            maxY = Math.max(maxY, y);
+        }
+
+        BoundingBox largest = null;
+        double largestArea = 0;
+        for (int x = minX; x <= maxX; x++) {
+            for (int y = minY; y <= maxY; y++) {
+                BoundingBox boundingBox = new BoundingBox(gridOrigin, gridSize, x, y);
+                double area = rhombus.getPolygon().intersection(boundingBox.polygon).getArea();
+                if (largest == null || area > largestArea + AREA_TOLERANCE) {
+                    largest = boundingBox;
+                    largestArea = area;
+                }
+            }
+        }
+        return largest;
+    }
+}
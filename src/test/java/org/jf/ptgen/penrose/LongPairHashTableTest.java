@@ -0,0 +1,123 @@
+/*
+ * Copyright 2019 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jf.ptgen.penrose;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+public class LongPairHashTableTest {
+    @Test
+    public void testGrowth() {
+        // Starting from the smallest table, so it grows many times, and most keys collide with
+        // another one before each time it grows
+        LongPairHashTable table = new LongPairHashTable(2);
+        Map<String, Integer> expected = new HashMap<>();
+        Random random = new Random(0);
+        for (int i = 0; i < 20000; i++) {
+            // A small range of keys, so that some are added more than once
+            long highKey = random.nextInt(200) - 100;
+            long lowKey = random.nextInt(200) - 100;
+
+            Integer expectedValue = expected.putIfAbsent(highKey + "," + lowKey, i);
+            Assert.assertEquals(expectedValue == null ? LongPairHashTable.ABSENT : expectedValue,
+                    table.putIfAbsent(highKey, lowKey, i));
+            Assert.assertEquals(expected.size(), table.size());
+        }
+
+        for (long highKey = -101; highKey <= 100; highKey++) {
+            for (long lowKey = -101; lowKey <= 100; lowKey++) {
+                Integer expectedValue = expected.get(highKey + "," + lowKey);
+                Assert.assertEquals(expectedValue == null ? LongPairHashTable.ABSENT :
+                        expectedValue, table.get(highKey, lowKey));
+            }
+        }
+    }
+
+    @Test
+    public void testSimilarKeys() {
+        LongPairHashTable table = new LongPairHashTable(4);
+        long[][] keys = {
+                {0, 0}, {0, 1}, {1, 0}, {1, 1}, {-1, 0}, {0, -1}, {-1, -1},
+                {Long.MIN_VALUE, 0}, {0, Long.MIN_VALUE}, {Long.MAX_VALUE, Long.MIN_VALUE},
+                {1L << 32, 0}, {0, 1L << 32}, {1L << 32, 1L << 32}
+        };
+        for (int i = 0; i < keys.length; i++) {
+            Assert.assertEquals(LongPairHashTable.ABSENT,
+                    table.putIfAbsent(keys[i][0], keys[i][1], i));
+        }
+        for (int i = 0; i < keys.length; i++) {
+            Assert.assertEquals(i, table.get(keys[i][0], keys[i][1]));
+            Assert.assertEquals(i, table.putIfAbsent(keys[i][0], keys[i][1], 100));
+        }
+        Assert.assertEquals(keys.length, table.size());
+        Assert.assertEquals(LongPairHashTable.ABSENT, table.get(2, 2));
+    }
+
+    @Test
+    public void testRetainAndClear() {
+        LongPairHashTable table = new LongPairHashTable(8);
+        for (int i = 0; i < 1000; i++) {
+            table.putIfAbsent(i, -i, i);
+        }
+
+        table.retain((highKey, lowKey) -> {
+            Assert.assertEquals(highKey, -lowKey);
+            return highKey % 3 == 0;
+        });
+        Assert.assertEquals(334, table.size());
+        for (int i = 0; i < 1000; i++) {
+            Assert.assertEquals(i % 3 == 0 ? i : LongPairHashTable.ABSENT, table.get(i, -i));
+        }
+
+        // The removed keys can be added again, and the kept ones keep their values
+        for (int i = 0; i < 1000; i++) {
+            Assert.assertEquals(i % 3 == 0 ? i : LongPairHashTable.ABSENT,
+                    table.putIfAbsent(i, -i, i + 1));
+        }
+        Assert.assertEquals(1000, table.size());
+
+        table.clear();
+        Assert.assertEquals(0, table.size());
+        Assert.assertEquals(LongPairHashTable.ABSENT, table.get(0, 0));
+        Assert.assertEquals(LongPairHashTable.ABSENT, table.putIfAbsent(0, 0, 5));
+        Assert.assertEquals(5, table.get(0, 0));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testCapacityNotPowerOf2() {
+        new LongPairHashTable(12);
+    }
+
+    @Test
+    public void testLongHashSet() {
+        LongHashSet set = new LongHashSet();
+        for (long value: new long[] {0, 1, -1, Long.MIN_VALUE, Long.MAX_VALUE}) {
+            Assert.assertFalse(set.contains(value));
+            Assert.assertTrue(set.add(value));
+            Assert.assertFalse(set.add(value));
+            Assert.assertTrue(set.contains(value));
+        }
+        Assert.assertEquals(5, set.size());
+        set.clear();
+        Assert.assertEquals(0, set.size());
+        Assert.assertFalse(set.contains(0));
+    }
+}
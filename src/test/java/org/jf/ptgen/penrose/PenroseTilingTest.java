@@ -18,8 +18,17 @@ package org.jf.ptgen.penrose;
 
 import org.junit.Assert;
 import org.junit.Test;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.math.Vector2D;
 
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
 public class PenroseTilingTest {
     @Test
@@ -33,4 +42,264 @@ public class PenroseTilingTest {
 
         Assert.assertEquals(initialStrip.getRhombii(initialRhombus.strip2, true).iterator().next(), initialRhombus);
     }
+
+    @Test
+    public void testAdjacentBoxesDontOverlap() {
+        Random random = new Random(0);
+        PenroseTiling tiling = new PenroseTiling(random);
+
+        Coordinate gridOrigin = new Coordinate(0, 0);
+        Vector2D gridSize = new Vector2D(10, 10);
+
+        Set<Rhombus> seen = new HashSet<>();
+        for (int x = 0; x < 2; x++) {
+            for (int y = 0; y < 2; y++) {
+                BoundingBox boundingBox = new BoundingBox(gridOrigin, gridSize, x, y);
+                tiling.visitRhombii(boundingBox, rhombus -> {
+                    Assert.assertEquals(boundingBox,
+                            rhombus.getContainingBoundingBox(gridOrigin, gridSize));
+                    Assert.assertTrue(seen.add(rhombus));
+                });
+            }
+        }
+    }
+
+    @Test
+    public void testBoxesCoverTiling() {
+        Random random = new Random(779829478809944609L);
+        PenroseTiling tiling = new PenroseTiling(random);
+
+        // In this grid, there is a rhombus in the corner of box (0, 1) whose neighbors along
+        // both of its strips are owned by other boxes.
+        Coordinate gridOrigin = new Coordinate(9.099537420082608, 4.3413915843215145);
+        Vector2D gridSize = new Vector2D(4, 7);
+
+        Set<Rhombus> visited = new HashSet<>();
+        for (int x = 0; x < 2; x++) {
+            for (int y = 0; y < 3; y++) {
+                tiling.visitRhombii(new BoundingBox(gridOrigin, gridSize, x, y), visited::add);
+            }
+        }
+
+        for (double x = gridOrigin.x; x < gridOrigin.x + 8; x += .1) {
+            for (double y = gridOrigin.y; y < gridOrigin.y + 21; y += .1) {
+                Rhombus rhombus = tiling.getContainingRhombus(x, y);
+                BoundingBox owner = rhombus.getContainingBoundingBox(gridOrigin, gridSize);
+                if (owner.xMultiple >= 0 && owner.xMultiple < 2 &&
+                        owner.yMultiple >= 0 && owner.yMultiple < 3) {
+                    Assert.assertTrue(visited.contains(rhombus));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testExactVertices() {
+        Random random = new Random(0);
+        PenroseTiling tiling = new PenroseTiling(random);
+
+        BoundingBox boundingBox = new BoundingBox(new Coordinate(-5, -5), new Vector2D(10, 10),
+                0, 0);
+        tiling.visitRhombii(boundingBox, rhombus -> {
+            for (int i = 0; i < 4; i++) {
+                PhiCoordinate vertex = rhombus.getExactVertex(i);
+                Assert.assertEquals(vertex.getX(), rhombus.getVertexX(i), 1E-9);
+                Assert.assertEquals(vertex.getY(), rhombus.getVertexY(i), 1E-9);
+            }
+        });
+    }
+
+    @Test
+    public void testHandoffVisitsSameRhombii() {
+        Random random = new Random(0);
+        PenroseTiling tiling = new PenroseTiling(random);
+
+        Coordinate gridOrigin = new Coordinate(0, 0);
+        Vector2D gridSize = new Vector2D(10, 10);
+
+        BoxHandoff handoff = new BoxHandoff();
+        for (int x = 0; x < 2; x++) {
+            for (int y = 0; y < 4; y++) {
+                BoundingBox boundingBox = new BoundingBox(gridOrigin, gridSize, x, y);
+
+                Set<Rhombus> expected = new HashSet<>();
+                tiling.visitRhombii(boundingBox, expected::add);
+
+                Set<Rhombus> actual = new HashSet<>();
+                tiling.visitRhombii(boundingBox, rhombus -> Assert.assertTrue(actual.add(rhombus)),
+                        handoff);
+
+                Assert.assertEquals(expected, actual);
+            }
+        }
+    }
+
+    @Test
+    public void testSweepVisitsSameRhombii() {
+        Random random = new Random(3);
+        PenroseTiling tiling = new PenroseTiling(random);
+
+        BoundingBox boundingBox = new BoundingBox(new Coordinate(-7.3, 11.1), new Vector2D(60, 48),
+                0, 1);
+
+        Set<Rhombus> expected = new HashSet<>();
+        tiling.visitRhombii(boundingBox, expected::add);
+
+        for (double bandHeight: new double[] {3, 7.3, 100}) {
+            Set<Rhombus> actual = new HashSet<>();
+            tiling.sweepRhombii(boundingBox, bandHeight,
+                    rhombus -> Assert.assertTrue(actual.add(rhombus)));
+
+            Assert.assertEquals(expected, actual);
+        }
+    }
+
+    @Test
+    public void testSplitVisitsSameRhombii() {
+        Random random = new Random(4);
+        PenroseTiling tiling = new PenroseTiling(random);
+
+        BoundingBox boundingBox = new BoundingBox(new Coordinate(-13.7, 5.2), new Vector2D(83, 61),
+                1, 0);
+
+        Set<Rhombus> expected = new HashSet<>();
+        tiling.visitRhombii(boundingBox, expected::add);
+
+        ExecutorService executor = Executors.newFixedThreadPool(3);
+        try {
+            for (int regionCount: new int[] {1, 4, 7}) {
+                Set<Rhombus> actual = new HashSet<>();
+                tiling.visitRhombii(boundingBox,
+                        rhombus -> Assert.assertTrue(actual.add(rhombus)), executor, regionCount,
+                        PenroseTiling.Engine.FLOOD_FILL, null);
+
+                Assert.assertEquals(expected, actual);
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testSplitOrderIsDeterministic() {
+        Random random = new Random(6);
+        PenroseTiling tiling = new PenroseTiling(random);
+
+        BoundingBox boundingBox = new BoundingBox(new Coordinate(-13.7, 5.2), new Vector2D(83, 61),
+                0, 1);
+
+        ExecutorService executor = Executors.newFixedThreadPool(3);
+        ExecutorService singleExecutor = Executors.newSingleThreadExecutor();
+        try {
+            for (PenroseTiling.Engine engine: PenroseTiling.Engine.values()) {
+                List<Rhombus> expected = new ArrayList<>();
+                tiling.visitRhombii(boundingBox, expected::add, executor, 9, engine, null);
+
+                // The executor only has 1 thread, so the calling thread generates some of the
+                // regions itself
+                List<Rhombus> actual = new ArrayList<>();
+                tiling.visitRhombii(boundingBox, actual::add, singleExecutor, 9, engine, null);
+                Assert.assertEquals(expected, actual);
+
+                // The executor never runs anything, so the calling thread generates every region
+                actual.clear();
+                tiling.visitRhombii(boundingBox, actual::add, task -> {}, 9, engine, null);
+                Assert.assertEquals(expected, actual);
+
+                actual.clear();
+                tiling.visitRhombii(boundingBox, new RhombusBatch(10),
+                        batch -> batch.visitEach(actual::add), executor, 9, engine);
+                Assert.assertEquals(expected, actual);
+            }
+        } finally {
+            executor.shutdown();
+            singleExecutor.shutdown();
+        }
+    }
+
+    @Test
+    public void testSplitVisitorFailure() throws Exception {
+        Random random = new Random(7);
+        PenroseTiling tiling = new PenroseTiling(random);
+
+        BoundingBox boundingBox = new BoundingBox(new Coordinate(-13.7, 5.2), new Vector2D(83, 61),
+                0, 0);
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            int[] visited = new int[1];
+            try {
+                tiling.visitRhombii(boundingBox, rhombus -> {
+                    if (++visited[0] == 100) {
+                        throw new IllegalStateException("Visitor failed");
+                    }
+                }, executor, 9, PenroseTiling.Engine.FLOOD_FILL, null);
+                Assert.fail();
+            } catch (IllegalStateException ex) {
+                Assert.assertEquals("Visitor failed", ex.getMessage());
+            }
+
+            // The region that was waiting for the visitor was cancelled, rather than keeping the
+            // executor's only thread
+            executor.submit(() -> {}).get(10, TimeUnit.SECONDS);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testEnumerationVisitsSameRhombii() {
+        Random random = new Random(5);
+        PenroseTiling tiling = new PenroseTiling(random);
+
+        for (int x = -1; x <= 1; x++) {
+            for (int y = -1; y <= 1; y++) {
+                BoundingBox boundingBox = new BoundingBox(new Coordinate(-7.3, 11.9),
+                        new Vector2D(23, 17), x, y);
+
+                Set<Rhombus> expected = new HashSet<>();
+                tiling.visitRhombii(boundingBox, expected::add);
+
+                Set<Rhombus> actual = new HashSet<>();
+                tiling.enumerateRhombii(boundingBox,
+                        rhombus -> Assert.assertTrue(actual.add(rhombus)), null);
+
+                Assert.assertEquals(expected, actual);
+            }
+        }
+
+        BoundingBox boundingBox = new BoundingBox(new Coordinate(-13.7, 5.2), new Vector2D(83, 61),
+                1, 0);
+        Set<Rhombus> expected = new HashSet<>();
+        tiling.visitRhombii(boundingBox, expected::add);
+
+        ExecutorService executor = Executors.newFixedThreadPool(3);
+        try {
+            Set<Rhombus> actual = new HashSet<>();
+            tiling.visitRhombii(boundingBox, rhombus -> Assert.assertTrue(actual.add(rhombus)),
+                    executor, 4, PenroseTiling.Engine.ENUMERATION, null);
+
+            Assert.assertEquals(expected, actual);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testContainingRhombus() {
+        Random random = new Random(0);
+        PenroseTiling tiling = new PenroseTiling(random);
+
+        BoundingBox boundingBox = new BoundingBox(new Coordinate(-20, 30), new Vector2D(15, 15),
+                0, 0);
+        tiling.visitRhombii(boundingBox, rhombus -> {
+            double x = 0;
+            double y = 0;
+            for (int i = 0; i < 4; i++) {
+                x += rhombus.getVertexX(i) / 4;
+                y += rhombus.getVertexY(i) / 4;
+            }
+            Assert.assertEquals(rhombus, tiling.getContainingRhombus(x, y));
+        });
+    }
 }